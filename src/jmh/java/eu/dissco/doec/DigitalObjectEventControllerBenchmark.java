@@ -0,0 +1,33 @@
+package eu.dissco.doec;
+
+import net.dona.doip.client.DigitalObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the conversions done by the controller for every event
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigitalObjectEventControllerBenchmark {
+
+    @Param({SpecimenFixtures.SMALL, SpecimenFixtures.MEDIUM, SpecimenFixtures.LARGE})
+    public String size;
+
+    private String strSpecimen;
+
+    @Setup
+    public void setup() throws Exception {
+        this.strSpecimen = SpecimenFixtures.loadSpecimen(this.size).toString();
+    }
+
+    @Benchmark
+    public DigitalObject getDigitalObjectFromString() {
+        return DigitalObjectEventController.getDigitalObjectFromString(this.strSpecimen);
+    }
+}
@@ -0,0 +1,88 @@
+package eu.dissco.doec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import eu.dissco.doec.utils.FileUtils;
+import net.dona.doip.client.DigitalObject;
+
+/**
+ * Digital specimens used as input of the benchmarks. There are 3 sizes: small (only primitive attributes), medium
+ * (some identifications, images and nested measurements) and large (hundreds of nested elements)
+ */
+public final class SpecimenFixtures {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String LARGE = "large";
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private SpecimenFixtures() {
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Load a specimen as received in the events, with its type and content
+     * @param size size of the specimen: small, medium or large
+     * @return json object with the specimen
+     * @throws Exception
+     */
+    public static JsonObject loadSpecimen(String size) throws Exception {
+        return FileUtils.loadJsonElementFromResourceFile("fixtures/specimen-" + size + ".json").getAsJsonObject();
+    }
+
+    /**
+     * Load the schema of the content of the specimens
+     * @return json object with the schema
+     * @throws Exception
+     */
+    public static JsonObject loadSchema() throws Exception {
+        return FileUtils.loadJsonElementFromResourceFile("fixtures/specimen-schema.json").getAsJsonObject();
+    }
+
+    /**
+     * Get a copy of a specimen with some of its attributes modified, as after an update event
+     * @param specimen json object with the specimen. It is not modified
+     * @return json object with the modified specimen
+     */
+    public static JsonObject modifySpecimen(JsonObject specimen) {
+        JsonObject modifiedSpecimen = specimen.deepCopy();
+        JsonObject content = modifiedSpecimen.getAsJsonObject("content");
+        content.addProperty("scientificName", "Larus fuscus Linnaeus, 1758");
+        content.addProperty("typeStatus", "Holotype");
+        content.remove("license");
+        if (content.has("identifications")){
+            JsonArray identifications = content.getAsJsonArray("identifications");
+            identifications.get(0).getAsJsonObject().addProperty("remarks", "Determination revised");
+            JsonObject identification = new JsonObject();
+            identification.addProperty("identifiedBy", "Curator");
+            identifications.add(identification);
+        }
+        return modifiedSpecimen;
+    }
+
+    /**
+     * Convert a specimen into a digital object
+     * @param specimen json object with the specimen. It is not modified
+     * @return digital object with the type, id and content of the specimen
+     */
+    public static DigitalObject toDigitalObject(JsonObject specimen) {
+        JsonObject content = specimen.getAsJsonObject("content").deepCopy();
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.type = specimen.get("type").getAsString();
+        digitalObject.id = specimen.get("id").getAsString();
+        digitalObject.setAttribute("content", content);
+        return digitalObject;
+    }
+}
@@ -0,0 +1,59 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import eu.dissco.doec.SpecimenFixtures;
+import eu.dissco.doec.utils.JsonTreeDiff;
+import net.dona.doip.client.DigitalObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the functions of the repository client that don't call the repository: the comparison of digital
+ * objects and the building of queries. The client is not connected to any repository
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigitalObjectRepositoryClientBenchmark {
+
+    @Param({SpecimenFixtures.SMALL, SpecimenFixtures.MEDIUM, SpecimenFixtures.LARGE})
+    public String size;
+
+    private DigitalObjectRepositoryClient digitalObjectRepositoryClient;
+    private DigitalObject digitalObject;
+    private DigitalObject modifiedDigitalObject;
+    private String paramValue;
+
+    @Setup
+    public void setup() throws Exception {
+        this.digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(
+                new DigitalObjectRepositoryInfo("http://localhost", 9000, "20.5000.1025", "admin", "password", 10));
+        this.digitalObject = SpecimenFixtures.toDigitalObject(SpecimenFixtures.loadSpecimen(this.size));
+        this.modifiedDigitalObject = SpecimenFixtures.toDigitalObject(SpecimenFixtures.modifySpecimen(SpecimenFixtures.loadSpecimen(this.size)));
+        this.paramValue = this.digitalObject.attributes.getAsJsonObject("content").get("locality").getAsString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.digitalObjectRepositoryClient.close();
+    }
+
+    @Benchmark
+    public JsonTreeDiff diffContentDigitalObjects() {
+        return this.digitalObjectRepositoryClient.diffContentDigitalObjects(this.digitalObject, this.modifiedDigitalObject);
+    }
+
+    @Benchmark
+    public String escapeQueryParamValue() {
+        return this.digitalObjectRepositoryClient.escapeQueryParamValue(this.paramValue);
+    }
+
+    @Benchmark
+    public String getSearchForObjectQuery() {
+        String metaQuery = "metadata/createdBy:" + this.digitalObjectRepositoryClient.escapeQueryParamValue("admin");
+        return this.digitalObjectRepositoryClient.getSearchForObjectQuery(this.digitalObject, metaQuery);
+    }
+}
@@ -0,0 +1,82 @@
+package eu.dissco.doec.utils;
+
+import com.google.common.collect.MapDifference;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import eu.dissco.doec.SpecimenFixtures;
+import net.dona.doip.client.DigitalObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the json utilities used in the processing of the events: comparison, flattening, validation and
+ * serialization of the content of the specimens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonUtilsBenchmark {
+
+    @Param({SpecimenFixtures.SMALL, SpecimenFixtures.MEDIUM, SpecimenFixtures.LARGE})
+    public String size;
+
+    private JsonObject content;
+    private JsonObject modifiedContent;
+    private Map<String, Object> contentMap;
+    private JsonObject schema;
+    private DigitalObject digitalObject;
+
+    @Setup
+    public void setup() throws Exception {
+        JsonObject specimen = SpecimenFixtures.loadSpecimen(this.size);
+        this.content = specimen.getAsJsonObject("content");
+        this.modifiedContent = SpecimenFixtures.modifySpecimen(specimen).getAsJsonObject("content");
+        this.contentMap = JsonCodec.getGson().fromJson(this.content, new TypeToken<Map<String, Object>>(){}.getType());
+        this.schema = SpecimenFixtures.loadSchema();
+        this.digitalObject = SpecimenFixtures.toDigitalObject(specimen);
+        if (!JsonUtils.validateJsonAgainstSchema(this.content, this.schema, true)){
+            throw new IllegalStateException("The " + this.size + " specimen is not valid against the schema");
+        }
+    }
+
+    @Benchmark
+    public MapDifference<String, Object> compareJsonElements() {
+        return JsonUtils.compareJsonElements(this.content, this.modifiedContent);
+    }
+
+    @Benchmark
+    public JsonTreeDiff compareJsonTreeDiff() {
+        return JsonTreeDiff.compare(this.content, this.modifiedContent);
+    }
+
+    @Benchmark
+    public Map<String, Object> flattenMap() {
+        return FlatMapUtils.flatten(this.contentMap);
+    }
+
+    @Benchmark
+    public Map<String, JsonElement> flattenJsonElement() {
+        return FlatMapUtils.flatten(this.content);
+    }
+
+    @Benchmark
+    public boolean validateJsonAgainstSchema() {
+        return JsonUtils.validateJsonAgainstSchema(this.content, this.schema, true);
+    }
+
+    @Benchmark
+    public boolean validateJsonAgainstCachedSchema() {
+        return JsonUtils.validateJsonAgainstSchema("DigitalSpecimen", this.content, this.schema, true);
+    }
+
+    @Benchmark
+    public String serializeObject() {
+        return JsonUtils.serializeObject(this.digitalObject);
+    }
+}
@@ -1,22 +1,54 @@
 package eu.dissco.doec;
 
-import com.google.common.collect.MapDifference;
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClient;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClientPool;
 import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
 import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryInfo;
+import eu.dissco.doec.digitalObjectRepository.SearchResultsIterator;
+import eu.dissco.doec.digitalObjectRepository.UncheckedDigitalObjectRepositoryException;
+import eu.dissco.doec.eventProcessing.EventJournal;
+import eu.dissco.doec.eventProcessing.EventProcessingExecutor;
+import eu.dissco.doec.eventProcessing.PendingEvent;
+import eu.dissco.doec.eventProcessing.ProvenanceRecordBatchWriter;
+import eu.dissco.doec.eventProcessing.ProvenanceStoragePolicy;
+import eu.dissco.doec.eventProcessing.ReadinessPoller;
+import eu.dissco.doec.eventProcessing.ReferenceDictionary;
+import eu.dissco.doec.metrics.MetricsRegistry;
+import eu.dissco.doec.metrics.Span;
+import eu.dissco.doec.metrics.Tracing;
 import eu.dissco.doec.utils.FileUtils;
+import eu.dissco.doec.utils.JsonCodec;
+import eu.dissco.doec.utils.JsonRecordWriter;
+import eu.dissco.doec.utils.JsonTreeDiff;
 import eu.dissco.doec.utils.JsonUtils;
 import net.dona.doip.client.DigitalObject;
+import net.dona.doip.client.SortField;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /*
     object contains id, type, content, acl, metadata, and payloads
@@ -34,255 +66,580 @@ import java.util.stream.Collectors;
                 params	The input supplied to a Type Methods call.
         requestContext	A user-suppled requestContext query parameter.
  */
-public class DigitalObjectEventController {
+public class DigitalObjectEventController implements AutoCloseable {
 
-    private Configuration config;
+    //Format of the entity content of the provenance records of updates that only store the patch against the previous content
+    private static final String ENTITY_CONTENT_FORMAT_JSON_PATCH = "jsonPatch";
+    //Fields of the provenance records of updates stored as patches that are needed to rebuild the content of an object
+    private static final List<String> PATCH_PROVENANCE_RECORD_FIELDS = Arrays.asList("/id", "/content/timestamp", "/content/data/entityContentPatch");
+
+    private final Configuration config;
+    private final DigitalObjectRepositoryClientPool digitalObjectRepositoryClientPool;
+    private final DigitalObjectRepositoryClientPool provenanceRepositoryClientPool;
+    private final EventProcessingExecutor eventProcessingExecutor;
+    private final ReadinessPoller readinessPoller;
+    private final ReferenceDictionary referenceDictionary;
+    private final ProvenanceRecordBatchWriter provenanceRecordBatchWriter;
+    private final EventJournal eventJournal;
+    private final ProvenanceStoragePolicy provenanceStoragePolicy;
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getInstance();
+
+    //Calls in progress, and controller that replaces this one when its configuration is reloaded
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private volatile DigitalObjectEventController successor;
+    private volatile boolean eventJournalHandedOver = false;
 
     protected Configuration getConfig() {
         return config;
     }
 
+    protected DigitalObjectRepositoryInfo getDigitalObjectRepositoryInfo() {
+        return digitalObjectRepositoryClientPool.getDigitalObjectRepositoryInfo();
+    }
+
+    protected DigitalObjectRepositoryInfo getProvenanceRepositoryInfo() {
+        return provenanceRepositoryClientPool.getDigitalObjectRepositoryInfo();
+    }
+
+    protected DigitalObjectRepositoryClientPool getDigitalObjectRepositoryClientPool() {
+        return digitalObjectRepositoryClientPool;
+    }
+
+    protected DigitalObjectRepositoryClientPool getProvenanceRepositoryClientPool() {
+        return provenanceRepositoryClientPool;
+    }
+
+    protected EventProcessingExecutor getEventProcessingExecutor() {
+        return eventProcessingExecutor;
+    }
+
+    protected ReadinessPoller getReadinessPoller() {
+        return readinessPoller;
+    }
+
+    protected ReferenceDictionary getReferenceDictionary() {
+        return referenceDictionary;
+    }
+
+    protected ProvenanceRecordBatchWriter getProvenanceRecordBatchWriter() {
+        return provenanceRecordBatchWriter;
+    }
+
+    protected EventJournal getEventJournal() {
+        return eventJournal;
+    }
+
+    protected ProvenanceStoragePolicy getProvenanceStoragePolicy() {
+        return provenanceStoragePolicy;
+    }
+
+    protected MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Create a new DigitalObjectEventController
+     * Note: Cordra hooks should not call this constructor directly but get the shared instance through
+     * DigitalObjectEventControllerRegistry.getController(configFilePath), so the configuration is only parsed once
+     * and the pooled repository clients are reused across calls
+     * @param configFilePath path of the configuration file. If null, config.properties is loaded from the resources
+     * @throws Exception
+     */
     public DigitalObjectEventController(String configFilePath) throws Exception{
+        this(configFilePath, null);
+    }
+
+    /**
+     * Create a new DigitalObjectEventController that replaces another one, e.g. when its configuration file changes.
+     * If both use the same event journal, the journal is handed over instead of being closed and opened again, so the
+     * previous controller can still acknowledge the events it is processing and its pending events are not replayed
+     * twice
+     * @param configFilePath path of the configuration file. If null, config.properties is loaded from the resources
+     * @param predecessor controller being replaced, or null
+     * @throws Exception
+     */
+    DigitalObjectEventController(String configFilePath, DigitalObjectEventController predecessor) throws Exception{
         if (configFilePath!=null){
             this.config = FileUtils.loadConfigurationFromFilePath(configFilePath);
         } else{
             this.config = FileUtils.loadConfigurationFromResourceFile("config.properties");
         }
+        this.digitalObjectRepositoryClientPool = DigitalObjectRepositoryClientPool.getDigitalObjectRepositoryClientPoolFromConfig(this.config);
+        this.provenanceRepositoryClientPool = DigitalObjectRepositoryClientPool.getProvenanceRepositoryClientPoolFromConfig(this.config);
+        this.eventProcessingExecutor = EventProcessingExecutor.getEventProcessingExecutorFromConfig(this.config);
+        this.readinessPoller = ReadinessPoller.getReadinessPollerFromConfig(this.config);
+        this.referenceDictionary = ReferenceDictionary.getReferenceDictionaryFromConfig(this.config,
+                this.digitalObjectRepositoryClientPool, this.provenanceRepositoryClientPool);
+        this.provenanceRecordBatchWriter = ProvenanceRecordBatchWriter.getProvenanceRecordBatchWriterFromConfig(this.config,
+                this.provenanceRepositoryClientPool);
+        this.provenanceStoragePolicy = ProvenanceStoragePolicy.getProvenanceStoragePolicyFromConfig(this.config);
+        this.metricsRegistry.addEventProcessingExecutor(this.eventProcessingExecutor);
+        //The journal is taken over last, so nothing can fail once the predecessor has handed it over
+        if (predecessor != null && predecessor.getEventJournal().getDirectory().toAbsolutePath().normalize()
+                .equals(EventJournal.getEventJournalDirectoryFromConfig(this.config).toAbsolutePath().normalize())){
+            this.eventJournal = predecessor.getEventJournal();
+            predecessor.eventJournalHandedOver = true;
+        } else{
+            this.eventJournal = EventJournal.getEventJournalFromConfig(this.config);
+            this.replayEventJournal();
+        }
+    }
+
+    /**
+     * Release the resources held by the controller. Events waiting to be processed or to be visible in the repository,
+     * and provenance records waiting to be written are flushed before closing its pools of repository clients. Events
+     * that couldn't be processed remain in the event journal and they are processed again by the next controller. The
+     * event journal is not closed if it has been handed over to the controller that replaces this one
+     */
+    @Override
+    public void close() {
+        this.getEventProcessingExecutor().shutdown();
+        this.getReadinessPoller().close();
+        this.getMetricsRegistry().removeEventProcessingExecutor(this.getEventProcessingExecutor());
+        this.getProvenanceRecordBatchWriter().close();
+        if (!this.eventJournalHandedOver){
+            this.getEventJournal().close();
+        }
+        this.getReferenceDictionary().close();
+        this.getDigitalObjectRepositoryClientPool().close();
+        this.getProvenanceRepositoryClientPool().close();
+    }
+
+    /**
+     * Replace this controller by its successor: the calls received from now on are forwarded to the successor, and
+     * it returns once the calls in progress have finished, so this controller can be closed
+     * @param successor controller that replaces this one
+     */
+    void retire(DigitalObjectEventController successor) {
+        this.successor = successor;
+        synchronized (this.activeCalls) {
+            while (this.activeCalls.get() > 0) {
+                try {
+                    this.activeCalls.wait(1000);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 
     public void processCreateEvent(String strJsonObject, String strJsonContext) {
-        DigitalObject digitalObject = this.getDigitalObjectFromString(strJsonObject);
-        JsonObject context = this.getJsonObjectFromString(strJsonContext);
+        this.acceptEvent(new PendingEvent(PendingEvent.EVENT_TYPE.CREATE, strJsonObject, null, strJsonContext, Instant.now().toEpochMilli()));
+    }
+
+    public void processUpdateEvent(String strOriginalObject, String strModifiedObject, String strJsonContext) {
+        this.acceptEvent(new PendingEvent(PendingEvent.EVENT_TYPE.UPDATE, strModifiedObject, strOriginalObject, strJsonContext, Instant.now().toEpochMilli()));
+    }
+
+    public void processDeleteEvent(String strJsonObject, String strJsonContext) throws DigitalObjectRepositoryException {
+        this.acceptEvent(new PendingEvent(PendingEvent.EVENT_TYPE.DELETE, strJsonObject, null, strJsonContext, Instant.now().toEpochMilli()));
+    }
+
+    /**
+     * Save the provenance record of a create event
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForCreateEvent(long journalSequence, PendingEvent pendingEvent) {
+        DigitalObject digitalObject = getDigitalObjectFromString(pendingEvent.getObject());
+        JsonObject context = this.getJsonObjectFromString(pendingEvent.getContext());
 
-        Runnable saveProvenanceRecordForCreateEvent = () -> {
-            DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-            DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-                DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
+        //Wait until object is stored in repository as the processCreateEvent is triggered on beforeSchemaValidation,
+        //so it might not have been created in the repository yet. The record is saved once it is found
+        Span waitSpan = Tracing.beginStage(MetricsRegistry.STAGE.WAIT_FOR_VISIBILITY, pendingEvent.getEventType().name(), digitalObject.id);
+        return this.getReadinessPoller().waitUntilReady(() -> {
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient()){
+                return this.findCreatedObject(digitalObjectRepositoryClient, digitalObject, context);
+            }
+        }, this.getEventProcessingExecutor()).handleAsync((digitalObjectFound, error) -> {
+            waitSpan.end();
+            if (error != null){
+                this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+                error.printStackTrace();
+                return CompletableFuture.<Void>completedFuture(null);
+            } else{
+                return this.saveProvenanceRecordForCreatedObject(journalSequence, pendingEvent, digitalObject, context, digitalObjectFound);
+            }
+        }, this.getEventProcessingExecutor()).thenCompose(Function.identity());
+    }
 
-                //Wait until object is stored in repository as the processCreateEvent is triggered on beforeSchemaValidation,
-                //so it might not have been created in the repository yet
-                TimeUnit.SECONDS.sleep(3);
+    /**
+     * Save the provenance record of a create event once the object created has been looked for in the repository
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @param digitalObject digital object received in the event
+     * @param context context of the event
+     * @param digitalObjectFound digital object created, or null if it wasn't found before the deadline
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForCreatedObject(long journalSequence, PendingEvent pendingEvent, DigitalObject digitalObject,
+                                                      JsonObject context, DigitalObject digitalObjectFound) {
+        try {
+            if (digitalObjectFound == null) {
+                //The object was never stored (e.g. it didn't pass the schema validation), so processing the event again wouldn't help
+                this.acknowledgeEvent(journalSequence);
+                throw new DigitalObjectRepositoryException("Provenance record for create event not saved: the digital object was not found in the repository after "
+                        + this.getReadinessPoller().getDeadlineMillis() + " ms");
+            } else {
+                //Generate a revision for the object
+                String revisionId = ""; //this.publishRevision(digitalObjectFound);
 
-                String metaQuery = "metadata/createdBy:" + digitalObjectRepositoryClient.escapeQueryParamValue(context.get("userId").getAsString());
-                DigitalObject digitalObjectFound = digitalObjectRepositoryClient.searchForObject(digitalObject, metaQuery);
-                if (digitalObjectFound != null) {
-                    //Generate a revision for the object
-                    String revisionId = ""; //this.publishRevision(digitalObjectFound);
+                Span lookupSpan = Tracing.beginStage(MetricsRegistry.STAGE.LOOKUP, pendingEvent.getEventType().name(), digitalObject.id);
+                String eventTypeId = this.getReferenceDictionary().getEventTypeId("Insert");
+                String roleId = this.getReferenceDictionary().getRoleId("Scientist");
+                lookupSpan.end();
 
-                    String eventTypeId = provenanceRepositoryClient.searchOne("type:EventType AND /name:Insert").id;
-                    String roleId = digitalObjectRepositoryClient.searchOne("type:Role AND /name:Scientist").id;
+                //Save provenance record of the event
+                DigitalObject provenanceRecord = new DigitalObject();
+                provenanceRecord.type = "EventProvenanceRecord";
+                JsonObject provenanceContent = new JsonObject();
+                provenanceContent.addProperty("eventTypeId", eventTypeId);
+                provenanceContent.addProperty("entityId", digitalObjectFound.id);
+                provenanceContent.addProperty("entityType", digitalObjectFound.type);
+                provenanceContent.addProperty("agentId", context.get("userId").getAsString());
+                provenanceContent.addProperty("roleId", roleId);
+                provenanceContent.addProperty("description", "Digital object created");
 
-                    //Save provenance record of the event
-                    DigitalObject provenanceRecord = new DigitalObject();
-                    provenanceRecord.type = "EventProvenanceRecord";
-                    JsonObject provenanceContent = new JsonObject();
-                    provenanceContent.addProperty("eventTypeId", eventTypeId);
-                    provenanceContent.addProperty("entityId", digitalObjectFound.id);
-                    provenanceContent.addProperty("entityType", digitalObjectFound.type);
-                    provenanceContent.addProperty("agentId", context.get("userId").getAsString());
-                    provenanceContent.addProperty("roleId", roleId);
-                    provenanceContent.addProperty("timestamp",  Instant.ofEpochMilli(digitalObjectFound.attributes.getAsJsonObject("metadata").get("createdOn").getAsLong()).toString());
-                    provenanceContent.addProperty("description", "Digital object created");
-
-                    JsonObject extraAttributes = new JsonObject();
-                    extraAttributes.addProperty("revisionId", revisionId);
+                JsonObject extraAttributes = new JsonObject();
+                extraAttributes.addProperty("revisionId", revisionId);
+                if (this.getProvenanceStoragePolicy().getStorageMode() == ProvenanceStoragePolicy.STORAGE_MODE.DELTA){
+                    //The patches of the following updates are computed on the contents of their events, so the base
+                    //they chain on is the content of this event and not the one found, which might include a later
+                    //update. Only the id, assigned when the object is stored, is taken from the object found
+                    JsonObject entityContent = digitalObject.attributes.getAsJsonObject("content").deepCopy();
+                    JsonObject contentFound = digitalObjectFound.attributes.getAsJsonObject("content");
+                    if (contentFound.has("id")){
+                        entityContent.add("id", contentFound.get("id"));
+                    }
+                    provenanceContent.addProperty("timestamp", Instant.ofEpochMilli(pendingEvent.getTimestamp()).toString());
+                    extraAttributes.add("entityContent", entityContent);
+                } else{
+                    provenanceContent.addProperty("timestamp", Instant.ofEpochMilli(digitalObjectFound.attributes.getAsJsonObject("metadata").get("createdOn").getAsLong()).toString());
                     extraAttributes.add("entityContent", digitalObjectFound.attributes.getAsJsonObject("content"));
-                    provenanceContent.add("data",extraAttributes);
-
-                    provenanceRecord.setAttribute("content", provenanceContent);
-                    DigitalObject provRecordSaved = provenanceRepositoryClient.create(provenanceRecord);
                 }
-            } catch (Exception e){
-                e.printStackTrace();
+                provenanceContent.add("data",extraAttributes);
+
+                provenanceRecord.setAttribute("content", provenanceContent);
+                this.getProvenanceStoragePolicy().fullContentStored(digitalObjectFound.id);
+                return this.saveProvenanceRecord(provenanceRecord, journalSequence, pendingEvent);
             }
-        };
+        } catch (Exception e){
+            this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
 
-        new Thread(saveProvenanceRecordForCreateEvent).start();
+    /**
+     * Save the provenance record of an update event
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForUpdateEvent(long journalSequence, PendingEvent pendingEvent) {
+        DigitalObject originalDigitalObject = getDigitalObjectFromString(pendingEvent.getOriginalObject());
+        DigitalObject modifiedDigitalObject = getDigitalObjectFromString(pendingEvent.getObject());
+        JsonObject context = this.getJsonObjectFromString(pendingEvent.getContext());
+
+        Long eventTimestamp = pendingEvent.getTimestamp();
+
+        //Wait until object is stored in repository as the processUpdateEvent is triggered on beforeSchemaValidation,
+        //so it might not have been updated in the repository yet. The record is saved once it is found
+        Span waitSpan = Tracing.beginStage(MetricsRegistry.STAGE.WAIT_FOR_VISIBILITY, pendingEvent.getEventType().name(), modifiedDigitalObject.id);
+        return this.getReadinessPoller().waitUntilReady(() -> {
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient()){
+                return this.findUpdatedObject(digitalObjectRepositoryClient, modifiedDigitalObject, context, eventTimestamp);
+            }
+        }, this.getEventProcessingExecutor()).handleAsync((digitalObjectFound, error) -> {
+            waitSpan.end();
+            if (error != null){
+                this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+                error.printStackTrace();
+                return CompletableFuture.<Void>completedFuture(null);
+            } else{
+                return this.saveProvenanceRecordForUpdatedObject(journalSequence, pendingEvent, originalDigitalObject, modifiedDigitalObject,
+                        context, digitalObjectFound);
+            }
+        }, this.getEventProcessingExecutor()).thenCompose(Function.identity());
     }
 
-    public void processUpdateEvent(String strOriginalObject, String strModifiedObject, String strJsonContext) {
-        DigitalObject originalDigitalObject = this.getDigitalObjectFromString(strOriginalObject);
-        DigitalObject modifiedDigitalObject = this.getDigitalObjectFromString(strModifiedObject);
-        JsonObject context = this.getJsonObjectFromString(strJsonContext);
-
-        Runnable saveProvenanceRecordForUpdateEvent = () -> {
-            DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-            DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-                DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
-
-                //Wait until object is stored in repository as the processUpdateEvent is triggered on beforeSchemaValidation,
-                //so it might not have been updated in the repository yet
-                TimeUnit.SECONDS.sleep(3);
-                Long endEpoch = Instant.now().toEpochMilli();
-                Long startEpoch = endEpoch - (5*1000);
-
-                String query = "type:"+ modifiedDigitalObject.type +
-                        " AND /id:"+ digitalObjectRepositoryClient.escapeQueryParamValue(modifiedDigitalObject.id) +
-                        " AND metadata/modifiedBy:" + digitalObjectRepositoryClient.escapeQueryParamValue(context.get("userId").getAsString()) +
-                        " AND metadata/modifiedOn:[" + Long.toString(startEpoch) + " TO " + Long.toString(endEpoch) + "]";
-                List<DigitalObject> digitalObjectList = digitalObjectRepositoryClient.searchAll(query);
-                if (digitalObjectList.size() == 1) {
-                    //Generate a revision for the object
-                    DigitalObject digitalObjectFound = digitalObjectList.get(0);
-                    String revisionId = ""; //this.publishRevision(digitalObjectFound);
-
-                    String eventTypeId = provenanceRepositoryClient.searchOne("type:EventType AND /name:Update").id;
-                    String roleId = digitalObjectRepositoryClient.searchOne("type:Role AND /name:Scientist").id;
-
-                    //Save provenance record of the event
-                    MapDifference<String, Object> mapDifference = digitalObjectRepositoryClient.compareContentDigitalObjects(digitalObjectFound,originalDigitalObject);
-                    JsonObject comparisonResult = (JsonObject)JsonUtils.convertObjectToJsonElement(mapDifference);
-                    comparisonResult.remove("onBoth");
-                    JsonObject extraAttributes = new JsonObject();
-                    extraAttributes.add("changes",comparisonResult);
-                    extraAttributes.addProperty("revisionId", revisionId);
-                    extraAttributes.add("entityContent", digitalObjectFound.attributes.getAsJsonObject("content"));
+    /**
+     * Save the provenance record of an update event once the object updated has been looked for in the repository
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @param originalDigitalObject digital object before the update
+     * @param modifiedDigitalObject digital object received in the event
+     * @param context context of the event
+     * @param digitalObjectFound digital object updated, or null if the update wasn't found before the deadline
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForUpdatedObject(long journalSequence, PendingEvent pendingEvent, DigitalObject originalDigitalObject,
+                                                      DigitalObject modifiedDigitalObject, JsonObject context, DigitalObject digitalObjectFound) {
+        try {
+            if (digitalObjectFound == null) {
+                //The update was never stored (e.g. it didn't pass the schema validation), so processing the event again wouldn't help
+                this.acknowledgeEvent(journalSequence);
+                throw new DigitalObjectRepositoryException("Provenance record for update event not saved: the update of the digital object was not found in the repository after "
+                        + this.getReadinessPoller().getDeadlineMillis() + " ms");
+            } else {
+                //Generate a revision for the object
+                String revisionId = ""; //this.publishRevision(digitalObjectFound);
 
-                    DigitalObject provenanceRecord = new DigitalObject();
-                    provenanceRecord.type = "EventProvenanceRecord";
-                    JsonObject provenanceContent = new JsonObject();
-                    provenanceContent.addProperty("eventTypeId",eventTypeId);
-                    provenanceContent.addProperty("entityId", digitalObjectFound.id);
-                    provenanceContent.addProperty("entityType", digitalObjectFound.type);
-                    provenanceContent.addProperty("agentId", context.get("userId").getAsString());
-                    provenanceContent.addProperty("roleId", roleId);
-                    provenanceContent.addProperty("timestamp",  Instant.ofEpochMilli(digitalObjectFound.attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong()).toString());
-                    provenanceContent.addProperty("description","Digital object updated");
-                    provenanceContent.add("data",extraAttributes);
+                Span lookupSpan = Tracing.beginStage(MetricsRegistry.STAGE.LOOKUP, pendingEvent.getEventType().name(), modifiedDigitalObject.id);
+                String eventTypeId = this.getReferenceDictionary().getEventTypeId("Update");
+                String roleId = this.getReferenceDictionary().getRoleId("Scientist");
+                lookupSpan.end();
 
-                    provenanceRecord.setAttribute("content", provenanceContent);
-                    DigitalObject provRecordSaved = provenanceRepositoryClient.create(provenanceRecord);
+                //Save provenance record of the event
+                Span diffSpan = Tracing.beginStage(MetricsRegistry.STAGE.DIFF, pendingEvent.getEventType().name(), modifiedDigitalObject.id);
+                JsonObject comparisonResult = JsonTreeDiff.compare(digitalObjectFound.attributes.getAsJsonObject("content"),
+                        originalDigitalObject.attributes.getAsJsonObject("content"), "/id").toJsonObject();
+                JsonObject extraAttributes = new JsonObject();
+                extraAttributes.add("changes",comparisonResult);
+                extraAttributes.addProperty("revisionId", revisionId);
+                //Depending on the storage policy, store the whole content or just the patch against the original content
+                //Note: in delta mode the content is the one of the event and not the one found in the repository, which
+                //might already include a later update, so the patches of consecutive updates always chain
+                if (this.getProvenanceStoragePolicy().getStorageMode() == ProvenanceStoragePolicy.STORAGE_MODE.DELTA){
+                    JsonObject modifiedContent = modifiedDigitalObject.attributes.getAsJsonObject("content");
+                    JsonArray entityContentPatch = JsonTreeDiff.compare(originalDigitalObject.attributes.getAsJsonObject("content"),
+                            modifiedContent, "/id").getJsonPatch();
+                    diffSpan.end();
+                    if (this.getProvenanceStoragePolicy().storeFullContent(digitalObjectFound.id, entityContentPatch.toString().length())){
+                        extraAttributes.add("entityContent", modifiedContent);
+                    } else{
+                        extraAttributes.addProperty("entityContentFormat", ENTITY_CONTENT_FORMAT_JSON_PATCH);
+                        extraAttributes.add("entityContentPatch", entityContentPatch);
+                    }
+                } else{
+                    diffSpan.end();
+                    extraAttributes.add("entityContent", digitalObjectFound.attributes.getAsJsonObject("content"));
                 }
-            } catch (Exception e){
-                e.printStackTrace();
+
+                DigitalObject provenanceRecord = new DigitalObject();
+                provenanceRecord.type = "EventProvenanceRecord";
+                JsonObject provenanceContent = new JsonObject();
+                provenanceContent.addProperty("eventTypeId",eventTypeId);
+                provenanceContent.addProperty("entityId", digitalObjectFound.id);
+                provenanceContent.addProperty("entityType", digitalObjectFound.type);
+                provenanceContent.addProperty("agentId", context.get("userId").getAsString());
+                provenanceContent.addProperty("roleId", roleId);
+                //In delta mode the record is stamped with the time of its event: the object found might already include a
+                //later update, and the patches of both updates would share its modification time
+                long timestamp = this.getProvenanceStoragePolicy().getStorageMode() == ProvenanceStoragePolicy.STORAGE_MODE.DELTA
+                        ? pendingEvent.getTimestamp()
+                        : digitalObjectFound.attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong();
+                provenanceContent.addProperty("timestamp",  Instant.ofEpochMilli(timestamp).toString());
+                provenanceContent.addProperty("description","Digital object updated");
+                provenanceContent.add("data",extraAttributes);
+
+                provenanceRecord.setAttribute("content", provenanceContent);
+                return this.saveProvenanceRecord(provenanceRecord, journalSequence, pendingEvent);
             }
-        };
-        new Thread(saveProvenanceRecordForUpdateEvent).start();
+        } catch (Exception e){
+            this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
     }
 
-    public void processDeleteEvent(String strJsonObject, String strJsonContext) throws DigitalObjectRepositoryException {
-        DigitalObject digitalObject = this.getDigitalObjectFromString(strJsonObject);
-        JsonObject context = this.getJsonObjectFromString(strJsonContext);
-
-        Runnable saveProvenanceUpdateEvent = () -> {
-            DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-            DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-                DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
+    /**
+     * Save the provenance record of a delete event
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForDeleteEvent(long journalSequence, PendingEvent pendingEvent) {
+        DigitalObject digitalObject = getDigitalObjectFromString(pendingEvent.getObject());
+        JsonObject context = this.getJsonObjectFromString(pendingEvent.getContext());
 
-                Long deleteTimestamp = Instant.now().toEpochMilli();
+        //Wait until object is deleted in repository as the processDeleteEvent is triggered on beforeDelete,
+        //so it might not have been deleted in the repository yet. The record is saved once it is deleted
+        Span waitSpan = Tracing.beginStage(MetricsRegistry.STAGE.WAIT_FOR_VISIBILITY, pendingEvent.getEventType().name(), digitalObject.id);
+        return this.getReadinessPoller().waitUntilReady(() -> {
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient()){
+                return digitalObjectRepositoryClient.retrieve(digitalObject.id) == null ? Boolean.TRUE : null;
+            }
+        }, this.getEventProcessingExecutor()).handleAsync((deleted, error) -> {
+            waitSpan.end();
+            if (error != null){
+                this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+                error.printStackTrace();
+                return CompletableFuture.<Void>completedFuture(null);
+            } else{
+                return this.saveProvenanceRecordForDeletedObject(journalSequence, pendingEvent, digitalObject, context, deleted);
+            }
+        }, this.getEventProcessingExecutor()).thenCompose(Function.identity());
+    }
 
-                //Wait until object is deleted in repository as the processDeleteEvent is triggered on beforeDelete,
-                //so it might not have been deleted in the repository yet
-                TimeUnit.SECONDS.sleep(3);
+    /**
+     * Save the provenance record of a delete event once the deletion has been checked in the repository
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event
+     * @param digitalObject digital object received in the event
+     * @param context context of the event
+     * @param deleted true if the object was deleted, or null if it was still found after the deadline
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> saveProvenanceRecordForDeletedObject(long journalSequence, PendingEvent pendingEvent, DigitalObject digitalObject,
+                                                      JsonObject context, Boolean deleted) {
+        Long deleteTimestamp = pendingEvent.getTimestamp();
 
-                DigitalObject digitalObjectFound = digitalObjectRepositoryClient.retrieve(digitalObject.id);
-                if (digitalObjectFound == null) {
-                    String eventTypeId = provenanceRepositoryClient.searchOne("type:EventType AND /name:Delete").id;
-                    String roleId = digitalObjectRepositoryClient.searchOne("type:Role AND /name:Scientist").id;
+        try {
+            if (deleted == null) {
+                //The deletion was cancelled, so processing the event again wouldn't help
+                this.acknowledgeEvent(journalSequence);
+                throw new DigitalObjectRepositoryException("Provenance record for delete event not saved: the digital object was still found in the repository after "
+                        + this.getReadinessPoller().getDeadlineMillis() + " ms");
+            } else {
+                Span lookupSpan = Tracing.beginStage(MetricsRegistry.STAGE.LOOKUP, pendingEvent.getEventType().name(), digitalObject.id);
+                String eventTypeId = this.getReferenceDictionary().getEventTypeId("Delete");
+                String roleId = this.getReferenceDictionary().getRoleId("Scientist");
+                lookupSpan.end();
 
 
-                    DigitalObject provenanceRecord = new DigitalObject();
-                    provenanceRecord.type = "EventProvenanceRecord";
-                    JsonObject provenanceContent = new JsonObject();
-                    provenanceContent.addProperty("eventTypeId",eventTypeId);
-                    provenanceContent.addProperty("entityId",context.get("objectId").getAsString());
-                    provenanceContent.addProperty("entityType", digitalObject.type);
-                    provenanceContent.addProperty("agentId",context.get("userId").getAsString());
-                    provenanceContent.addProperty("roleId",roleId);
-                    provenanceContent.addProperty("timestamp",  Instant.ofEpochMilli(deleteTimestamp).toString());
-                    provenanceContent.addProperty("description","Digital object deleted");
+                DigitalObject provenanceRecord = new DigitalObject();
+                provenanceRecord.type = "EventProvenanceRecord";
+                JsonObject provenanceContent = new JsonObject();
+                provenanceContent.addProperty("eventTypeId",eventTypeId);
+                provenanceContent.addProperty("entityId",context.get("objectId").getAsString());
+                provenanceContent.addProperty("entityType", digitalObject.type);
+                provenanceContent.addProperty("agentId",context.get("userId").getAsString());
+                provenanceContent.addProperty("roleId",roleId);
+                provenanceContent.addProperty("timestamp",  Instant.ofEpochMilli(deleteTimestamp).toString());
+                provenanceContent.addProperty("description","Digital object deleted");
 
-                    provenanceRecord.setAttribute("content", provenanceContent);
-                    DigitalObject provRecordSaved = provenanceRepositoryClient.create(provenanceRecord);
-                }
-            } catch (Exception e){
-                e.printStackTrace();
+                provenanceRecord.setAttribute("content", provenanceContent);
+                this.getProvenanceStoragePolicy().forget(context.get("objectId").getAsString());
+                return this.saveProvenanceRecord(provenanceRecord, journalSequence, pendingEvent);
             }
-        };
-        new Thread(saveProvenanceUpdateEvent).start();
+        } catch (Exception e){
+            this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        }
     }
 
     public void processRetrieveEvent(String strJsonObject, String strJsonContext) throws DigitalObjectRepositoryException {
-        DigitalObject digitalObject = this.getDigitalObjectFromString(strJsonObject);
-        JsonObject context = this.getJsonObjectFromString(strJsonContext);
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            successor.processRetrieveEvent(strJsonObject, strJsonContext);
+            return;
+        }
+        try {
+            DigitalObject digitalObject = getDigitalObjectFromString(strJsonObject);
+            JsonObject context = this.getJsonObjectFromString(strJsonContext);
 
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-            DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
+            this.getMetricsRegistry().eventAccepted("retrieve");
+            String previousCorrelationId = Tracing.setCorrelationId(Tracing.newCorrelationId());
+            try(DigitalObjectRepositoryClient provenanceRepositoryClient = this.getProvenanceRepositoryClientPool().borrowClient()){
 
-            String eventTypeId = provenanceRepositoryClient.searchOne("type:EventType AND /name:Retrieve").id;
-            String roleId = digitalObjectRepositoryClient.searchOne("type:Role AND /name:Scientist").id;
+                Span lookupSpan = Tracing.beginStage(MetricsRegistry.STAGE.LOOKUP, "retrieve", context.get("objectId").getAsString());
+                String eventTypeId = this.getReferenceDictionary().getEventTypeId("Retrieve");
+                String roleId = this.getReferenceDictionary().getRoleId("Scientist");
+                lookupSpan.end();
 
-            Long retrieveTimestamp = Instant.now().toEpochMilli();
-            DigitalObject provenanceRecord = new DigitalObject();
-            provenanceRecord.type = "EventProvenanceRecord";
-            JsonObject provenanceContent = new JsonObject();
-            provenanceContent.addProperty("eventTypeId",eventTypeId);
-            provenanceContent.addProperty("entityId",context.get("objectId").getAsString());
-            provenanceContent.addProperty("entityType", digitalObject.type);
-            provenanceContent.addProperty("agentId",context.get("userId").getAsString());
-            provenanceContent.addProperty("roleId",roleId);
-            provenanceContent.addProperty("timestamp",Instant.now().toString());
-            provenanceContent.addProperty("description","Digital object retrieved");
+                Long retrieveTimestamp = Instant.now().toEpochMilli();
+                DigitalObject provenanceRecord = new DigitalObject();
+                provenanceRecord.type = "EventProvenanceRecord";
+                JsonObject provenanceContent = new JsonObject();
+                provenanceContent.addProperty("eventTypeId",eventTypeId);
+                provenanceContent.addProperty("entityId",context.get("objectId").getAsString());
+                provenanceContent.addProperty("entityType", digitalObject.type);
+                provenanceContent.addProperty("agentId",context.get("userId").getAsString());
+                provenanceContent.addProperty("roleId",roleId);
+                provenanceContent.addProperty("timestamp",Instant.now().toString());
+                provenanceContent.addProperty("description","Digital object retrieved");
 
-            provenanceRecord.setAttribute("content", provenanceContent);
-            DigitalObject provRecordSaved = provenanceRepositoryClient.create(provenanceRecord);
+                provenanceRecord.setAttribute("content", provenanceContent);
+                Span createSpan = Tracing.beginStage(MetricsRegistry.STAGE.PROVENANCE_CREATE, "retrieve", context.get("objectId").getAsString());
+                DigitalObject provRecordSaved = provenanceRepositoryClient.create(provenanceRecord);
+                createSpan.end();
+                this.getMetricsRegistry().eventSucceeded("retrieve");
+            } catch (DigitalObjectRepositoryException | RuntimeException e){
+                this.getMetricsRegistry().eventFailed("retrieve");
+                throw e;
+            } finally {
+                Tracing.setCorrelationId(previousCorrelationId);
+            }
+        } finally {
+            this.endCall();
         }
     }
 
     public void processCustomEvent(String strJsonEvent, String objectId) throws DigitalObjectRepositoryException{
-        JsonObject jsonEvent = this.getJsonObjectFromString(strJsonEvent);
-        if (!jsonEvent.has("eventTypeId") || !jsonEvent.has("agentId") || !jsonEvent.has("timestamp")){
-            throw new DigitalObjectRepositoryException("The event can't be processed as some as it missing some required attributes: " +
-                    "eventTypeName, agentName, timestamp");
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            successor.processCustomEvent(strJsonEvent, objectId);
+            return;
         }
+        try {
+            JsonObject jsonEvent = this.getJsonObjectFromString(strJsonEvent);
+            if (!jsonEvent.has("eventTypeId") || !jsonEvent.has("agentId") || !jsonEvent.has("timestamp")){
+                throw new DigitalObjectRepositoryException("The event can't be processed as some as it missing some required attributes: " +
+                        "eventTypeName, agentName, timestamp");
+            }
 
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-            DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
+            this.getMetricsRegistry().eventAccepted("custom");
+            String previousCorrelationId = Tracing.setCorrelationId(Tracing.newCorrelationId());
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient();
+                DigitalObjectRepositoryClient provenanceRepositoryClient = this.getProvenanceRepositoryClientPool().borrowClient()){
 
-            DigitalObject entity = digitalObjectRepositoryClient.retrieve(objectId);
-            DigitalObject agent = digitalObjectRepositoryClient.retrieve(jsonEvent.get("agentId").getAsString());
-            DigitalObject eventType = provenanceRepositoryClient.searchOne("type:EventType AND /name:" + jsonEvent.get("eventType").getAsString());
+                //The lookup stage includes the entity and the agent, which are looked up in the repository of the objects
+                Span lookupSpan = Tracing.beginStage(MetricsRegistry.STAGE.LOOKUP, "custom", objectId);
+                DigitalObject entity = digitalObjectRepositoryClient.retrieve(objectId);
+                //The agent is retrieved instead of searched by id, as the search index might not include it yet
+                String agentId = jsonEvent.get("agentId").getAsString();
+                boolean agentExists = digitalObjectRepositoryClient.retrieve(agentId) != null;
+                ReferenceDictionary.ReferenceEntry eventType = this.getReferenceDictionary().getEventType(jsonEvent.get("eventType").getAsString());
+                lookupSpan.end();
 
-            if (entity!=null && eventType!=null && agent!=null){
-                DigitalObject provenanceRecord = new DigitalObject();
-                provenanceRecord.type = "EventProvenanceRecord";
-                JsonObject provenanceContent = new JsonObject();
-                provenanceContent.addProperty("eventTypeId",eventType.id);
-                provenanceContent.addProperty("entityId",entity.id);
-                provenanceContent.addProperty("entityType", entity.type);
-                provenanceContent.addProperty("agentId",agent.id);
-                provenanceContent.addProperty("timestamp",jsonEvent.get("timestamp").getAsString());
-                if (jsonEvent.has("role") && StringUtils.isNotBlank(jsonEvent.get("role").getAsString())){
-                    DigitalObject role = digitalObjectRepositoryClient.searchOne("type:Role AND /name:" + jsonEvent.get("role").getAsString());
-                    if (role!=null){
-                        provenanceContent.addProperty("roleId",role.id);
+                if (entity!=null && eventType!=null && agentExists){
+                    DigitalObject provenanceRecord = new DigitalObject();
+                    provenanceRecord.type = "EventProvenanceRecord";
+                    JsonObject provenanceContent = new JsonObject();
+                    provenanceContent.addProperty("eventTypeId",eventType.getId());
+                    provenanceContent.addProperty("entityId",entity.id);
+                    provenanceContent.addProperty("entityType", entity.type);
+                    provenanceContent.addProperty("agentId",agentId);
+                    provenanceContent.addProperty("timestamp",jsonEvent.get("timestamp").getAsString());
+                    if (jsonEvent.has("role") && StringUtils.isNotBlank(jsonEvent.get("role").getAsString())){
+                        ReferenceDictionary.ReferenceEntry role = this.getReferenceDictionary().getRole(jsonEvent.get("role").getAsString());
+                        if (role!=null){
+                            provenanceContent.addProperty("roleId",role.getId());
+                        }
+                    }
+                    if (jsonEvent.has("description") && StringUtils.isNotBlank(jsonEvent.get("description").getAsString())){
+                        provenanceContent.addProperty("description",jsonEvent.get("description").getAsString());
                     }
-                }
-                if (jsonEvent.has("description") && StringUtils.isNotBlank(jsonEvent.get("description").getAsString())){
-                    provenanceContent.addProperty("description",jsonEvent.get("description").getAsString());
-                }
 
-                if (jsonEvent.has("data") && !jsonEvent.getAsJsonObject("data").isJsonNull() &&
-                        jsonEvent.getAsJsonObject("data").keySet().size()>0){
-                    provenanceContent.add("data",jsonEvent.getAsJsonObject("data"));
-                }
+                    if (jsonEvent.has("data") && !jsonEvent.getAsJsonObject("data").isJsonNull() &&
+                            jsonEvent.getAsJsonObject("data").keySet().size()>0){
+                        provenanceContent.add("data",jsonEvent.getAsJsonObject("data"));
+                    }
 
-                if (!JsonUtils.validateJsonAgainstSchema(provenanceContent.getAsJsonObject("data"),eventType.attributes.getAsJsonObject("content").getAsJsonObject("additionalDataSchema"),false)){
-                    throw new DigitalObjectRepositoryException("The event can't be processed as its additional data doesn't validate against the event type");
-                }
+                    if (!eventType.validateAdditionalData(provenanceContent.getAsJsonObject("data"))){
+                        throw new DigitalObjectRepositoryException("The event can't be processed as its additional data doesn't validate against the event type");
+                    }
 
-                provenanceRecord.setAttribute("content", provenanceContent);
-                DigitalObject dobjSaved = provenanceRepositoryClient.create(provenanceRecord);
-            } else{
-                throw new DigitalObjectRepositoryException("The event can't be processed as some of its required attributes are not found in the system");
+                    provenanceRecord.setAttribute("content", provenanceContent);
+                    Span createSpan = Tracing.beginStage(MetricsRegistry.STAGE.PROVENANCE_CREATE, "custom", objectId);
+                    DigitalObject dobjSaved = provenanceRepositoryClient.create(provenanceRecord);
+                    createSpan.end();
+                    this.getMetricsRegistry().eventSucceeded("custom");
+                } else{
+                    throw new DigitalObjectRepositoryException("The event can't be processed as some of its required attributes are not found in the system");
+                }
+            } catch (DigitalObjectRepositoryException | RuntimeException e){
+                this.getMetricsRegistry().eventFailed("custom");
+                throw e;
+            } finally {
+                Tracing.setCorrelationId(previousCorrelationId);
             }
+        } finally {
+            this.endCall();
         }
     }
 
@@ -295,59 +652,106 @@ public class DigitalObjectEventController {
      * @throws DigitalObjectRepositoryException
      */
     public DigitalObject getVersionOfObjectAtGivenTime(String objectId, String utcIsoDatetime) throws DigitalObjectRepositoryException {
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo = DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        try (DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo)) {
-            DigitalObject version = digitalObjectRepositoryClient.getVersionOfObjectAtGivenTime(objectId,utcIsoDatetime);
-            if (version!=null){
-                version.id = objectId;
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.getVersionOfObjectAtGivenTime(objectId, utcIsoDatetime);
+        }
+        try {
+            try (DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient()) {
+                DigitalObject version = digitalObjectRepositoryClient.getVersionOfObjectAtGivenTime(objectId,utcIsoDatetime);
+                if (version!=null){
+                    version.id = objectId;
+                }
+                return version;
             }
-            return version;
+        } finally {
+            this.endCall();
         }
     }
 
     /**
      * Function that returns the requested object at the desired time.
      * Please note that this is obtained by looking at the provenance records of this object for events Insert, Update and Delete
+     * The time filter and the ordering are done by the repository, so only the latest record before the given time is
+     * transferred, plus the latest record with the whole content of the object and the patches after it if the latest
+     * record only stores a patch
      * @param objectId
      * @param utcIsoDatetime
      * @return
      * @throws DigitalObjectRepositoryException
      */
     public DigitalObject getObjectAtGivenTime(String objectId, String utcIsoDatetime) throws DigitalObjectRepositoryException {
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);
-            DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
-
-            DigitalObject digitalObject = digitalObjectRepositoryClient.retrieve(objectId);
-            if (digitalObject!=null){
-                String query = "type:EventProvenanceRecord " +
-                        "AND (/eventTypeId:EventTypeInsert OR /eventTypeId:EventTypeUpdate OR /eventTypeId:EventTypeDelete) " +
-                        "AND /entityId:" + provenanceRepositoryClient.escapeQueryParamValue(objectId);
-
-                List<DigitalObject> provenanceRecords = provenanceRepositoryClient.searchAll(query);
-                Comparator<DigitalObject> compareByTimestamp = (DigitalObject o1, DigitalObject o2) ->
-                        o1.attributes.getAsJsonObject("content").get("timestamp").getAsString().compareTo( o2.attributes.getAsJsonObject("content").get("timestamp").getAsString() );
-
-                provenanceRecords = provenanceRecords
-                        .stream()
-                        .filter(provenanceRecord ->
-                                provenanceRecord.attributes.getAsJsonObject("content").get("timestamp").getAsString().compareTo(utcIsoDatetime)<=0)
-                        .sorted(compareByTimestamp.reversed())
-                        .collect(Collectors.toList());
-
-                if (provenanceRecords.size()==0 || StringUtils.containsIgnoreCase(provenanceRecords.get(0).attributes.getAsJsonObject("content").get("eventTypeId").getAsString(),"EventTypeDelete")){
-                    digitalObject=null;
-                } else{
-                    digitalObject.setAttribute("content",provenanceRecords.get(0).attributes.getAsJsonObject("content").getAsJsonObject("data").getAsJsonObject("entityContent"));
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.getObjectAtGivenTime(objectId, utcIsoDatetime);
+        }
+        try {
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient();
+                DigitalObjectRepositoryClient provenanceRepositoryClient = this.getProvenanceRepositoryClientPool().borrowClient()){
+
+                DigitalObject digitalObject = digitalObjectRepositoryClient.retrieve(objectId);
+                if (digitalObject!=null){
+                    String timestampTo = StringUtils.isNotBlank(utcIsoDatetime) ? provenanceRepositoryClient.escapeQueryParamValue(utcIsoDatetime) : "*";
+                    String query = "type:EventProvenanceRecord " +
+                            "AND (/eventTypeId:EventTypeInsert OR /eventTypeId:EventTypeUpdate OR /eventTypeId:EventTypeDelete) " +
+                            "AND /entityId:" + provenanceRepositoryClient.escapeQueryParamValue(objectId);
+                    List<SortField> latestFirst = Collections.singletonList(new SortField("/timestamp", true));
+
+                    DigitalObject latestProvenanceRecord = provenanceRepositoryClient.searchFirst(
+                            query + " AND /timestamp:[* TO " + timestampTo + "]", latestFirst);
+                    JsonElement content = null;
+                    if (latestProvenanceRecord!=null && this.hasEntityContentPatch(latestProvenanceRecord)){
+                        //Rebuild the content from the latest record with the whole content and the patches of the following updates
+                        DigitalObject baseProvenanceRecord = provenanceRepositoryClient.searchFirst(query + " AND /timestamp:[* TO " + timestampTo + "]"
+                                + " AND NOT /data/entityContentFormat:" + ENTITY_CONTENT_FORMAT_JSON_PATCH, latestFirst);
+                        if (baseProvenanceRecord==null || this.isDeleteProvenanceRecord(baseProvenanceRecord)){
+                            throw new DigitalObjectRepositoryException("The object " + objectId + " can't be rebuilt at " + utcIsoDatetime
+                                    + ": there is no provenance record with its whole content before the updates stored as patches");
+                        }
+                        String baseTimestamp = this.getProvenanceRecordTimestamp(baseProvenanceRecord);
+                        List<DigitalObject> patchProvenanceRecords;
+                        //Only the fields needed to sort and apply the patches are transferred
+                        try (Stream<DigitalObject> provenanceRecords = provenanceRepositoryClient.searchStream(query
+                                + " AND /timestamp:[" + provenanceRepositoryClient.escapeQueryParamValue(baseTimestamp) + " TO " + timestampTo + "]"
+                                + " AND /data/entityContentFormat:" + ENTITY_CONTENT_FORMAT_JSON_PATCH, PATCH_PROVENANCE_RECORD_FIELDS)) {
+                            //The base record isn't a patch, so it isn't in the results even if a patch has its same timestamp,
+                            //and the patches with the same timestamp are applied in a stable order
+                            patchProvenanceRecords = provenanceRecords
+                                    .sorted(Comparator.comparing(this::getProvenanceRecordTimestamp).thenComparing(provenanceRecord -> provenanceRecord.id))
+                                    .collect(Collectors.toList());
+                        } catch (UncheckedDigitalObjectRepositoryException e){
+                            throw e.getCause();
+                        }
 
-                    JsonObject metadata = digitalObject.attributes.getAsJsonObject("metadata");
-                    metadata.addProperty("modifiedOn",provenanceRecords.get(0).attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong());
-                    metadata.addProperty("modifiedBy",provenanceRecords.get(0).attributes.getAsJsonObject("content").get("agentId").getAsString());
-                    digitalObject.setAttribute("metadata",metadata);
+                        content = baseProvenanceRecord.attributes.getAsJsonObject("content").getAsJsonObject("data").get("entityContent");
+                        for (DigitalObject patchProvenanceRecord:patchProvenanceRecords) {
+                            JsonArray entityContentPatch = patchProvenanceRecord.attributes.getAsJsonObject("content").getAsJsonObject("data").getAsJsonArray("entityContentPatch");
+                            try {
+                                content = JsonUtils.applyJsonPatch(content, entityContentPatch);
+                            } catch (IllegalArgumentException e){
+                                throw new DigitalObjectRepositoryException("The object " + objectId + " can't be rebuilt at " + utcIsoDatetime
+                                        + ": the patch of the provenance record " + patchProvenanceRecord.id + " can't be applied. " + e.getMessage(), e);
+                            }
+                        }
+                    } else if (latestProvenanceRecord!=null && !this.isDeleteProvenanceRecord(latestProvenanceRecord)){
+                        content = latestProvenanceRecord.attributes.getAsJsonObject("content").getAsJsonObject("data").get("entityContent");
+                    }
+
+                    if (content==null){
+                        digitalObject=null;
+                    } else{
+                        digitalObject.setAttribute("content",content);
+
+                        JsonObject metadata = digitalObject.attributes.getAsJsonObject("metadata");
+                        metadata.addProperty("modifiedOn",latestProvenanceRecord.attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong());
+                        metadata.addProperty("modifiedBy",latestProvenanceRecord.attributes.getAsJsonObject("content").get("agentId").getAsString());
+                        digitalObject.setAttribute("metadata",metadata);
+                    }
                 }
+                return digitalObject;
             }
-            return digitalObject;
+        } finally {
+            this.endCall();
         }
     }
 
@@ -357,22 +761,158 @@ public class DigitalObjectEventController {
      * @return id of the revision generated
      */
     public String publishVersion(String objectId) throws DigitalObjectRepositoryException {
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);){
-            DigitalObject version = digitalObjectRepositoryClient.publishVersion(objectId);
-            return version.id;
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.publishVersion(objectId);
+        }
+        try {
+            try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient();){
+                DigitalObject version = digitalObjectRepositoryClient.publishVersion(objectId);
+                return version.id;
+            }
+        } finally {
+            this.endCall();
         }
     }
 
+    /**
+     * Function that returns the provenance records of an object as a json array
+     * Note: the whole array is kept in memory. For objects with long histories use exportProvenanceRecordsForObject
+     * @param objectId
+     * @return json array with the provenance records
+     * @throws DigitalObjectRepositoryException
+     */
     public String getProvenanceRecordsForObject(String objectId) throws DigitalObjectRepositoryException {
-        DigitalObjectRepositoryInfo provenanceRepositoryInfo =  DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient provenanceRepositoryClient = new DigitalObjectRepositoryClient(provenanceRepositoryInfo)){
-            String query = "type:EventProvenanceRecord AND /entityId:" + provenanceRepositoryClient.escapeQueryParamValue(objectId);
-            List<DigitalObject> provenanceRecords = provenanceRepositoryClient.searchAll(query);
-            return JsonUtils.serializeObject(provenanceRecords.stream().toArray(DigitalObject[]::new));
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.getProvenanceRecordsForObject(objectId);
+        }
+        try {
+            StringWriter writer = new StringWriter();
+            try (JsonRecordWriter jsonRecordWriter = new JsonRecordWriter(writer, JsonRecordWriter.FORMAT.JSON_ARRAY)){
+                this.exportProvenanceRecordsForObject(objectId, jsonRecordWriter);
+            } catch (IOException e){
+                throw new DigitalObjectRepositoryException("Error serializing the provenance records of " + objectId + ": " + e.getMessage(), e);
+            }
+            return writer.toString();
+        } finally {
+            this.endCall();
+        }
+    }
+
+    /**
+     * Function that writes the provenance records of an object as they are received from the repository, so they are
+     * not kept in memory. The stream is not closed
+     * @param objectId
+     * @param outputStream stream where the provenance records are written
+     * @param format newline delimited json or json array
+     * @param gzip if true, the output is compressed with gzip
+     * @return number of provenance records written
+     * @throws DigitalObjectRepositoryException
+     */
+    public long exportProvenanceRecordsForObject(String objectId, OutputStream outputStream, JsonRecordWriter.FORMAT format, boolean gzip) throws DigitalObjectRepositoryException {
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.exportProvenanceRecordsForObject(objectId, outputStream, format, gzip);
+        }
+        try {
+            try {
+                JsonRecordWriter jsonRecordWriter = new JsonRecordWriter(outputStream, format, gzip);
+                this.exportProvenanceRecordsForObject(objectId, jsonRecordWriter);
+                jsonRecordWriter.finish();
+                return jsonRecordWriter.getNumRecords();
+            } catch (IOException e){
+                throw new DigitalObjectRepositoryException("Error exporting the provenance records of " + objectId + ": " + e.getMessage(), e);
+            }
+        } finally {
+            this.endCall();
+        }
+    }
+
+    /**
+     * Function that writes the provenance records of an object as they are received from the repository, so they are
+     * not kept in memory. The writer is not closed
+     * @param objectId
+     * @param writer writer where the provenance records are written
+     * @param format newline delimited json or json array
+     * @return number of provenance records written
+     * @throws DigitalObjectRepositoryException
+     */
+    public long exportProvenanceRecordsForObject(String objectId, Writer writer, JsonRecordWriter.FORMAT format) throws DigitalObjectRepositoryException {
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.exportProvenanceRecordsForObject(objectId, writer, format);
+        }
+        try {
+            try {
+                JsonRecordWriter jsonRecordWriter = new JsonRecordWriter(writer, format);
+                this.exportProvenanceRecordsForObject(objectId, jsonRecordWriter);
+                jsonRecordWriter.finish();
+                return jsonRecordWriter.getNumRecords();
+            } catch (IOException e){
+                throw new DigitalObjectRepositoryException("Error exporting the provenance records of " + objectId + ": " + e.getMessage(), e);
+            }
+        } finally {
+            this.endCall();
+        }
+    }
+
+    /**
+     * Function that exports to a file the provenance records of several objects, one object after another
+     * @param objectIds
+     * @param file file where the provenance records are written. It is overwritten if it exists
+     * @param format newline delimited json or json array
+     * @param gzip if true, the file is compressed with gzip
+     * @return number of provenance records written
+     * @throws DigitalObjectRepositoryException
+     */
+    public long exportProvenanceRecordsForObjects(Collection<String> objectIds, Path file, JsonRecordWriter.FORMAT format, boolean gzip) throws DigitalObjectRepositoryException {
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.exportProvenanceRecordsForObjects(objectIds, file, format, gzip);
+        }
+        try {
+            try (JsonRecordWriter jsonRecordWriter = new JsonRecordWriter(Files.newOutputStream(file), format, gzip)){
+                for (String objectId:objectIds) {
+                    this.exportProvenanceRecordsForObject(objectId, jsonRecordWriter);
+                }
+                jsonRecordWriter.finish();
+                return jsonRecordWriter.getNumRecords();
+            } catch (IOException e){
+                throw new DigitalObjectRepositoryException("Error exporting provenance records to " + file + ": " + e.getMessage(), e);
+            }
+        } finally {
+            this.endCall();
         }
     }
 
+    /**
+     * Function that exports to a file the provenance records that satisfy the query criteria
+     * @param query query using Lucene Query Syntax, e.g. "type:EventProvenanceRecord AND /eventTypeId:EventTypeUpdate"
+     * @param file file where the provenance records are written. It is overwritten if it exists
+     * @param format newline delimited json or json array
+     * @param gzip if true, the file is compressed with gzip
+     * @return number of provenance records written
+     * @throws DigitalObjectRepositoryException
+     */
+    public long exportProvenanceRecordsForQuery(String query, Path file, JsonRecordWriter.FORMAT format, boolean gzip) throws DigitalObjectRepositoryException {
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            return successor.exportProvenanceRecordsForQuery(query, file, format, gzip);
+        }
+        try {
+            try (JsonRecordWriter jsonRecordWriter = new JsonRecordWriter(Files.newOutputStream(file), format, gzip);
+                 DigitalObjectRepositoryClient provenanceRepositoryClient = this.getProvenanceRepositoryClientPool().borrowClient()){
+                this.exportSearchResults(provenanceRepositoryClient, query, jsonRecordWriter);
+                jsonRecordWriter.finish();
+                return jsonRecordWriter.getNumRecords();
+            } catch (IOException e){
+                throw new DigitalObjectRepositoryException("Error exporting provenance records to " + file + ": " + e.getMessage(), e);
+            }
+        } finally {
+            this.endCall();
+        }
+    }
 
     /**
      * Function that generate a revision for the digital object received as parameter
@@ -380,16 +920,287 @@ public class DigitalObjectEventController {
      * @return id of the revision generated
      */
     private String publishRevision(DigitalObject digitalObject) throws DigitalObjectRepositoryException {
-        DigitalObjectRepositoryInfo digitalObjectRepositoryInfo =  DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(this.getConfig());
-        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = new DigitalObjectRepositoryClient(digitalObjectRepositoryInfo);){
+        try(DigitalObjectRepositoryClient digitalObjectRepositoryClient = this.getDigitalObjectRepositoryClientPool().borrowClient();){
             DigitalObject version = digitalObjectRepositoryClient.publishVersion(digitalObject.id);
             return version.id;
         }
     }
 
-    private DigitalObject getDigitalObjectFromString(String strJsonObject){
-        Gson gson = new Gson();
-        JsonObject object = gson.fromJson(strJsonObject, JsonObject.class);
+    /**
+     * Probe used to check if a digital object has been created in the repository
+     * @param digitalObjectRepositoryClient client of the digital object repository
+     * @param digitalObject digital object received in the create event
+     * @param context context of the create event
+     * @return the digital object created, or null if it is not found in the repository yet
+     * @throws DigitalObjectRepositoryException
+     */
+    private DigitalObject findCreatedObject(DigitalObjectRepositoryClient digitalObjectRepositoryClient, DigitalObject digitalObject,
+                                            JsonObject context) throws DigitalObjectRepositoryException {
+        String objectId = digitalObject.id;
+        if (StringUtils.isBlank(objectId) && context.has("objectId") && !context.get("objectId").isJsonNull()){
+            objectId = context.get("objectId").getAsString();
+        }
+        if (StringUtils.isBlank(objectId)){
+            //The id is not known yet, so we look for it using the search ids operation, as it is cheaper than the search one
+            String metaQuery = "metadata/createdBy:" + digitalObjectRepositoryClient.escapeQueryParamValue(context.get("userId").getAsString());
+            objectId = digitalObjectRepositoryClient.searchForObjectId(digitalObject, metaQuery);
+        }
+        return StringUtils.isBlank(objectId) ? null : digitalObjectRepositoryClient.retrieve(objectId);
+    }
+
+    /**
+     * Probe used to check if the update of a digital object has been stored in the repository
+     * @param digitalObjectRepositoryClient client of the digital object repository
+     * @param modifiedDigitalObject modified digital object received in the update event
+     * @param context context of the update event
+     * @param eventTimestamp epoch millis when the update event was received
+     * @return the digital object updated, or null if the update is not found in the repository yet
+     * @throws DigitalObjectRepositoryException
+     */
+    private DigitalObject findUpdatedObject(DigitalObjectRepositoryClient digitalObjectRepositoryClient, DigitalObject modifiedDigitalObject,
+                                            JsonObject context, Long eventTimestamp) throws DigitalObjectRepositoryException {
+        String objectId = StringUtils.isNotBlank(modifiedDigitalObject.id) ? modifiedDigitalObject.id : context.get("objectId").getAsString();
+        DigitalObject digitalObject = digitalObjectRepositoryClient.retrieve(objectId);
+        if (digitalObject != null){
+            JsonObject metadata = digitalObject.attributes.getAsJsonObject("metadata");
+            if (metadata.get("modifiedOn").getAsLong() >= eventTimestamp &&
+                    StringUtils.equals(metadata.get("modifiedBy").getAsString(), context.get("userId").getAsString())){
+                return digitalObject;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Submit the processing of an event to the event processing executor
+     * Note: a rejected event must not make the Cordra operation that fired it fail, so the error is only reported
+     * @param pendingEvent event
+     * @param eventProcessing task that starts the processing of the event and returns a future completed when it has finished
+     */
+    private void submitEvent(PendingEvent pendingEvent, Supplier<CompletableFuture<Void>> eventProcessing){
+        try {
+            this.getEventProcessingExecutor().submit(eventProcessing);
+        } catch (RejectedExecutionException e){
+            this.getMetricsRegistry().eventDropped(pendingEvent.getEventType().name());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the provenance records of an object
+     * @param objectId
+     * @param jsonRecordWriter writer where the provenance records are written
+     * @throws DigitalObjectRepositoryException
+     * @throws IOException
+     */
+    private void exportProvenanceRecordsForObject(String objectId, JsonRecordWriter jsonRecordWriter) throws DigitalObjectRepositoryException, IOException {
+        try(DigitalObjectRepositoryClient provenanceRepositoryClient = this.getProvenanceRepositoryClientPool().borrowClient()){
+            String query = "type:EventProvenanceRecord AND /entityId:" + provenanceRepositoryClient.escapeQueryParamValue(objectId);
+            this.exportSearchResults(provenanceRepositoryClient, query, jsonRecordWriter);
+        }
+    }
+
+    /**
+     * Write the results of a search as the pages are received, reading the next page while the current one is written
+     * @param repositoryClient client of the repository where the search is done
+     * @param query query using Lucene Query Syntax
+     * @param jsonRecordWriter writer where the results are written
+     * @throws DigitalObjectRepositoryException
+     * @throws IOException
+     */
+    private void exportSearchResults(DigitalObjectRepositoryClient repositoryClient, String query, JsonRecordWriter jsonRecordWriter) throws DigitalObjectRepositoryException, IOException {
+        try (SearchResultsIterator searchResults = repositoryClient.searchIterator(query, repositoryClient.getSearchPageSize(), true)){
+            while (searchResults.hasNext()){
+                jsonRecordWriter.write(searchResults.next());
+            }
+        } catch (UncheckedDigitalObjectRepositoryException e){
+            throw e.getCause();
+        }
+    }
+
+    private String getProvenanceRecordTimestamp(DigitalObject provenanceRecord){
+        return provenanceRecord.attributes.getAsJsonObject("content").get("timestamp").getAsString();
+    }
+
+    private boolean isDeleteProvenanceRecord(DigitalObject provenanceRecord){
+        return StringUtils.containsIgnoreCase(provenanceRecord.attributes.getAsJsonObject("content").get("eventTypeId").getAsString(),"EventTypeDelete");
+    }
+
+    /**
+     * Check whether a provenance record only stores the patch of the content of the object against the previous record
+     * @param provenanceRecord provenance record
+     * @return true if it stores a patch, false if it stores the whole content or no content
+     */
+    private boolean hasEntityContentPatch(DigitalObject provenanceRecord){
+        JsonObject provenanceContent = provenanceRecord.attributes.getAsJsonObject("content");
+        return provenanceContent.has("data") && provenanceContent.getAsJsonObject("data").has("entityContentFormat")
+                && ENTITY_CONTENT_FORMAT_JSON_PATCH.equals(provenanceContent.getAsJsonObject("data").get("entityContentFormat").getAsString());
+    }
+
+    /**
+     * Queue a provenance record to be written in the provenance repository with the next batch, and acknowledge its
+     * event in the event journal once it is written
+     * Note: the record is written asynchronously, so errors are reported when its batch is written
+     * @param provenanceRecord provenance record to be saved
+     * @param journalSequence sequence number of the event in the event journal
+     * @param pendingEvent event of the provenance record
+     * @return future completed when the provenance record has been written or has failed
+     */
+    private CompletableFuture<Void> saveProvenanceRecord(DigitalObject provenanceRecord, long journalSequence, PendingEvent pendingEvent){
+        String eventType = pendingEvent.getEventType().name();
+        String entityId = provenanceRecord.attributes.getAsJsonObject("content").get("entityId").getAsString();
+        Span createSpan = Tracing.beginStage(MetricsRegistry.STAGE.PROVENANCE_CREATE, eventType, entityId);
+        return this.getProvenanceRecordBatchWriter().submit(provenanceRecord).handle((provenanceRecordSaved, error) -> {
+            createSpan.end();
+            if (error != null){
+                //The following updates of the object can't be stored as patches of the content of a record that wasn't saved
+                this.getProvenanceStoragePolicy().forget(entityId);
+                this.getMetricsRegistry().eventFailed(eventType);
+                error.printStackTrace();
+            } else{
+                this.getMetricsRegistry().eventSucceeded(eventType);
+                this.acknowledgeEvent(journalSequence);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Register a call in progress, so the controller isn't closed while the call is using it
+     * Note: every call that gets null must call endCall when it finishes
+     * @return successor of the controller if it has been retired, to which the call must be forwarded, or null if
+     * the call can be done by this controller
+     */
+    private DigitalObjectEventController beginCall(){
+        this.activeCalls.incrementAndGet();
+        DigitalObjectEventController successor = this.successor;
+        if (successor != null){
+            this.endCall();
+        }
+        return successor;
+    }
+
+    private void endCall(){
+        if (this.activeCalls.decrementAndGet() == 0 && this.successor != null){
+            synchronized (this.activeCalls) {
+                this.activeCalls.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Append an event to the event journal and submit its processing
+     * Note: if the event can't be written in the journal it is still processed, but it would be lost if Cordra stops
+     * before its provenance record is saved
+     * @param pendingEvent event
+     */
+    private void acceptEvent(PendingEvent pendingEvent){
+        DigitalObjectEventController successor = this.beginCall();
+        if (successor != null){
+            successor.acceptEvent(pendingEvent);
+            return;
+        }
+        try {
+            long journalSequence = -1;
+            try {
+                journalSequence = this.getEventJournal().append(pendingEvent.toBytes());
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+            long sequence = journalSequence;
+            String correlationId = Tracing.newCorrelationId();
+            this.getMetricsRegistry().eventAccepted(pendingEvent.getEventType().name());
+            this.submitEvent(pendingEvent, () -> this.processPendingEvent(sequence, pendingEvent, correlationId));
+        } finally {
+            this.endCall();
+        }
+    }
+
+    /**
+     * Save the provenance record of an event accepted by this controller or recovered from the event journal
+     * @param journalSequence sequence number of the event in the event journal, or -1 if it isn't journaled
+     * @param pendingEvent event
+     * @param correlationId id that ties the stages of the processing of the event and the repository calls done for
+     *                      it in the flight recorder events
+     * @return future completed when the processing of the event has finished
+     */
+    private CompletableFuture<Void> processPendingEvent(long journalSequence, PendingEvent pendingEvent, String correlationId){
+        String previousCorrelationId = Tracing.setCorrelationId(correlationId);
+        try {
+            switch (pendingEvent.getEventType()){
+                case CREATE:
+                    return this.saveProvenanceRecordForCreateEvent(journalSequence, pendingEvent);
+                case UPDATE:
+                    return this.saveProvenanceRecordForUpdateEvent(journalSequence, pendingEvent);
+                case DELETE:
+                    return this.saveProvenanceRecordForDeleteEvent(journalSequence, pendingEvent);
+                default:
+                    return CompletableFuture.completedFuture(null);
+            }
+        } catch (RuntimeException e){
+            //e.g. the json of the event can't be parsed, as the errors while saving its provenance record are caught
+            this.getMetricsRegistry().eventFailed(pendingEvent.getEventType().name());
+            e.printStackTrace();
+            return CompletableFuture.completedFuture(null);
+        } finally {
+            Tracing.setCorrelationId(previousCorrelationId);
+        }
+    }
+
+    /**
+     * Mark an event as processed in the event journal, so it isn't processed again when the controller is restarted
+     * @param journalSequence sequence number of the event in the event journal, or -1 if it isn't journaled
+     */
+    private void acknowledgeEvent(long journalSequence){
+        if (journalSequence < 0){
+            return;
+        }
+        try {
+            this.getEventJournal().ack(journalSequence);
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Submit the processing of the events recovered from the event journal, i.e. the events accepted by a previous
+     * controller whose provenance record was not saved. It is done in a separate thread so a long backlog doesn't
+     * delay the creation of the controller
+     * Note: an event whose provenance record was saved just before Cordra stopped, but not acknowledged, is processed
+     * again, so its provenance record could be saved twice
+     */
+    private void replayEventJournal(){
+        SortedMap<Long, byte[]> recoveredEvents = this.getEventJournal().getRecoveredEvents();
+        if (recoveredEvents.isEmpty()){
+            return;
+        }
+        Thread replayThread = new Thread(() -> {
+            for (Map.Entry<Long, byte[]> recoveredEvent:recoveredEvents.entrySet()) {
+                PendingEvent pendingEvent;
+                try {
+                    pendingEvent = PendingEvent.fromBytes(recoveredEvent.getValue());
+                } catch (RuntimeException e){
+                    //It can't be processed, so it is discarded instead of being recovered on every restart
+                    e.printStackTrace();
+                    this.acknowledgeEvent(recoveredEvent.getKey());
+                    continue;
+                }
+                String correlationId = Tracing.newCorrelationId();
+                this.getMetricsRegistry().eventAccepted(pendingEvent.getEventType().name());
+                this.submitEvent(pendingEvent, () -> this.processPendingEvent(recoveredEvent.getKey(), pendingEvent, correlationId));
+            }
+        }, "doec-event-journal-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    /**
+     * Convert the json of a CORDRA object received in an event into a digital object with its type, id and content
+     * @param strJsonObject json of the CORDRA object
+     * @return digital object
+     */
+    static DigitalObject getDigitalObjectFromString(String strJsonObject){
+        JsonObject object = JsonCodec.parseJsonObject(strJsonObject);
         JsonObject dobjContent = object.getAsJsonObject("content");
         DigitalObject digitalObject = new DigitalObject();
         digitalObject.type=object.get("type").getAsString();
@@ -401,8 +1212,7 @@ public class DigitalObjectEventController {
     }
 
     private JsonObject getJsonObjectFromString(String strJson){
-        Gson gson = new Gson();
-        return gson.fromJson(strJson, JsonObject.class);
+        return JsonCodec.parseJsonObject(strJson);
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,205 @@
+package eu.dissco.doec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of DigitalObjectEventController instances keyed by the path of their configuration file.
+ * Cordra hooks are called once per request, so instead of building a new controller (and parsing the configuration
+ * file) on every call, they should get the shared controller from this registry:
+ *      var DigitalObjectEventControllerRegistry = Java.type("eu.dissco.doec.DigitalObjectEventControllerRegistry");
+ *      var doec = DigitalObjectEventControllerRegistry.getController(doecConfigFilePath.toString());
+ * The controller is only rebuilt when the modification time of its configuration file changes
+ */
+public final class DigitalObjectEventControllerRegistry {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    //Key used for the controller built from the config.properties found in the resources
+    private static final String RESOURCE_CONFIG_KEY = "classpath:config.properties";
+
+    private static final Map<String, RegisteredController> controllers = new ConcurrentHashMap<>();
+
+    //Locks that serialize the (re)loading of the controller of every configuration file
+    private static final Map<String, Object> reloadLocks = new ConcurrentHashMap<>();
+
+    //Threads closing the controllers replaced by a new one, with the key of their configuration file
+    private static final Map<Thread, String> retireThreads = new ConcurrentHashMap<>();
+
+    static {
+        //Make sure the controllers are shut down when the Cordra JVM stops, even if nobody calls shutdown() explicitly
+        Runtime.getRuntime().addShutdownHook(new Thread(DigitalObjectEventControllerRegistry::shutdown, "doec-registry-shutdown"));
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private DigitalObjectEventControllerRegistry() {
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the shared controller for the configuration file received as parameter, creating it if needed.
+     * If the configuration file has been modified since the controller was created, a new controller is built
+     * and replaces the previous one. The previous controller forwards the calls it still receives to the new one, and
+     * it is closed in the background once the calls in progress have finished
+     * @param configFilePath path of the configuration file. If null, config.properties is loaded from the resources
+     * @return shared, fully initialised controller
+     * @throws Exception
+     */
+    public static DigitalObjectEventController getController(String configFilePath) throws Exception {
+        String key = getRegistryKey(configFilePath);
+        long lastModified = getLastModified(configFilePath);
+
+        RegisteredController registeredController = controllers.get(key);
+        if (registeredController != null && registeredController.getLastModified() == lastModified) {
+            return registeredController.getController();
+        }
+
+        //The controller is built outside the map, as it takes a while (e.g. it loads the reference dictionary), so only
+        //the threads (re)loading the same configuration wait. The rest keep using the previous controller meanwhile
+        synchronized (reloadLocks.computeIfAbsent(key, k -> new Object())) {
+            registeredController = controllers.get(key);
+            if (registeredController != null && registeredController.getLastModified() == lastModified) {
+                //Another thread has already (re)loaded the controller
+                return registeredController.getController();
+            }
+            DigitalObjectEventController previousController = registeredController != null ? registeredController.getController() : null;
+            //If it fails, the previous controller is kept and the controller is created again on the next call
+            DigitalObjectEventController controller = new DigitalObjectEventController(configFilePath, previousController);
+            controllers.put(key, new RegisteredController(controller, lastModified));
+            if (previousController != null) {
+                retire(key, previousController, controller);
+            }
+            return controller;
+        }
+    }
+
+    /**
+     * Remove from the registry the controller for the configuration file received as parameter and close it, once
+     * the controllers it replaced have been closed
+     * @param configFilePath path of the configuration file
+     */
+    public static void shutdown(String configFilePath) {
+        String key = getRegistryKey(configFilePath);
+        RegisteredController registeredController = controllers.remove(key);
+        waitForRetiredControllers(key);
+        if (registeredController != null) {
+            registeredController.getController().close();
+        }
+    }
+
+    /**
+     * Remove all the controllers from the registry and close them, once the controllers they replaced have been
+     * closed. It should be called when Cordra stops
+     */
+    public static void shutdown() {
+        waitForRetiredControllers(null);
+        for (String key : controllers.keySet()) {
+            RegisteredController registeredController = controllers.remove(key);
+            if (registeredController != null) {
+                registeredController.getController().close();
+            }
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Close a controller replaced by a new one once the calls it is doing have finished, in a separate thread so
+     * the call that reloaded the configuration is not delayed while its pending events are processed
+     * @param key registry key of the configuration file
+     * @param previousController controller replaced
+     * @param controller new controller
+     */
+    private static void retire(String key, DigitalObjectEventController previousController, DigitalObjectEventController controller) {
+        Thread retireThread = new Thread(() -> {
+            try {
+                previousController.retire(controller);
+                previousController.close();
+            } finally {
+                retireThreads.remove(Thread.currentThread());
+            }
+        }, "doec-controller-retire");
+        retireThread.setDaemon(true);
+        retireThreads.put(retireThread, key);
+        retireThread.start();
+    }
+
+    /**
+     * Wait until the controllers being retired have been closed. The controller that replaced them must not be closed
+     * before, as it might have taken over their event journal, where they acknowledge the events they process
+     * @param key registry key of the configuration file whose controllers are waited for, or null to wait for all
+     */
+    private static void waitForRetiredControllers(String key) {
+        for (Map.Entry<Thread, String> retireThread : retireThreads.entrySet()) {
+            if (key == null || key.equals(retireThread.getValue())) {
+                try {
+                    retireThread.getKey().join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private static String getRegistryKey(String configFilePath) {
+        if (configFilePath == null) {
+            return RESOURCE_CONFIG_KEY;
+        }
+        return Paths.get(configFilePath).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Get the modification time of the configuration file
+     * @param configFilePath path of the configuration file
+     * @return modification time in milliseconds, or 0 if the configuration is loaded from the resources
+     * @throws IOException
+     */
+    private static long getLastModified(String configFilePath) throws IOException {
+        if (configFilePath == null) {
+            return 0L;
+        }
+        Path path = Paths.get(configFilePath);
+        return Files.getLastModifiedTime(path).toMillis();
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    private static final class RegisteredController {
+        private final DigitalObjectEventController controller;
+        private final long lastModified;
+
+        RegisteredController(DigitalObjectEventController controller, long lastModified) {
+            this.controller = controller;
+            this.lastModified = lastModified;
+        }
+
+        DigitalObjectEventController getController() {
+            return controller;
+        }
+
+        long getLastModified() {
+            return lastModified;
+        }
+    }
+}
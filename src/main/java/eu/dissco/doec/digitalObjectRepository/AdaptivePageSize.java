@@ -0,0 +1,106 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+/**
+ * Page size used for the searches in a repository, adapted to the size and latency of the pages observed.
+ * Larger pages mean fewer round-trips, but a page should neither take too long to be returned nor be too big, so
+ * after every full page the page size moves towards the size that would take the target latency and stay under
+ * the maximum response size. It never goes below the page size configured nor above the maximum page size
+ */
+public class AdaptivePageSize {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final long DEFAULT_TARGET_LATENCY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_RESPONSE_BYTES = 4 * 1024 * 1024;
+
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final long targetLatencyMillis;
+    private final long maxResponseBytes;
+    private volatile int pageSize;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public int getMinPageSize() {
+        return minPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public long getTargetLatencyMillis() {
+        return targetLatencyMillis;
+    }
+
+    public long getMaxResponseBytes() {
+        return maxResponseBytes;
+    }
+
+    /**
+     * Get the page size to be used in the next search
+     * @return page size
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new AdaptivePageSize with the default target latency and maximum response size
+     * @param minPageSize initial and minimum page size
+     * @param maxPageSize maximum page size
+     */
+    public AdaptivePageSize(int minPageSize, int maxPageSize) {
+        this(minPageSize, maxPageSize, DEFAULT_TARGET_LATENCY_MILLIS, DEFAULT_MAX_RESPONSE_BYTES);
+    }
+
+    /**
+     * Create a new AdaptivePageSize
+     * @param minPageSize initial and minimum page size
+     * @param maxPageSize maximum page size
+     * @param targetLatencyMillis time that a page should take to be returned
+     * @param maxResponseBytes approximate maximum size of a page
+     */
+    public AdaptivePageSize(int minPageSize, int maxPageSize, long targetLatencyMillis, long maxResponseBytes) {
+        this.minPageSize = Math.max(1, minPageSize);
+        this.maxPageSize = Math.max(this.minPageSize, maxPageSize);
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.maxResponseBytes = maxResponseBytes;
+        this.pageSize = this.minPageSize;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Record a page returned by the repository and adapt the page size accordingly. Pages that are not full are
+     * ignored, as their latency and size don't correspond to the page size requested
+     * @param requestedPageSize page size requested
+     * @param numResults number of results returned
+     * @param responseBytes approximate size of the results returned
+     * @param latencyMillis time taken to return the page
+     */
+    public void record(int requestedPageSize, int numResults, long responseBytes, long latencyMillis) {
+        if (numResults < requestedPageSize || this.getMinPageSize() == this.getMaxPageSize()){
+            return;
+        }
+        double latencyBasedPageSize = requestedPageSize * (double) this.getTargetLatencyMillis() / Math.max(1L, latencyMillis);
+        double sizeBasedPageSize = responseBytes > 0 ? requestedPageSize * (double) this.getMaxResponseBytes() / responseBytes : Double.MAX_VALUE;
+        //Move halfway towards the new estimate, and at most double the page size at a time, to avoid oscillations
+        double proposedPageSize = Math.min(Math.min(latencyBasedPageSize, sizeBasedPageSize), 2.0 * requestedPageSize);
+        int newPageSize = (int) ((this.pageSize + proposedPageSize) / 2);
+        this.pageSize = Math.max(this.getMinPageSize(), Math.min(this.getMaxPageSize(), newPageSize));
+    }
+}
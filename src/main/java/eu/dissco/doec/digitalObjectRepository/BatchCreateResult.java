@@ -0,0 +1,57 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import net.dona.doip.client.DigitalObject;
+
+/**
+ * Result of creating one of the digital objects sent in a batch: either the digital object created or the error
+ * that prevented it from being created
+ */
+public class BatchCreateResult {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final DigitalObject digitalObject;
+    private final DigitalObjectRepositoryException error;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public DigitalObject getDigitalObject() {
+        return digitalObject;
+    }
+
+    public DigitalObjectRepositoryException getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private BatchCreateResult(DigitalObject digitalObject, DigitalObjectRepositoryException error) {
+        this.digitalObject = digitalObject;
+        this.error = error;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    public static BatchCreateResult success(DigitalObject digitalObject) {
+        return new BatchCreateResult(digitalObject, null);
+    }
+
+    public static BatchCreateResult failure(DigitalObjectRepositoryException error) {
+        return new BatchCreateResult(null, error);
+    }
+}
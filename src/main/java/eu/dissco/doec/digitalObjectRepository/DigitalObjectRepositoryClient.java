@@ -1,11 +1,19 @@
 package eu.dissco.doec.digitalObjectRepository;
 
 import com.google.common.collect.MapDifference;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import eu.dissco.doec.metrics.Span;
+import eu.dissco.doec.metrics.Tracing;
+import eu.dissco.doec.utils.JsonCodec;
+import eu.dissco.doec.utils.JsonTreeDiff;
 import eu.dissco.doec.utils.JsonUtils;
 import net.cnri.cordra.api.CordraClient;
 import net.cnri.cordra.api.CordraException;
+import net.cnri.cordra.api.CordraObject;
 import net.cnri.cordra.api.HttpCordraClient;
 import net.cnri.cordra.api.VersionInfo;
 import net.dona.doip.DoipRequestHeaders;
@@ -13,13 +21,23 @@ import net.dona.doip.InDoipMessage;
 import net.dona.doip.client.*;
 import net.dona.doip.client.transport.DoipClientResponse;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class DigitalObjectRepositoryClient implements AutoCloseable {
 
@@ -32,6 +50,19 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
     private final CordraClient restClient;
     private final AuthenticationInfo authInfo;
     private final ServiceInfo serviceInfo;
+    private DigitalObjectRepositoryClientPool pool;
+
+    //Whether the repositories (by url) support the batch upload of the CORDRA REST API. Unknown until first used
+    private static final Map<String, Boolean> batchUploadSupport = new ConcurrentHashMap<>();
+
+    //Page size used in the searches of the repositories (by url), adapted to the pages observed
+    private static final Map<String, AdaptivePageSize> adaptivePageSizes = new ConcurrentHashMap<>();
+
+    //Version timelines of the objects of the repositories (by url)
+    private static final Map<String, VersionTimelineCache> versionTimelineCaches = new ConcurrentHashMap<>();
+
+    //Published versions of the objects of the repositories (by url)
+    private static final Map<String, VersionObjectCache> versionObjectCaches = new ConcurrentHashMap<>();
 
 
     /**************/
@@ -69,6 +100,52 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
         return serviceInfo;
     }
 
+    DigitalObjectRepositoryClientPool getPool() {
+        return pool;
+    }
+
+    void setPool(DigitalObjectRepositoryClientPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Get the executor for the requests done concurrently (pages of parallel searches, versions of objects), which is
+     * the one of the pool the client was borrowed from. Clients not borrowed from a pool do those requests one after
+     * the other in the calling thread
+     * @return executor of the concurrent requests
+     */
+    Executor getWorkerExecutor() {
+        return this.getPool() != null ? this.getPool().getWorkerExecutor() : Runnable::run;
+    }
+
+    /**
+     * Get the page size to be used in the searches, adapted to the size and latency of the pages observed in
+     * previous searches in the same repository
+     * @return page size
+     */
+    public int getSearchPageSize() {
+        return this.getAdaptivePageSize().getPageSize();
+    }
+
+    AdaptivePageSize getAdaptivePageSize() {
+        return adaptivePageSizes.computeIfAbsent(this.getDigitalObjectRepositoryInfo().getUrl(), url ->
+                new AdaptivePageSize(this.getDigitalObjectRepositoryInfo().getPageSize(), this.getDigitalObjectRepositoryInfo().getMaxPageSize()));
+    }
+
+    /**
+     * Get the cache of the published versions of the objects of the repository, shared by all its clients
+     * @return cache of versions
+     */
+    public VersionObjectCache getVersionObjectCache() {
+        return versionObjectCaches.computeIfAbsent(this.getDigitalObjectRepositoryInfo().getUrl(), url ->
+                new VersionObjectCache(this.getDigitalObjectRepositoryInfo().getVersionCacheMaxBytes(), this.getDigitalObjectRepositoryInfo().getVersionCacheOffHeap()));
+    }
+
+    VersionTimelineCache getVersionTimelineCache() {
+        return versionTimelineCaches.computeIfAbsent(this.getDigitalObjectRepositoryInfo().getUrl(), url ->
+                new VersionTimelineCache(this.getDigitalObjectRepositoryInfo().getVersionTimelineTtlMillis(), VersionTimelineCache.DEFAULT_MAX_ENTRIES));
+    }
+
 
     /****************/
     /* CONSTRUCTORS */
@@ -104,28 +181,83 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
      * @throws DigitalObjectRepositoryException
      */
     public List<DigitalObject> getVersionsOfObject(String objectId) throws DigitalObjectRepositoryException{
+        return this.getVersionsOfObject(objectId, this.getDigitalObjectRepositoryInfo().getVersionRetrievalParallelism());
+    }
+
+    /***
+     * Function that get the list of version of a given object, retrieving several versions at the same time
+     * Every version is compared against the previous one as soon as both of them have been retrieved
+     * Note: This function use the CORDRA REST API as this functionality is not provided in DOIP yet
+     * @param objectId
+     * @param parallelism maximum number of versions retrieved at the same time
+     * @return List of versions (digital objects) of a given object. The list of versions is sorted from the oldest to the most recent
+     * @throws DigitalObjectRepositoryException
+     */
+    public List<DigitalObject> getVersionsOfObject(String objectId, int parallelism) throws DigitalObjectRepositoryException{
+        List<VersionInfo> versions;
+        Span span = this.beginCall("versions", objectId);
         try {
-            List<DigitalObject> listDigitalObjects = null;
-            List<VersionInfo> versions = this.getRestClient().getVersionsFor(objectId);
-            if (versions!=null && versions.size()>0){
-                versions.sort(Comparator.comparing(v -> v.publishedOn, Comparator.nullsLast(Long::compareTo)));
-                listDigitalObjects = new ArrayList<>();
-                DigitalObject previousVersion = null;
-                for (VersionInfo version:versions) {
-                    DigitalObject digitalObject = this.retrieve(version.id);
-                    if (previousVersion!=null){
-                        MapDifference<String, Object> mapDifference = this.compareContentDigitalObjects(previousVersion,digitalObject);
-                        JsonObject comparisonResult = (JsonObject)JsonUtils.convertObjectToJsonElement(mapDifference);
-                        comparisonResult.remove("onBoth");
-                        digitalObject.attributes.add("comparisonAgainstPreviousVersion",JsonUtils.convertObjectToJsonElement(comparisonResult));
+            versions = this.getRestClient().getVersionsFor(objectId);
+        } catch (CordraException e) {
+            span.failed();
+            throw DigitalObjectRepositoryException.convertCordraException(e);
+        } finally {
+            span.end();
+        }
+        if (versions==null || versions.size()==0){
+            return null;
+        }
+        versions.sort(Comparator.comparing(v -> v.publishedOn, Comparator.nullsLast(Long::compareTo)));
+
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<CompletableFuture<DigitalObject>> retrievals = new ArrayList<>(versions.size());
+        List<CompletableFuture<JsonObject>> comparisons = new ArrayList<>(versions.size());
+        try {
+            for (VersionInfo version:versions) {
+                permits.acquire();
+                CompletableFuture<DigitalObject> retrieval = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return version.publishedOn!=null ? this.retrievePublishedVersion(version.id) : this.retrieve(version.id);
+                    } catch (DigitalObjectRepositoryException e) {
+                        throw new UncheckedDigitalObjectRepositoryException(e);
+                    } finally {
+                        permits.release();
                     }
-                    previousVersion=digitalObject;
-                    listDigitalObjects.add(digitalObject);
+                }, this.getWorkerExecutor());
+                if (retrievals.isEmpty()){
+                    comparisons.add(CompletableFuture.completedFuture(null));
+                } else{
+                    comparisons.add(retrievals.get(retrievals.size()-1).thenCombine(retrieval, (previousVersion, digitalObject) -> {
+                        return this.diffContentDigitalObjects(previousVersion,digitalObject).toJsonObject();
+                    }));
                 }
+                retrievals.add(retrieval);
+            }
+
+            //The comparisons are added once all of them are done, as the versions are being read while comparing
+            List<DigitalObject> listDigitalObjects = new ArrayList<>(versions.size());
+            for (int i = 0; i < retrievals.size(); i++) {
+                DigitalObject digitalObject = retrievals.get(i).get();
+                JsonObject comparisonResult = comparisons.get(i).get();
+                if (comparisonResult!=null){
+                    digitalObject.attributes.add("comparisonAgainstPreviousVersion",comparisonResult);
+                }
+                listDigitalObjects.add(digitalObject);
             }
             return listDigitalObjects;
-        } catch (CordraException e) {
-            throw DigitalObjectRepositoryException.convertCordraException(e);
+        } catch (InterruptedException e) {
+            retrievals.forEach(retrieval -> retrieval.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new DigitalObjectRepositoryException("Interrupted while retrieving the versions of " + objectId, e);
+        } catch (ExecutionException e) {
+            retrievals.forEach(retrieval -> retrieval.cancel(true));
+            if (e.getCause() instanceof UncheckedDigitalObjectRepositoryException){
+                throw ((UncheckedDigitalObjectRepositoryException) e.getCause()).getCause();
+            }
+            throw new DigitalObjectRepositoryException("Error retrieving the versions of " + objectId + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (RejectedExecutionException e) {
+            retrievals.forEach(retrieval -> retrieval.cancel(true));
+            throw new DigitalObjectRepositoryException("Error retrieving the versions of " + objectId + ": the pool of the client is closed", e);
         }
     }
 
@@ -174,30 +306,19 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
     public DigitalObject getVersionOfObjectAtGivenTime(String objectId, Long datetimeEpoch) throws DigitalObjectRepositoryException{
         try {
             DigitalObject digitalObjectAtGivenTime = null;
-            List<VersionInfo> versions = this.getRestClient().getVersionsFor(objectId);
-
-            if (versions!=null && versions.size()>0){
-                //The list of versions is sorted from the oldest to the most recent
-                versions.sort(Comparator.comparing(v -> v.publishedOn, Comparator.nullsLast(Long::compareTo)));
-                int versionPos=-1;
-                for (VersionInfo version:versions) {
-                    if (version.publishedOn==null){
-                        version.publishedOn = Instant.now().toEpochMilli();
-                    }
+            long now = Instant.now().toEpochMilli();
+            VersionTimeline timeline = this.getVersionTimeline(objectId, now);
 
-                    if (version.publishedOn>datetimeEpoch){
-                        break;
-                    } else{
-                        versionPos++;
-                    }
-                }
+            if (timeline.size()>0){
+                //The current version is considered published now
+                int versionPos=timeline.findPositionAt(datetimeEpoch, now);
 
                 if (versionPos!=-1){
-                    digitalObjectAtGivenTime = this.retrieve(versions.get(versionPos).id);
+                    digitalObjectAtGivenTime = this.retrieveVersion(timeline, versionPos);
                 } else{
                     //The search date is before the first version was created. Although it is still possible that the object
                     // existed at that time, as we only create the version just before the first modification is done
-                    DigitalObject firstVersionObject = this.retrieve(versions.get(0).id);
+                    DigitalObject firstVersionObject = this.retrieveVersion(timeline, 0);
                     if (firstVersionObject.attributes.getAsJsonObject("metadata").get("createdOn").getAsLong()<=datetimeEpoch){
                         digitalObjectAtGivenTime = firstVersionObject;
                     }
@@ -207,10 +328,8 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
                     //Calculate differences with current version
                     if (!digitalObjectAtGivenTime.id.equalsIgnoreCase(objectId)){
                         DigitalObject currentObject = this.retrieve(objectId);
-                        MapDifference<String, Object> mapDifference =  this.compareContentDigitalObjects(digitalObjectAtGivenTime,currentObject);
-                        JsonObject comparisonResult = (JsonObject)JsonUtils.convertObjectToJsonElement(mapDifference);
-                        comparisonResult.remove("onBoth");
-                        digitalObjectAtGivenTime.attributes.add("comparisonAgainstCurrentVersion",JsonUtils.convertObjectToJsonElement(comparisonResult));
+                        JsonObject comparisonResult = this.diffContentDigitalObjects(digitalObjectAtGivenTime,currentObject).toJsonObject();
+                        digitalObjectAtGivenTime.attributes.add("comparisonAgainstCurrentVersion",comparisonResult);
                     }
                 }
             }
@@ -230,14 +349,51 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
     public DigitalObject publishVersion(String objectId) throws DigitalObjectRepositoryException {
         try {
             DigitalObject digitalObject=null;
-            VersionInfo version = this.getRestClient().publishVersion(objectId,null,false);
-            if (version!=null) digitalObject = this.retrieve(version.id);
+            VersionInfo version;
+            Span span = this.beginCall("publishVersion", objectId);
+            try {
+                version = this.getRestClient().publishVersion(objectId,null,false);
+            } finally {
+                span.end();
+            }
+            this.getVersionTimelineCache().invalidate(objectId);
+            if (version!=null) digitalObject = this.retrievePublishedVersion(version.id);
             return digitalObject;
         } catch (CordraException e) {
             throw DigitalObjectRepositoryException.convertCordraException(e);
         }
     }
 
+    /**
+     * Function that creates several digital objects with a single request, using the batch upload of the repository
+     * Note: This function use the CORDRA REST API as this functionality is not provided in DOIP yet. If the repository
+     * doesn't support batch upload, the digital objects are created one by one using DOIP
+     * @param dobjs digital objects to be created
+     * @return List with the result of the creation of every digital object, in the same order they were received
+     * @throws DigitalObjectRepositoryException if the whole batch fails
+     */
+    public List<BatchCreateResult> createAll(List<DigitalObject> dobjs) throws DigitalObjectRepositoryException {
+        String url = this.getDigitalObjectRepositoryInfo().getUrl();
+        if (this.getRestClient() instanceof HttpCordraClient && !Boolean.FALSE.equals(batchUploadSupport.get(url))){
+            List<BatchCreateResult> results = this.batchUpload((HttpCordraClient) this.getRestClient(), dobjs);
+            if (results!=null){
+                batchUploadSupport.put(url, Boolean.TRUE);
+                return results;
+            }
+            batchUploadSupport.put(url, Boolean.FALSE);
+        }
+
+        List<BatchCreateResult> results = new ArrayList<>();
+        for (DigitalObject dobj:dobjs) {
+            try {
+                results.add(BatchCreateResult.success(this.create(dobj)));
+            } catch (DigitalObjectRepositoryException e){
+                results.add(BatchCreateResult.failure(e));
+            }
+        }
+        return results;
+    }
+
     /***
      * Function that returns a list with all digital objects in the repository that satisfy the query criteria
      * @param query query using Lucene Query Syntax https://lucene.apache.org/core/2_9_4/queryparsersyntax.html
@@ -247,18 +403,259 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
      * @throws DigitalObjectRepositoryException
      */
     public List<DigitalObject> searchAll(String query) throws DigitalObjectRepositoryException{
-        return searchAll(query,0,this.getDigitalObjectRepositoryInfo().getPageSize());
+        int searchParallelism = this.getDigitalObjectRepositoryInfo().getSearchParallelism();
+        if (searchParallelism > 1){
+            return this.searchAllParallel(query, searchParallelism);
+        }
+        List<DigitalObject> results = new ArrayList<DigitalObject>();
+        try (SearchResultsIterator searchResultsIterator = this.searchIterator(query, this.getSearchPageSize(), false)){
+            searchResultsIterator.forEachRemaining(results::add);
+        } catch (UncheckedDigitalObjectRepositoryException e){
+            throw e.getCause();
+        }
+        return results;
     }
 
+    /**
+     * Function that get all entries that match the query fetching several pages at the same time. The first page is
+     * used to get the total number of results, and the rest of pages are then fetched concurrently and put together
+     * in order
+     * Note: the number of results is taken from the first page, so objects matching the query created while searching
+     * might not be returned. If the repository doesn't report the total number of results, pages are fetched
+     * sequentially
+     * @param query query using Lucene Query Syntax
+     * @param parallelism maximum number of pages fetched at the same time
+     * @return List of digital object that match search criteria
+     * @throws DigitalObjectRepositoryException
+     */
+    public List<DigitalObject> searchAllParallel(String query, int parallelism) throws DigitalObjectRepositoryException{
+        int pageSize = this.getSearchPageSize();
+        SearchPage lastPage = this.fetchSearchPage(query, 0, pageSize);
+        List<DigitalObject> results = new ArrayList<DigitalObject>(Math.max(lastPage.getTotalHits(), lastPage.getResults().size()));
+        results.addAll(lastPage.getResults());
+
+        int totalHits = lastPage.getTotalHits();
+        int numPages = totalHits > 0 ? (totalHits + pageSize - 1) / pageSize : 1;
+
+        Semaphore permits = new Semaphore(Math.max(1, parallelism));
+        List<Future<SearchPage>> pages = new ArrayList<>();
+        try {
+            for (int pageNumber = 1; pageNumber < numPages; pageNumber++) {
+                permits.acquire();
+                int pageToFetch = pageNumber;
+                FutureTask<SearchPage> page = new FutureTask<>(() -> {
+                    try {
+                        return this.fetchSearchPage(query, pageToFetch, pageSize);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                pages.add(page);
+                this.getWorkerExecutor().execute(page);
+            }
+            for (Future<SearchPage> page:pages) {
+                lastPage = page.get();
+                results.addAll(lastPage.getResults());
+            }
+        } catch (InterruptedException e){
+            pages.forEach(page -> page.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new DigitalObjectRepositoryException("Interrupted while searching", e);
+        } catch (ExecutionException e){
+            pages.forEach(page -> page.cancel(true));
+            if (e.getCause() instanceof DigitalObjectRepositoryException){
+                throw (DigitalObjectRepositoryException) e.getCause();
+            }
+            throw new DigitalObjectRepositoryException("Error searching: " + e.getCause().getMessage(), e.getCause());
+        } catch (RejectedExecutionException e){
+            pages.forEach(page -> page.cancel(true));
+            throw new DigitalObjectRepositoryException("Error searching: the pool of the client is closed", e);
+        }
+
+        int nextPageNumber = numPages;
+        while (lastPage.getResults().size() == pageSize && (totalHits < 0 || results.size() < totalHits)){
+            lastPage = this.fetchSearchPage(query, nextPageNumber++, pageSize);
+            results.addAll(lastPage.getResults());
+        }
+        return results;
+    }
+
+    /**
+     * Function that get an iterator over all entries that match the query. The pages of results are fetched lazily,
+     * as the iterator is consumed, so only one page (two with read-ahead) is held in memory at any time
+     * Note: the iterator uses this client, so it must be consumed before the client is closed
+     * @param query query using Lucene Query Syntax
+     * @param pageSize number of element to get per page
+     * @param readAhead if true, the next page is fetched in the background while the current one is consumed
+     * @return Iterator over the digital objects that match search criteria. Errors are thrown as UncheckedDigitalObjectRepositoryException
+     */
+    public SearchResultsIterator searchIterator(String query, int pageSize, boolean readAhead) {
+        return new SearchResultsIterator(this, query, pageSize, readAhead);
+    }
+
+    /**
+     * Function that get a stream of all entries that match the query, fetching the pages lazily with read-ahead
+     * Note: the stream should be closed (e.g. with try-with-resources) if it isn't fully consumed, and it must be
+     * consumed before the client is closed
+     * @param query query using Lucene Query Syntax
+     * @param pageSize number of element to get per page
+     * @return Stream of the digital objects that match search criteria. Errors are thrown as UncheckedDigitalObjectRepositoryException
+     */
+    public Stream<DigitalObject> searchStream(String query, int pageSize) {
+        SearchResultsIterator searchResultsIterator = this.searchIterator(query, pageSize, true);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(searchResultsIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(searchResultsIterator::close);
+    }
+
+    /**
+     * Function that get a stream of all entries that match the query, using the adaptive page size of the repository
+     * @param query query using Lucene Query Syntax
+     * @return Stream of the digital objects that match search criteria. Errors are thrown as UncheckedDigitalObjectRepositoryException
+     */
+    public Stream<DigitalObject> searchStream(String query) {
+        return this.searchStream(query, this.getSearchPageSize());
+    }
+
+    /**
+     * Function that get a stream of all entries that match the query, with only the fields received as parameter.
+     * Only those fields are sent by the repository, so it is much cheaper than a full search when the objects are big
+     * but only some fields are needed (e.g. ids and timestamps of provenance records)
+     * Note: this function use the CORDRA REST API, as DOIP doesn't support filtering the fields returned
+     * @param query query using Lucene Query Syntax
+     * @param fields JSON pointers of the fields to be returned, relative to the object (e.g. "/id", "/content/timestamp",
+     *               "/metadata/modifiedOn")
+     * @return Stream of the digital objects that match search criteria, with only the fields requested. Errors are
+     * thrown as UncheckedDigitalObjectRepositoryException
+     */
+    public Stream<DigitalObject> searchStream(String query, List<String> fields) {
+        SearchResultsIterator searchResultsIterator = new SearchResultsIterator(this, query, this.getDigitalObjectRepositoryInfo().getMaxPageSize(), true, fields);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(searchResultsIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(searchResultsIterator::close);
+    }
+
+    /**
+     * Function that returns the ids of all digital objects in the repository that satisfy the query criteria
+     * As only ids are returned, pages of the maximum page size are used
+     * @param query query using Lucene Query Syntax
+     * @return List of ids of the digital objects that match search criteria
+     * @throws DigitalObjectRepositoryException
+     */
+    public List<String> searchAllIds(String query) throws DigitalObjectRepositoryException{
+        List<String> ids = new ArrayList<String>();
+        int pageSize = this.getDigitalObjectRepositoryInfo().getMaxPageSize();
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        int pageNumber = 0;
+        while (true) {
+            int numIds = ids.size();
+            int totalHits;
+            try (SearchResults<String> searchResults = this.searchIds(digitalObjectRepositoryServiceId, query, new QueryParams(pageNumber++, pageSize))){
+                searchResults.iterator().forEachRemaining(ids::add);
+                totalHits = searchResults.size();
+            }
+            if (ids.size() - numIds < pageSize || (totalHits >= 0 && ids.size() >= totalHits)){
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * Function that returns the only digital object that satisfy the query criteria
+     * @param query query using Lucene Query Syntax
+     * @return Digital object that match search criteria, or null if none or more than one object match them
+     * @throws DigitalObjectRepositoryException
+     */
     public DigitalObject searchOne(String query) throws DigitalObjectRepositoryException{
-        List<DigitalObject> searchResults = this.searchAll(query);
-        if (searchResults.size()==1) {
-            return searchResults.get(0);
-        } else {
-            return null;
+        return this.searchUnique(query);
+    }
+
+    /**
+     * Function that returns the first digital object that satisfy the query criteria. Only one result is requested
+     * @param query query using Lucene Query Syntax
+     * @return First digital object that match search criteria, or null if none match them
+     * @throws DigitalObjectRepositoryException
+     */
+    public DigitalObject searchFirst(String query) throws DigitalObjectRepositoryException{
+        return this.searchFirst(query, null);
+    }
+
+    /**
+     * Function that returns the first digital object that satisfy the query criteria in the order given. The results
+     * are sorted by the repository and only one result is requested
+     * @param query query using Lucene Query Syntax
+     * @param sortFields fields used to sort the results, e.g. new SortField("/timestamp", true) for the latest one
+     * @return First digital object that match search criteria, or null if none match them
+     * @throws DigitalObjectRepositoryException
+     */
+    public DigitalObject searchFirst(String query, List<SortField> sortFields) throws DigitalObjectRepositoryException{
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        try (SearchResults<DigitalObject> searchResults = this.search(digitalObjectRepositoryServiceId, query, new QueryParams(0, 1, sortFields))){
+            Iterator<DigitalObject> results = searchResults.iterator();
+            return results.hasNext() ? results.next() : null;
+        }
+    }
+
+    /**
+     * Function that returns the only digital object that satisfy the query criteria. At most two results are
+     * requested, as that is enough to know if the object is unique
+     * @param query query using Lucene Query Syntax
+     * @return Digital object that match search criteria, or null if none or more than one object match them
+     * @throws DigitalObjectRepositoryException
+     */
+    public DigitalObject searchUnique(String query) throws DigitalObjectRepositoryException{
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        try (SearchResults<DigitalObject> searchResults = this.search(digitalObjectRepositoryServiceId, query, new QueryParams(0, 2))){
+            Iterator<DigitalObject> results = searchResults.iterator();
+            DigitalObject result = results.hasNext() ? results.next() : null;
+            return results.hasNext() ? null : result;
+        }
+    }
+
+    /**
+     * Function that returns the id of the only digital object that satisfy the query criteria. At most two ids are
+     * requested, as that is enough to know if the object is unique
+     * @param query query using Lucene Query Syntax
+     * @return Id of the digital object that match search criteria, or null if none or more than one object match them
+     * @throws DigitalObjectRepositoryException
+     */
+    public String searchUniqueId(String query) throws DigitalObjectRepositoryException{
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        try (SearchResults<String> searchResults = this.searchIds(digitalObjectRepositoryServiceId, query, new QueryParams(0, 2))){
+            Iterator<String> ids = searchResults.iterator();
+            String id = ids.hasNext() ? ids.next() : null;
+            return ids.hasNext() ? null : id;
         }
     }
 
+    /**
+     * Function that checks if any digital object satisfy the query criteria. Only one id is requested
+     * @param query query using Lucene Query Syntax
+     * @return true if at least one digital object match search criteria
+     * @throws DigitalObjectRepositoryException
+     */
+    public boolean exists(String query) throws DigitalObjectRepositoryException{
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        try (SearchResults<String> searchResults = this.searchIds(digitalObjectRepositoryServiceId, query, new QueryParams(0, 1))){
+            return searchResults.iterator().hasNext();
+        }
+    }
+
+    /**
+     * Function that counts the digital objects that satisfy the query criteria, using the number of results reported
+     * by the repository. Only one id is requested, unless the repository doesn't report the number of results
+     * @param query query using Lucene Query Syntax
+     * @return number of digital objects that match search criteria
+     * @throws DigitalObjectRepositoryException
+     */
+    public int count(String query) throws DigitalObjectRepositoryException{
+        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
+        try (SearchResults<String> searchResults = this.searchIds(digitalObjectRepositoryServiceId, query, new QueryParams(0, 1))){
+            if (searchResults.size() >= 0){
+                return searchResults.size();
+            }
+        }
+        return this.searchAllIds(query).size();
+    }
+
     /***
      * Function to call the hello operation of the repository
      * @return Digital object with the hello response from the repository
@@ -279,28 +676,59 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
 
     /**
      * Function that get the difference in the content of 2 digital specimens
-     * Note: it removes their "id" for comparison
+     * Note: their "id" is excluded from the comparison
      * @param leftDobj left digital specimen
      * @param rightDobj left digital specimen
      * @return MapDifference with the result of the comparison
+     * @deprecated use diffContentDigitalObjects, which compares the json trees directly and also gives the JSON Patch
+     * between them
      */
+    @Deprecated
     public MapDifference<String, Object> compareContentDigitalObjects(DigitalObject leftDobj, DigitalObject rightDobj){
-        JsonObject leftDsContent = leftDobj.attributes.getAsJsonObject("content");
-        JsonObject rightDsContent = rightDobj.attributes.getAsJsonObject("content");
-        //Exclude DS ids for comparison
-        String leftDsId = leftDsContent.has("id")?leftDsContent.get("id").getAsString():null;
-        String rightDsId = rightDsContent.has("id")?rightDsContent.get("id").getAsString():null;
-        leftDsContent.remove("id");
-        rightDsContent.remove("id");
-        MapDifference<String, Object> comparisonResult = JsonUtils.compareJsonElements(leftDsContent,rightDsContent);
-        //Add the DS ids back to the content
-        if (StringUtils.isNotBlank(leftDsId)) leftDsContent.addProperty("id",leftDsId);
-        if (StringUtils.isNotBlank(rightDsId)) rightDsContent.addProperty("id",rightDsId);
-        return comparisonResult;
+        //Exclude DS ids for comparison, using shallow copies of the contents
+        JsonObject leftDsContent = getContentWithoutId(leftDobj);
+        JsonObject rightDsContent = getContentWithoutId(rightDobj);
+        return JsonUtils.compareJsonElements(leftDsContent,rightDsContent);
+    }
+
+    /**
+     * Function that get the difference in the content of 2 digital specimens
+     * Note: their "id" is excluded from the comparison. The digital objects are not modified, so they can be compared
+     * concurrently with other digital objects
+     * @param leftDobj left digital specimen
+     * @param rightDobj left digital specimen
+     * @return JsonTreeDiff with the result of the comparison
+     */
+    public JsonTreeDiff diffContentDigitalObjects(DigitalObject leftDobj, DigitalObject rightDobj){
+        return JsonTreeDiff.compare(leftDobj.attributes.getAsJsonObject("content"), rightDobj.attributes.getAsJsonObject("content"), "/id");
     }
 
     public DigitalObject searchForObject(DigitalObject digitalObject, String metaQuery) throws DigitalObjectRepositoryException {
-        DigitalObject dobj=null;
+        String query=this.getSearchForObjectQuery(digitalObject, metaQuery);
+        return this.searchUnique(query);
+    }
+
+    /**
+     * Function that looks for the id of a digital object in the repository by its type and the primitive attributes
+     * of its content. It is cheaper than searchForObject as only the id is returned by the repository
+     * @param digitalObject digital object to look for
+     * @param metaQuery extra criteria to add to the query, e.g. on the metadata of the object
+     * @return id of the digital object found, or null if none or more than one object match the criteria
+     * @throws DigitalObjectRepositoryException
+     */
+    public String searchForObjectId(DigitalObject digitalObject, String metaQuery) throws DigitalObjectRepositoryException {
+        String query=this.getSearchForObjectQuery(digitalObject, metaQuery);
+        return this.searchUniqueId(query);
+    }
+
+    /**
+     * Function that builds the query used to look for a digital object in the repository by its type and the
+     * primitive attributes of its content
+     * @param digitalObject digital object to look for
+     * @param metaQuery extra criteria to add to the query, e.g. on the metadata of the object
+     * @return query using Lucene Query Syntax
+     */
+    public String getSearchForObjectQuery(DigitalObject digitalObject, String metaQuery) {
         StringBuilder sb = new StringBuilder();
         sb.append("type:"+digitalObject.type);
         sb.append(" AND " + metaQuery);
@@ -312,13 +740,7 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
                 sb.append(" AND /"+contentAttribute.getKey()+":"+this.escapeQueryParamValue(value.getAsString()));
             }
         }
-        String query=sb.toString();
-
-        List<DigitalObject> listDigitalObjects = this.searchAll(query);
-        if (listDigitalObjects.size()==1){
-            dobj=listDigitalObjects.get(0);
-        }
-        return dobj;
+        return sb.toString();
     }
 
     /**
@@ -348,157 +770,505 @@ public class DigitalObjectRepositoryClient implements AutoCloseable {
     /*******************/
 
     /**
-     * Function that get all entries that match the query. It using recursion to iterate through all the pages
-     * returned by the Digital Object repository
-     * @param query query to do the search
-     * @param pageNumber page to get it
+     * Function that begins a call of this client to its repository, whose latency is published over JMX and traced
+     * with the flight recorder
+     * @param operation DOIP operation or REST call
+     * @param objectId target of the call, if any
+     * @return span of the call
+     */
+    private Span beginCall(String operation, String objectId) {
+        return Tracing.beginRepositoryCall(this.getDigitalObjectRepositoryInfo().getHandlePrefix(), operation, objectId);
+    }
+
+    /**
+     * Function that gets the size of the json of a digital object, as sent to or received from the repository
+     * @param dobj digital object
+     * @return size in bytes, or -1 if there is no digital object
+     */
+    private static long getPayloadBytes(DigitalObject dobj) {
+        return dobj != null ? JsonCodec.getGson().toJson(dobj).getBytes(StandardCharsets.UTF_8).length : -1;
+    }
+
+    /**
+     * Function that sends digital objects to the batch upload endpoint of the CORDRA REST API
+     * @param httpCordraClient REST client
+     * @param dobjs digital objects to be created
+     * @return List with the result of the creation of every digital object, or null if the repository doesn't
+     * support batch upload
+     * @throws DigitalObjectRepositoryException if the request fails
+     */
+    private List<BatchCreateResult> batchUpload(HttpCordraClient httpCordraClient, List<DigitalObject> dobjs) throws DigitalObjectRepositoryException {
+        JsonArray batch = new JsonArray();
+        for (DigitalObject dobj:dobjs) {
+            JsonObject cordraObject = new JsonObject();
+            if (dobj.id!=null) cordraObject.addProperty("id", dobj.id);
+            cordraObject.addProperty("type", dobj.type);
+            cordraObject.add("content", dobj.attributes.get("content"));
+            batch.add(cordraObject);
+        }
+
+        HttpPost request = new HttpPost(httpCordraClient.getBaseUri() + "batchUpload");
+        String credentials = this.getDigitalObjectRepositoryInfo().getUsername() + ":" + this.getDigitalObjectRepositoryInfo().getPassword();
+        request.setHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        StringEntity entity = new StringEntity(batch.toString(), ContentType.APPLICATION_JSON);
+        request.setEntity(entity);
+        Span span = this.beginCall("batchUpload", null).setPayloadBytes(entity.getContentLength());
+        try (CloseableHttpResponse response = httpCordraClient.getHttpClient().execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            String responseBody = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (statusCode == 404 || statusCode == 405){
+                return null;
+            }
+            if (statusCode != 200){
+                throw new DigitalObjectRepositoryException(String.valueOf(statusCode), "Error in batch upload: " + responseBody);
+            }
+
+            List<BatchCreateResult> results = new ArrayList<>(Collections.nCopies(dobjs.size(), null));
+            JsonArray jsonResults = JsonParser.parseString(responseBody).getAsJsonObject().getAsJsonArray("results");
+            for (JsonElement jsonResult:jsonResults) {
+                JsonObject result = jsonResult.getAsJsonObject();
+                int position = result.get("position").getAsInt();
+                int responseCode = result.get("responseCode").getAsInt();
+                JsonObject resultResponse = result.has("response") && result.get("response").isJsonObject() ? result.getAsJsonObject("response") : new JsonObject();
+                if (responseCode == 200){
+                    results.set(position, BatchCreateResult.success(convertCordraObjectToDigitalObject(resultResponse)));
+                } else{
+                    String message = resultResponse.has("message") ? resultResponse.get("message").getAsString() : "Error creating digital object";
+                    results.set(position, BatchCreateResult.failure(new DigitalObjectRepositoryException(String.valueOf(responseCode), message)));
+                }
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null){
+                    //The batch upload stopped before reaching this object
+                    results.set(i, BatchCreateResult.failure(new DigitalObjectRepositoryException("Digital object not processed in batch upload")));
+                }
+            }
+            return results;
+        } catch (IOException | RuntimeException e) {
+            span.failed();
+            throw new DigitalObjectRepositoryException("Error in batch upload: " + e.getMessage(), e);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Function that fetch a page of the results of a search with the CORDRA REST API, with only the fields received
+     * as parameter
+     * @param query query using Lucene Query Syntax
+     * @param pageNumber number of the page, starting from 0
      * @param pageSize number of element to get per page
-     * @return All digital objects in the repository entries that match the query
+     * @param fields JSON pointers of the fields to be returned
+     * @return Results of the page and total number of results of the search
      * @throws DigitalObjectRepositoryException
      */
-    private List<DigitalObject> searchAll(String query, Integer pageNumber, Integer pageSize) throws DigitalObjectRepositoryException{
-        List<DigitalObject> results = new ArrayList<DigitalObject>();
-        QueryParams queryParams = new QueryParams(pageNumber, pageSize);
-        String digitalObjectRepositoryServiceId = this.getDigitalObjectRepositoryInfo().getServiceId();
-        SearchResults<DigitalObject> searchResults = this.search(digitalObjectRepositoryServiceId,query, queryParams);
-        searchResults.iterator().forEachRemaining(results::add);
-        if (results.size()==pageSize){
-            results.addAll(searchAll(query,++pageNumber,pageSize));
+    private SearchPage fetchProjectedSearchPage(String query, int pageNumber, int pageSize, List<String> fields) throws DigitalObjectRepositoryException {
+        net.cnri.cordra.api.QueryParams queryParams = new net.cnri.cordra.api.QueryParams(pageNumber, pageSize, null, null, null, fields);
+        List<DigitalObject> results = new ArrayList<DigitalObject>(pageSize);
+        Gson gson = JsonCodec.getGson();
+        Span span = this.beginCall("restSearch", null).setPageNumber(pageNumber);
+        try (net.cnri.cordra.api.SearchResults<CordraObject> searchResults = this.getRestClient().search(query, queryParams)){
+            for (CordraObject cordraObject:searchResults) {
+                results.add(convertCordraObjectToDigitalObject(gson.toJsonTree(cordraObject).getAsJsonObject()));
+            }
+            return new SearchPage(results, searchResults.size());
+        } catch (CordraException e) {
+            span.failed();
+            throw DigitalObjectRepositoryException.convertCordraException(e);
+        } finally {
+            span.end();
         }
-        return results;
     }
 
+    /**
+     * Function that retrieve a version of an object from its timeline, using the cache of versions for the published ones
+     * @param timeline version timeline of the object
+     * @param position position of the version in the timeline
+     * @return version of the object
+     * @throws DigitalObjectRepositoryException
+     */
+    private DigitalObject retrieveVersion(VersionTimeline timeline, int position) throws DigitalObjectRepositoryException {
+        String versionId = timeline.getVersionId(position);
+        return timeline.isCurrentVersion(position) ? this.retrieve(versionId) : this.retrievePublishedVersion(versionId);
+    }
+
+    /**
+     * Function that retrieve a published version of an object from the cache of versions, retrieving it from the
+     * repository and adding it to the cache if it isn't there
+     * @param versionId id of the published version
+     * @return version of the object
+     * @throws DigitalObjectRepositoryException
+     */
+    private DigitalObject retrievePublishedVersion(String versionId) throws DigitalObjectRepositoryException {
+        VersionObjectCache cache = this.getVersionObjectCache();
+        DigitalObject version = cache.get(versionId);
+        if (version==null){
+            version = this.retrieve(versionId);
+            if (version!=null) cache.put(versionId, version);
+        }
+        return version;
+    }
+
+    /**
+     * Function that get the version timeline of an object, from the cache if it is there
+     * @param objectId
+     * @param now current time in milliseconds since the epoch
+     * @return version timeline of the object
+     * @throws CordraException
+     */
+    private VersionTimeline getVersionTimeline(String objectId, long now) throws CordraException {
+        VersionTimelineCache cache = this.getVersionTimelineCache();
+        VersionTimeline timeline = cache.get(objectId, now);
+        if (timeline==null){
+            long generation = cache.getGeneration();
+            List<VersionInfo> versions;
+            Span span = this.beginCall("versions", objectId);
+            try {
+                versions = this.getRestClient().getVersionsFor(objectId);
+            } finally {
+                span.end();
+            }
+            timeline = new VersionTimeline(versions!=null ? versions : Collections.emptyList(), now);
+            cache.put(objectId, timeline, generation);
+        }
+        return timeline;
+    }
+
+    /**
+     * Function that get a shallow copy of the content of a digital object without its "id" attribute
+     * @param dobj digital object
+     * @return content without id
+     */
+    private static JsonObject getContentWithoutId(DigitalObject dobj) {
+        JsonObject content = new JsonObject();
+        for (Map.Entry<String, JsonElement> attribute:dobj.attributes.getAsJsonObject("content").entrySet()) {
+            if (!"id".equals(attribute.getKey())){
+                content.add(attribute.getKey(), attribute.getValue());
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Function that converts the json representation of an object in the CORDRA REST API into a digital object
+     * with the same structure as the ones returned by DOIP
+     * @param cordraObject json representation of a CORDRA object
+     * @return digital object
+     */
+    private static DigitalObject convertCordraObjectToDigitalObject(JsonObject cordraObject) {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = cordraObject.has("id") ? cordraObject.get("id").getAsString() : null;
+        digitalObject.type = cordraObject.has("type") ? cordraObject.get("type").getAsString() : null;
+        for (String attribute:new String[]{"content", "acl", "metadata"}) {
+            if (cordraObject.has(attribute)){
+                digitalObject.setAttribute(attribute, cordraObject.get(attribute));
+            }
+        }
+        return digitalObject;
+    }
+
+
+    /*******************/
+    /* PACKAGE METHODS */
+    /*******************/
+
+    /**
+     * Function that fetch a page of the results of a search, recording its size and latency to adapt the page size
+     * of the following searches
+     * @param query query using Lucene Query Syntax
+     * @param pageNumber number of the page, starting from 0
+     * @param pageSize number of element to get per page
+     * @return Results of the page and total number of results of the search
+     * @throws DigitalObjectRepositoryException
+     */
+    SearchPage fetchSearchPage(String query, int pageNumber, int pageSize) throws DigitalObjectRepositoryException {
+        return this.fetchSearchPage(query, pageNumber, pageSize, null);
+    }
+
+    /**
+     * Function that fetch a page of the results of a search, with only the fields received as parameter
+     * Note: pages with only some fields are fetched using the CORDRA REST API, as DOIP doesn't support filtering the
+     * fields returned, and their size and latency are not used to adapt the page size
+     * @param query query using Lucene Query Syntax
+     * @param pageNumber number of the page, starting from 0
+     * @param pageSize number of element to get per page
+     * @param fields JSON pointers of the fields to be returned, or null to return the whole objects
+     * @return Results of the page and total number of results of the search
+     * @throws DigitalObjectRepositoryException
+     */
+    SearchPage fetchSearchPage(String query, int pageNumber, int pageSize, List<String> fields) throws DigitalObjectRepositoryException {
+        if (fields != null){
+            return this.fetchProjectedSearchPage(query, pageNumber, pageSize, fields);
+        }
+        long start = System.nanoTime();
+        List<DigitalObject> results = new ArrayList<DigitalObject>(pageSize);
+        SearchResults<DigitalObject> searchResults = this.search(this.getDigitalObjectRepositoryInfo().getServiceId(), query, new QueryParams(pageNumber, pageSize));
+        int totalHits;
+        try {
+            searchResults.iterator().forEachRemaining(results::add);
+            totalHits = searchResults.size();
+        } finally {
+            searchResults.close();
+        }
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        //The size of the page is estimated from its first object, to avoid serializing all of them
+        long responseBytes = results.isEmpty() || results.get(0).attributes == null ? 0 :
+                (long) results.get(0).attributes.toString().length() * results.size();
+        this.getAdaptivePageSize().record(pageSize, results.size(), responseBytes, latencyMillis);
+        return new SearchPage(results, totalHits);
+    }
 
     /*****************************************************************************************************************/
     /* Methods to act as facade for DOIP client in order to avoid passing all the times the authInfo and serviceInfo */
     /*****************************************************************************************************************/
 
     /**
-     * Function that release the resource taken by the digital object repository client
+     * Function that release the resource taken by the digital object repository client.
+     * If the client was borrowed from a DigitalObjectRepositoryClientPool, it is given back to the pool instead
+     * so its connections can be reused
      */
     public synchronized void close() {
+        if (this.getPool()!=null){
+            this.getPool().returnClient(this);
+        } else{
+            this.destroy();
+        }
+    }
+
+    /**
+     * Function that closes the underlying DOIP and REST clients, regardless of the client being pooled or not
+     */
+    synchronized void destroy() {
         this.getDoipClient().close();
+        try {
+            this.getRestClient().close();
+        } catch (Exception e){
+            //Nothing else can be done at this point, the client is being discarded anyway
+        }
     }
 
 
     public DoipClientResponse performOperation(String targetId, String operationId, JsonObject attributes) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall(operationId, targetId);
         try{
             return this.getDoipClient().performOperation(targetId,operationId,this.getAuthInfo(),attributes,this.getServiceInfo());
         } catch (DoipException e){
+            span.failed();
             throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
 
     }
 
     public DoipClientResponse performOperation(String targetId, String operationId, JsonObject attributes, JsonElement input) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall(operationId, targetId);
         try{
             return this.getDoipClient().performOperation(targetId,operationId,this.getAuthInfo(),attributes,input,this.getServiceInfo());
         } catch (DoipException e){
+            span.failed();
             throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DoipClientResponse performOperation(String targetId, String operationId, JsonObject attributes, InDoipMessage input) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall(operationId, targetId);
         try{
             return this.getDoipClient().performOperation(targetId,operationId,this.getAuthInfo(),attributes,input,this.getServiceInfo());
         } catch (DoipException e){
+            span.failed();
             throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DoipClientResponse performOperation(DoipRequestHeaders headers, InDoipMessage input) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall(headers.operationId, headers.targetId);
         try {
             return this.getDoipClient().performOperation(headers, input, this.getServiceInfo());
         } catch (DoipException e){
+            span.failed();
             throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DigitalObject create(DigitalObject dobj) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("create", dobj.id);
+        if (span.isTraced()){
+            span.setPayloadBytes(() -> getPayloadBytes(dobj));
+        }
         try {
             return this.getDoipClient().create(dobj,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e){
+            span.failed();
             throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DigitalObject update(DigitalObject dobj) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("update", dobj.id);
+        if (span.isTraced()){
+            span.setPayloadBytes(() -> getPayloadBytes(dobj));
+        }
         try {
             return this.getDoipClient().update(dobj,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DigitalObject retrieve(String targetId) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("retrieve", targetId);
         try {
-            return this.getDoipClient().retrieve(targetId, false, this.getAuthInfo(), this.getServiceInfo());
+            DigitalObject dobj = this.getDoipClient().retrieve(targetId, false, this.getAuthInfo(), this.getServiceInfo());
+            if (span.isTraced()){
+                span.setPayloadBytes(() -> getPayloadBytes(dobj));
+            }
+            return dobj;
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DigitalObject retrieve(String targetId, boolean includeElementData) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("retrieve", targetId);
         try {
-            return this.getDoipClient().retrieve(targetId,includeElementData,this.getAuthInfo(),this.getServiceInfo());
+            DigitalObject dobj = this.getDoipClient().retrieve(targetId,includeElementData,this.getAuthInfo(),this.getServiceInfo());
+            if (span.isTraced()){
+                span.setPayloadBytes(() -> getPayloadBytes(dobj));
+            }
+            return dobj;
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public void delete(String targetId) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("delete", targetId);
         try {
             this.getDoipClient().delete(targetId,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public List<String> listOperations(String targetId) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("listOperations", targetId);
         try {
             return this.getDoipClient().listOperations(targetId,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public SearchResults<String> searchIds(String targetId, String query, QueryParams params) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("searchIds", targetId).setPageNumber(params != null ? params.getPageNumber() : 0);
         try {
             return this.getDoipClient().searchIds(targetId,query,params,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public SearchResults<DigitalObject> search(String targetId, String query, QueryParams params) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("search", targetId).setPageNumber(params != null ? params.getPageNumber() : 0);
         try {
             return this.getDoipClient().search(targetId,query,params,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public DigitalObject hello(String targetId) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("hello", targetId);
         try {
             return this.getDoipClient().hello(targetId,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public InputStream retrieveElement(String targetId, String elementId) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("retrieveElement", targetId);
         try {
             return this.getDoipClient().retrieveElement(targetId,elementId,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
         }
     }
 
     public InputStream retrievePartialElement(String targetId, String elementId, Long start, Long end) throws DigitalObjectRepositoryException {
+        Span span = this.beginCall("retrieveElement", targetId);
         try {
             return this.getDoipClient().retrievePartialElement(targetId,elementId,start,end,this.getAuthInfo(),this.getServiceInfo());
         } catch (DoipException e) {
+            span.failed();
            throw DigitalObjectRepositoryException.convertDoipException(e);
+        } finally {
+            span.end();
+        }
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    /**
+     * Page of the results of a search
+     */
+    static final class SearchPage {
+        private final List<DigitalObject> results;
+        private final int totalHits;
+
+        SearchPage(List<DigitalObject> results, int totalHits) {
+            this.results = results;
+            this.totalHits = totalHits;
+        }
+
+        List<DigitalObject> getResults() {
+            return results;
+        }
+
+        /**
+         * @return total number of results of the search, or a negative number if the repository doesn't report it
+         */
+        int getTotalHits() {
+            return totalHits;
         }
     }
 }
@@ -0,0 +1,320 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe pool of DigitalObjectRepositoryClient for a given repository, so the cost of setting up the DOIP and
+ * REST clients (DNS lookup, TCP/TLS handshake, authentication) is paid once and not once per operation.
+ * Clients are borrowed with borrowClient() and given back by closing them, so they can be used in a
+ * try-with-resources block exactly as non-pooled clients:
+ *      try(DigitalObjectRepositoryClient client = pool.borrowClient()){
+ *          ...
+ *      }
+ * The pool also owns the bounded pool of threads its clients use for the requests done concurrently (pages of
+ * parallel searches, versions of objects)
+ */
+public class DigitalObjectRepositoryClientPool implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 300000;
+    public static final long DEFAULT_VALIDATION_INTERVAL_MILLIS = 30000;
+    public static final int DEFAULT_WORKER_THREADS = 8;
+
+    private final DigitalObjectRepositoryInfo digitalObjectRepositoryInfo;
+    private final int maxConnections;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledClient> idleClients = new LinkedBlockingDeque<>();
+    private final Map<DigitalObjectRepositoryClient, PooledClient> borrowedClients = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private final ExecutorService workerExecutor;
+    private volatile boolean closed = false;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public DigitalObjectRepositoryInfo getDigitalObjectRepositoryInfo() {
+        return digitalObjectRepositoryInfo;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public long getValidationIntervalMillis() {
+        return validationIntervalMillis;
+    }
+
+    public int getNumIdle() {
+        return this.idleClients.size();
+    }
+
+    public int getNumActive() {
+        return this.borrowedClients.size();
+    }
+
+    Executor getWorkerExecutor() {
+        return this.workerExecutor;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new pool of clients for the repository received as parameter
+     * @param digitalObjectRepositoryInfo repository the clients connect to
+     * @param maxConnections maximum number of clients (idle + borrowed) at any time
+     * @param borrowTimeoutMillis maximum time to wait for a client when all of them are borrowed
+     * @param idleTimeoutMillis time after which an idle client is closed and removed from the pool
+     * @param validationIntervalMillis time after which an idle client is checked with the hello operation before
+     *                                 being handed out again
+     * @param workerThreads number of threads used by the clients for the requests done concurrently
+     */
+    public DigitalObjectRepositoryClientPool(DigitalObjectRepositoryInfo digitalObjectRepositoryInfo, int maxConnections,
+                                             long borrowTimeoutMillis, long idleTimeoutMillis, long validationIntervalMillis,
+                                             int workerThreads) {
+        this.digitalObjectRepositoryInfo = digitalObjectRepositoryInfo;
+        this.maxConnections = maxConnections;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.permits = new Semaphore(maxConnections, true);
+
+        String threadName = "doec-pool-evictor-" + digitalObjectRepositoryInfo.getHandlePrefix();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionPeriod = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(this::evictIdleClients, evictionPeriod, evictionPeriod, TimeUnit.MILLISECONDS);
+
+        AtomicInteger workerThreadCounter = new AtomicInteger();
+        String workerThreadName = "doec-pool-worker-" + digitalObjectRepositoryInfo.getHandlePrefix() + "-";
+        this.workerExecutor = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, workerThreadName + workerThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Borrow a client from the pool, creating a new one if there is no idle client available.
+     * The client must be given back to the pool by closing it
+     * @return client ready to be used
+     * @throws DigitalObjectRepositoryException if the pool is closed, no client is available before the borrow
+     * timeout expires or a new client can't be created
+     */
+    public DigitalObjectRepositoryClient borrowClient() throws DigitalObjectRepositoryException {
+        if (this.closed){
+            throw new DigitalObjectRepositoryException("The pool of clients for " + this.getDigitalObjectRepositoryInfo().getUrl() + " is closed");
+        }
+        try {
+            if (!this.permits.tryAcquire(this.getBorrowTimeoutMillis(), TimeUnit.MILLISECONDS)){
+                throw new DigitalObjectRepositoryException("Timeout waiting for a client of " + this.getDigitalObjectRepositoryInfo().getUrl()
+                        + " after " + this.getBorrowTimeoutMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DigitalObjectRepositoryException("Interrupted while waiting for a client of " + this.getDigitalObjectRepositoryInfo().getUrl(), e);
+        }
+
+        try {
+            PooledClient pooledClient;
+            while ((pooledClient = this.idleClients.pollFirst()) != null){
+                if (this.isValid(pooledClient)){
+                    break;
+                }
+                pooledClient.getClient().destroy();
+            }
+            if (pooledClient == null){
+                DigitalObjectRepositoryClient client = new DigitalObjectRepositoryClient(this.getDigitalObjectRepositoryInfo());
+                client.setPool(this);
+                pooledClient = new PooledClient(client);
+            }
+            this.borrowedClients.put(pooledClient.getClient(), pooledClient);
+            return pooledClient.getClient();
+        } catch (DigitalObjectRepositoryException | RuntimeException e){
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the pool, closing all idle clients. Clients currently borrowed are closed when they are given back, and
+     * the concurrent requests they have already started are finished
+     */
+    public void close() {
+        this.closed = true;
+        this.evictor.shutdownNow();
+        this.workerExecutor.shutdown();
+        PooledClient pooledClient;
+        while ((pooledClient = this.idleClients.pollFirst()) != null){
+            pooledClient.getClient().destroy();
+        }
+    }
+
+    /**
+     * Get the pool of clients for the digital object repository using the parameters found in the configuration
+     * @param config configuration
+     * @return pool of clients
+     */
+    public static DigitalObjectRepositoryClientPool getDigitalObjectRepositoryClientPoolFromConfig(Configuration config){
+        return getClientPoolFromConfig(config, "digitalObjectRepository",
+                DigitalObjectRepositoryInfo.getDigitalObjectRepositoryInfoFromConfig(config));
+    }
+
+    /**
+     * Get the pool of clients for the provenance repository using the parameters found in the configuration
+     * @param config configuration
+     * @return pool of clients
+     */
+    public static DigitalObjectRepositoryClientPool getProvenanceRepositoryClientPoolFromConfig(Configuration config){
+        return getClientPoolFromConfig(config, "provenanceRepository",
+                DigitalObjectRepositoryInfo.getProvenanceRepositoryInfoFromConfig(config));
+    }
+
+
+    /*******************/
+    /* PACKAGE METHODS */
+    /*******************/
+
+    /**
+     * Give back to the pool a client previously borrowed. Called when a pooled client is closed
+     * @param client client to be given back
+     */
+    void returnClient(DigitalObjectRepositoryClient client) {
+        PooledClient pooledClient = this.borrowedClients.remove(client);
+        if (pooledClient == null){
+            //Client already given back
+            return;
+        }
+        if (this.closed){
+            client.destroy();
+        } else{
+            pooledClient.setIdleSince(System.currentTimeMillis());
+            this.idleClients.offerFirst(pooledClient);
+            if (this.closed && this.idleClients.remove(pooledClient)){
+                //The pool was closed while the client was being given back
+                client.destroy();
+            }
+        }
+        this.permits.release();
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static DigitalObjectRepositoryClientPool getClientPoolFromConfig(Configuration config, String prefix,
+                                                                             DigitalObjectRepositoryInfo digitalObjectRepositoryInfo){
+        return new DigitalObjectRepositoryClientPool(digitalObjectRepositoryInfo,
+                config.getInt(prefix + ".pool.maxConnections", DEFAULT_MAX_CONNECTIONS),
+                config.getLong(prefix + ".pool.borrowTimeoutMillis", DEFAULT_BORROW_TIMEOUT_MILLIS),
+                config.getLong(prefix + ".pool.idleTimeoutMillis", DEFAULT_IDLE_TIMEOUT_MILLIS),
+                config.getLong(prefix + ".pool.validationIntervalMillis", DEFAULT_VALIDATION_INTERVAL_MILLIS),
+                config.getInt(prefix + ".pool.workerThreads", DEFAULT_WORKER_THREADS));
+    }
+
+    /**
+     * Check an idle client before handing it out. If it hasn't been validated recently, the hello operation is
+     * called to make sure the repository can still be reached with it
+     * @param pooledClient idle client to be checked
+     * @return true if the client can be used
+     */
+    private boolean isValid(PooledClient pooledClient) {
+        long now = System.currentTimeMillis();
+        if (now - pooledClient.getIdleSince() > this.getIdleTimeoutMillis()){
+            return false;
+        }
+        if (now - pooledClient.getLastValidated() < this.getValidationIntervalMillis()){
+            return true;
+        }
+        try {
+            pooledClient.getClient().hello();
+            pooledClient.setLastValidated(now);
+            return true;
+        } catch (Exception e){
+            return false;
+        }
+    }
+
+    /**
+     * Close the clients that have been idle for longer than the idle timeout
+     */
+    private void evictIdleClients() {
+        long now = System.currentTimeMillis();
+        for (PooledClient pooledClient:this.idleClients) {
+            if (now - pooledClient.getIdleSince() > this.getIdleTimeoutMillis() && this.idleClients.remove(pooledClient)){
+                pooledClient.getClient().destroy();
+            }
+        }
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    private static final class PooledClient {
+        private final DigitalObjectRepositoryClient client;
+        private volatile long idleSince;
+        private volatile long lastValidated;
+
+        PooledClient(DigitalObjectRepositoryClient client) {
+            this.client = client;
+            this.idleSince = System.currentTimeMillis();
+            this.lastValidated = this.idleSince;
+        }
+
+        DigitalObjectRepositoryClient getClient() {
+            return client;
+        }
+
+        long getIdleSince() {
+            return idleSince;
+        }
+
+        void setIdleSince(long idleSince) {
+            this.idleSince = idleSince;
+        }
+
+        long getLastValidated() {
+            return lastValidated;
+        }
+
+        void setLastValidated(long lastValidated) {
+            this.lastValidated = lastValidated;
+        }
+    }
+}
@@ -14,12 +14,25 @@ public class DigitalObjectRepositoryInfo {
     /* ATTRIBUTES */
     /**************/
 
+    public static final int DEFAULT_SEARCH_PARALLELISM = 4;
+    public static final int DEFAULT_MAX_PAGE_SIZE = 500;
+    public static final int DEFAULT_VERSION_RETRIEVAL_PARALLELISM = 4;
+    public static final long DEFAULT_VERSION_TIMELINE_TTL_MILLIS = 60000;
+    public static final long DEFAULT_VERSION_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    public static final boolean DEFAULT_VERSION_CACHE_OFF_HEAP = false;
+
     private String url;
     private Integer doipPort;
     private String handlePrefix;
     private String username;
     private String password;
     private Integer pageSize;
+    private Integer searchParallelism = DEFAULT_SEARCH_PARALLELISM;
+    private Integer maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    private Integer versionRetrievalParallelism = DEFAULT_VERSION_RETRIEVAL_PARALLELISM;
+    private Long versionTimelineTtlMillis = DEFAULT_VERSION_TIMELINE_TTL_MILLIS;
+    private Long versionCacheMaxBytes = DEFAULT_VERSION_CACHE_MAX_BYTES;
+    private Boolean versionCacheOffHeap = DEFAULT_VERSION_CACHE_OFF_HEAP;
 
 
     /***********************/
@@ -74,6 +87,54 @@ public class DigitalObjectRepositoryInfo {
         this.pageSize = pageSize;
     }
 
+    public Integer getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    public void setSearchParallelism(Integer searchParallelism) {
+        this.searchParallelism = searchParallelism;
+    }
+
+    public Integer getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public void setMaxPageSize(Integer maxPageSize) {
+        this.maxPageSize = maxPageSize;
+    }
+
+    public Integer getVersionRetrievalParallelism() {
+        return versionRetrievalParallelism;
+    }
+
+    public void setVersionRetrievalParallelism(Integer versionRetrievalParallelism) {
+        this.versionRetrievalParallelism = versionRetrievalParallelism;
+    }
+
+    public Long getVersionTimelineTtlMillis() {
+        return versionTimelineTtlMillis;
+    }
+
+    public void setVersionTimelineTtlMillis(Long versionTimelineTtlMillis) {
+        this.versionTimelineTtlMillis = versionTimelineTtlMillis;
+    }
+
+    public Long getVersionCacheMaxBytes() {
+        return versionCacheMaxBytes;
+    }
+
+    public void setVersionCacheMaxBytes(Long versionCacheMaxBytes) {
+        this.versionCacheMaxBytes = versionCacheMaxBytes;
+    }
+
+    public Boolean getVersionCacheOffHeap() {
+        return versionCacheOffHeap;
+    }
+
+    public void setVersionCacheOffHeap(Boolean versionCacheOffHeap) {
+        this.versionCacheOffHeap = versionCacheOffHeap;
+    }
+
 
     /****************/
     /* CONSTRUCTORS */
@@ -121,6 +182,12 @@ public class DigitalObjectRepositoryInfo {
                 config.getInt("digitalObjectRepository.doipPort"),config.getString("digitalObjectRepository.handlePrefix"),
                 config.getString("digitalObjectRepository.username"),config.getString("digitalObjectRepository.password"),
                 config.getInt("digitalObjectRepository.searchPageSize"));
+        digitalObjectRepositoryInfo.setSearchParallelism(config.getInt("digitalObjectRepository.searchParallelism", DEFAULT_SEARCH_PARALLELISM));
+        digitalObjectRepositoryInfo.setMaxPageSize(config.getInt("digitalObjectRepository.searchMaxPageSize", DEFAULT_MAX_PAGE_SIZE));
+        digitalObjectRepositoryInfo.setVersionRetrievalParallelism(config.getInt("digitalObjectRepository.versionRetrievalParallelism", DEFAULT_VERSION_RETRIEVAL_PARALLELISM));
+        digitalObjectRepositoryInfo.setVersionTimelineTtlMillis(config.getLong("digitalObjectRepository.versionTimelineTtlMillis", DEFAULT_VERSION_TIMELINE_TTL_MILLIS));
+        digitalObjectRepositoryInfo.setVersionCacheMaxBytes(config.getLong("digitalObjectRepository.versionCache.maxBytes", DEFAULT_VERSION_CACHE_MAX_BYTES));
+        digitalObjectRepositoryInfo.setVersionCacheOffHeap(config.getBoolean("digitalObjectRepository.versionCache.offHeap", DEFAULT_VERSION_CACHE_OFF_HEAP));
         return digitalObjectRepositoryInfo;
     }
 
@@ -129,6 +196,12 @@ public class DigitalObjectRepositoryInfo {
                 config.getInt("provenanceRepository.doipPort"),config.getString("provenanceRepository.handlePrefix"),
                 config.getString("provenanceRepository.username"),config.getString("provenanceRepository.password"),
                 config.getInt("provenanceRepository.searchPageSize"));
+        provenanceRepositoryInfo.setSearchParallelism(config.getInt("provenanceRepository.searchParallelism", DEFAULT_SEARCH_PARALLELISM));
+        provenanceRepositoryInfo.setMaxPageSize(config.getInt("provenanceRepository.searchMaxPageSize", DEFAULT_MAX_PAGE_SIZE));
+        provenanceRepositoryInfo.setVersionRetrievalParallelism(config.getInt("provenanceRepository.versionRetrievalParallelism", DEFAULT_VERSION_RETRIEVAL_PARALLELISM));
+        provenanceRepositoryInfo.setVersionTimelineTtlMillis(config.getLong("provenanceRepository.versionTimelineTtlMillis", DEFAULT_VERSION_TIMELINE_TTL_MILLIS));
+        provenanceRepositoryInfo.setVersionCacheMaxBytes(config.getLong("provenanceRepository.versionCache.maxBytes", DEFAULT_VERSION_CACHE_MAX_BYTES));
+        provenanceRepositoryInfo.setVersionCacheOffHeap(config.getBoolean("provenanceRepository.versionCache.offHeap", DEFAULT_VERSION_CACHE_OFF_HEAP));
         return provenanceRepositoryInfo;
     }
 
@@ -143,12 +216,19 @@ public class DigitalObjectRepositoryInfo {
                 Objects.equals(handlePrefix, digitalObjectRepositoryInfo.handlePrefix) &&
                 Objects.equals(username, digitalObjectRepositoryInfo.username) &&
                 Objects.equals(password, digitalObjectRepositoryInfo.password) &&
-                Objects.equals(pageSize, digitalObjectRepositoryInfo.pageSize);
+                Objects.equals(pageSize, digitalObjectRepositoryInfo.pageSize) &&
+                Objects.equals(searchParallelism, digitalObjectRepositoryInfo.searchParallelism) &&
+                Objects.equals(maxPageSize, digitalObjectRepositoryInfo.maxPageSize) &&
+                Objects.equals(versionRetrievalParallelism, digitalObjectRepositoryInfo.versionRetrievalParallelism) &&
+                Objects.equals(versionTimelineTtlMillis, digitalObjectRepositoryInfo.versionTimelineTtlMillis) &&
+                Objects.equals(versionCacheMaxBytes, digitalObjectRepositoryInfo.versionCacheMaxBytes) &&
+                Objects.equals(versionCacheOffHeap, digitalObjectRepositoryInfo.versionCacheOffHeap);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(url, doipPort, handlePrefix, username, password, pageSize);
+        return Objects.hash(url, doipPort, handlePrefix, username, password, pageSize, searchParallelism, maxPageSize, versionRetrievalParallelism, versionTimelineTtlMillis,
+                versionCacheMaxBytes, versionCacheOffHeap);
     }
 
     @Override
@@ -160,6 +240,12 @@ public class DigitalObjectRepositoryInfo {
                 ", username='" + username + '\'' +
                 ", password='" + password + '\'' +
                 ", pageSize='" + pageSize + '\'' +
+                ", searchParallelism='" + searchParallelism + '\'' +
+                ", maxPageSize='" + maxPageSize + '\'' +
+                ", versionRetrievalParallelism='" + versionRetrievalParallelism + '\'' +
+                ", versionTimelineTtlMillis='" + versionTimelineTtlMillis + '\'' +
+                ", versionCacheMaxBytes='" + versionCacheMaxBytes + '\'' +
+                ", versionCacheOffHeap='" + versionCacheOffHeap + '\'' +
                 '}';
     }
 }
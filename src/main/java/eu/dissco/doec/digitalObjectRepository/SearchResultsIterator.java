@@ -0,0 +1,197 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import net.dona.doip.client.DigitalObject;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterator over the results of a search in the digital object repository that fetches the pages lazily, as they are
+ * consumed, so the memory used is bounded by the page size regardless of the number of results.
+ * Optionally, the next page is fetched in the background while the current one is consumed (read-ahead), in which
+ * case at most two pages are held in memory.
+ * Errors of the repository are thrown as UncheckedDigitalObjectRepositoryException, as Iterator doesn't allow
+ * checked exceptions
+ */
+public class SearchResultsIterator implements Iterator<DigitalObject>, AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final AtomicInteger readAheadThreadCounter = new AtomicInteger();
+    private static final ExecutorService readAheadExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "doec-search-read-ahead-" + readAheadThreadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DigitalObjectRepositoryClient client;
+    private final String query;
+    private final int pageSize;
+    private final boolean readAhead;
+    private final List<String> fields;
+
+    private Iterator<DigitalObject> currentPage = null;
+    private Future<List<DigitalObject>> nextPage = null;
+    private int nextPageNumber = 0;
+    private long numResultsFetched = 0;
+    private volatile boolean lastPageFetched = false;
+    private boolean closed = false;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isReadAhead() {
+        return readAhead;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new SearchResultsIterator. No page is fetched until the first result is requested
+     * @param client client of the repository where the search is done
+     * @param query query using Lucene Query Syntax
+     * @param pageSize number of results fetched per request
+     * @param readAhead if true, the next page is fetched in the background while the current one is consumed
+     */
+    public SearchResultsIterator(DigitalObjectRepositoryClient client, String query, int pageSize, boolean readAhead) {
+        this(client, query, pageSize, readAhead, null);
+    }
+
+    /**
+     * Create a new SearchResultsIterator that only gets some fields of the objects. No page is fetched until the first
+     * result is requested
+     * @param client client of the repository where the search is done
+     * @param query query using Lucene Query Syntax
+     * @param pageSize number of results fetched per request
+     * @param readAhead if true, the next page is fetched in the background while the current one is consumed
+     * @param fields JSON pointers of the fields to be returned, or null to return the whole objects
+     */
+    public SearchResultsIterator(DigitalObjectRepositoryClient client, String query, int pageSize, boolean readAhead, List<String> fields) {
+        if (pageSize <= 0){
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        this.client = client;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.readAhead = readAhead;
+        this.fields = fields;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    @Override
+    public boolean hasNext() {
+        while (!this.closed && (this.currentPage == null || !this.currentPage.hasNext())){
+            if (this.lastPageFetched && this.nextPage == null){
+                return false;
+            }
+            this.currentPage = this.takeNextPage().iterator();
+        }
+        return !this.closed;
+    }
+
+    @Override
+    public DigitalObject next() {
+        if (!this.hasNext()){
+            throw new NoSuchElementException();
+        }
+        return this.currentPage.next();
+    }
+
+    /**
+     * Stop iterating, cancelling the page being fetched in the background if any
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.currentPage = null;
+        if (this.nextPage != null){
+            this.nextPage.cancel(true);
+            this.nextPage = null;
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Get the next page, either the one fetched in the background or fetching it now, and start fetching the
+     * following one if read-ahead is enabled
+     * @return results of the next page
+     */
+    private List<DigitalObject> takeNextPage() {
+        List<DigitalObject> page;
+        if (this.nextPage != null){
+            try {
+                page = this.nextPage.get();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new UncheckedDigitalObjectRepositoryException(new DigitalObjectRepositoryException("Interrupted while fetching search results", e));
+            } catch (ExecutionException e){
+                if (e.getCause() instanceof UncheckedDigitalObjectRepositoryException){
+                    throw (UncheckedDigitalObjectRepositoryException) e.getCause();
+                }
+                throw new UncheckedDigitalObjectRepositoryException(new DigitalObjectRepositoryException(e.getCause()));
+            } finally {
+                this.nextPage = null;
+            }
+        } else{
+            page = this.fetchPage(this.nextPageNumber);
+        }
+        this.nextPageNumber++;
+
+        if (this.isReadAhead() && !this.lastPageFetched){
+            int pageNumber = this.nextPageNumber;
+            this.nextPage = readAheadExecutor.submit(() -> this.fetchPage(pageNumber));
+        }
+        return page;
+    }
+
+    /**
+     * Fetch a page of results from the repository. It is the last page if it isn't full or all the results reported
+     * by the repository have been fetched
+     * @param pageNumber number of the page, starting from 0
+     * @return results of the page
+     */
+    private List<DigitalObject> fetchPage(int pageNumber) {
+        try {
+            DigitalObjectRepositoryClient.SearchPage page = this.client.fetchSearchPage(this.getQuery(), pageNumber, this.getPageSize(), this.getFields());
+            synchronized (this){
+                this.numResultsFetched += page.getResults().size();
+                if (page.getResults().size() < this.getPageSize() || (page.getTotalHits() >= 0 && this.numResultsFetched >= page.getTotalHits())){
+                    this.lastPageFetched = true;
+                }
+            }
+            return page.getResults();
+        } catch (DigitalObjectRepositoryException e){
+            throw new UncheckedDigitalObjectRepositoryException(e);
+        }
+    }
+}
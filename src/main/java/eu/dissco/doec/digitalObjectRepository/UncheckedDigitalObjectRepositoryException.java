@@ -0,0 +1,26 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+/**
+ * Unchecked wrapper of a DigitalObjectRepositoryException, used where checked exceptions can't be thrown
+ * (e.g. iterators and streams over search results)
+ */
+public class UncheckedDigitalObjectRepositoryException extends RuntimeException {
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    public UncheckedDigitalObjectRepositoryException(DigitalObjectRepositoryException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    @Override
+    public synchronized DigitalObjectRepositoryException getCause() {
+        return (DigitalObjectRepositoryException) super.getCause();
+    }
+}
@@ -0,0 +1,156 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import eu.dissco.doec.utils.JsonCodec;
+import net.dona.doip.client.DigitalObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the published versions of the digital objects, by version id. Published versions never change, so they
+ * don't need to expire. The versions are kept serialized as json, optionally outside of the heap, and the least
+ * recently used ones are evicted when the total size exceeds the maximum size of the cache.
+ * A new copy of the digital object is returned every time, so callers can modify it
+ */
+public class VersionObjectCache {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final long maxBytes;
+    private final boolean offHeap;
+    private final Map<String, ByteBuffer> versions = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public synchronized int size() {
+        return this.versions.size();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new VersionObjectCache
+     * @param maxBytes maximum size of the serialized versions kept. 0 disables the cache
+     * @param offHeap if true, the serialized versions are kept in direct buffers, outside of the heap
+     */
+    public VersionObjectCache(long maxBytes, boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get a version from the cache
+     * @param versionId id of the version
+     * @return copy of the version, or null if it isn't cached
+     */
+    public DigitalObject get(String versionId) {
+        ByteBuffer serializedVersion;
+        synchronized (this){
+            serializedVersion = this.versions.get(versionId);
+        }
+        if (serializedVersion == null){
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        byte[] bytes = new byte[serializedVersion.remaining()];
+        serializedVersion.duplicate().get(bytes);
+        return JsonCodec.getGson().fromJson(new String(bytes, StandardCharsets.UTF_8), DigitalObject.class);
+    }
+
+    /**
+     * Add a version to the cache, evicting the least recently used versions if needed. Versions bigger than the
+     * cache are not added
+     * @param versionId id of the version
+     * @param version version, which must not be modified afterwards
+     */
+    public void put(String versionId, DigitalObject version) {
+        if (this.getMaxBytes() <= 0){
+            return;
+        }
+        byte[] bytes = JsonCodec.getGson().toJson(version).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > this.getMaxBytes()){
+            return;
+        }
+        ByteBuffer serializedVersion;
+        if (this.isOffHeap()){
+            serializedVersion = ByteBuffer.allocateDirect(bytes.length);
+            serializedVersion.put(bytes);
+            serializedVersion.flip();
+        } else{
+            serializedVersion = ByteBuffer.wrap(bytes);
+        }
+
+        synchronized (this){
+            ByteBuffer previous = this.versions.put(versionId, serializedVersion);
+            if (previous != null){
+                this.sizeBytes -= previous.capacity();
+            }
+            this.sizeBytes += serializedVersion.capacity();
+            Iterator<ByteBuffer> leastRecentlyUsed = this.versions.values().iterator();
+            while (this.sizeBytes > this.getMaxBytes() && leastRecentlyUsed.hasNext()){
+                this.sizeBytes -= leastRecentlyUsed.next().capacity();
+                leastRecentlyUsed.remove();
+                this.evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VersionObjectCache{" +
+                "maxBytes=" + maxBytes +
+                ", offHeap=" + offHeap +
+                ", sizeBytes=" + getSizeBytes() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+}
@@ -0,0 +1,126 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import net.cnri.cordra.api.VersionInfo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Versions of a digital object sorted by the time they were published, so the version of the object at a given time
+ * can be found with a binary search. The current version of the object (the one that has not been published, as it
+ * can still be modified) is kept apart, as it is the object at any time from now on
+ */
+public class VersionTimeline {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final long[] publishedOn;
+    private final String[] versionIds;
+    private final String currentVersionId;
+    private final long loadedOn;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    /**
+     * Get the number of versions, including the current version
+     * @return number of versions
+     */
+    public int size() {
+        return this.versionIds.length + (this.currentVersionId != null ? 1 : 0);
+    }
+
+    /**
+     * Get the id of the version in the given position
+     * @param position position of the version, from the oldest to the most recent
+     * @return id of the version
+     */
+    public String getVersionId(int position) {
+        return position < this.versionIds.length ? this.versionIds[position] : this.currentVersionId;
+    }
+
+    /**
+     * Check whether the version in the given position is the current version of the object, which can still change
+     * @param position position of the version, from the oldest to the most recent
+     * @return true if it is the current version
+     */
+    public boolean isCurrentVersion(int position) {
+        return position >= this.versionIds.length;
+    }
+
+    public String getCurrentVersionId() {
+        return currentVersionId;
+    }
+
+    public long getLoadedOn() {
+        return loadedOn;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new VersionTimeline
+     * @param versions versions of the object as returned by the CORDRA REST API, in any order. They are not modified
+     * @param loadedOn time when the versions were retrieved, in milliseconds since the epoch
+     */
+    public VersionTimeline(List<VersionInfo> versions, long loadedOn) {
+        VersionInfo[] published = versions.stream().filter(v -> v.publishedOn != null)
+                .sorted(Comparator.comparing(v -> v.publishedOn)).toArray(VersionInfo[]::new);
+        this.publishedOn = new long[published.length];
+        this.versionIds = new String[published.length];
+        for (int i = 0; i < published.length; i++) {
+            this.publishedOn[i] = published[i].publishedOn;
+            this.versionIds[i] = published[i].id;
+        }
+        this.currentVersionId = versions.stream().filter(v -> v.publishedOn == null).map(v -> v.id).reduce((first, second) -> second).orElse(null);
+        this.loadedOn = loadedOn;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Find the most recent version of the object published at or before the given time. The current version is
+     * considered published now
+     * @param datetimeEpoch time in milliseconds since the epoch
+     * @param now current time in milliseconds since the epoch
+     * @return position of the version, or -1 if no version was published at or before the given time
+     */
+    public int findPositionAt(long datetimeEpoch, long now) {
+        //Position of the first version published after the given time
+        int low = 0;
+        int high = this.publishedOn.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if (this.publishedOn[middle] <= datetimeEpoch){
+                low = middle + 1;
+            } else{
+                high = middle;
+            }
+        }
+        if (low == this.publishedOn.length && this.currentVersionId != null && now <= datetimeEpoch){
+            return low;
+        }
+        return low - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "VersionTimeline{" +
+                "publishedOn=" + Arrays.toString(publishedOn) +
+                ", versionIds=" + Arrays.toString(versionIds) +
+                ", currentVersionId='" + currentVersionId + '\'' +
+                ", loadedOn=" + loadedOn +
+                '}';
+    }
+}
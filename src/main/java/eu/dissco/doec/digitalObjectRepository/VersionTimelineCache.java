@@ -0,0 +1,106 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the version timelines of the objects of a repository, so point in time queries on the same object don't
+ * need to retrieve its versions every time. A timeline expires after a time to live, as versions can be published by
+ * other clients, and it is invalidated when a version of the object is published through this application.
+ * When it is full, the least recently used timeline is evicted
+ */
+public class VersionTimelineCache {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final long ttlMillis;
+    private final Map<String, VersionTimeline> timelines;
+    //Incremented on every invalidation, so timelines loaded before an invalidation are not cached
+    private long generation = 0;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public synchronized int size() {
+        return this.timelines.size();
+    }
+
+    /**
+     * Get the current generation of the cache, to be read before loading a timeline and passed when it is cached
+     * @return generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new VersionTimelineCache
+     * @param ttlMillis time a timeline is kept since it was loaded, in milliseconds. 0 disables the cache
+     * @param maxEntries maximum number of timelines kept
+     */
+    public VersionTimelineCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.timelines = new LinkedHashMap<String, VersionTimeline>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VersionTimeline> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the timeline of an object if it is cached and has not expired
+     * @param objectId id of the object
+     * @param now current time in milliseconds since the epoch
+     * @return timeline of the object, or null if it isn't cached
+     */
+    public synchronized VersionTimeline get(String objectId, long now) {
+        VersionTimeline timeline = this.timelines.get(objectId);
+        if (timeline != null && now - timeline.getLoadedOn() >= this.getTtlMillis()){
+            this.timelines.remove(objectId);
+            timeline = null;
+        }
+        return timeline;
+    }
+
+    /**
+     * Cache the timeline of an object, unless any timeline was invalidated while it was being loaded
+     * @param objectId id of the object
+     * @param timeline timeline of the object
+     * @param generation generation of the cache before the timeline was loaded
+     */
+    public synchronized void put(String objectId, VersionTimeline timeline, long generation) {
+        if (this.getTtlMillis() > 0 && this.generation == generation){
+            this.timelines.put(objectId, timeline);
+        }
+    }
+
+    /**
+     * Remove the timeline of an object, as its versions have changed
+     * @param objectId id of the object
+     */
+    public synchronized void invalidate(String objectId) {
+        this.generation++;
+        this.timelines.remove(objectId);
+    }
+}
@@ -0,0 +1,373 @@
+package eu.dissco.doec.eventProcessing;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only journal of the events whose provenance record has not been saved yet.
+ * Every accepted event is appended to the journal with a sequence number, and it is acknowledged once its provenance
+ * record has been saved. When the journal is opened, the events not acknowledged are recovered so they can be
+ * processed again, so no event is lost if Cordra stops or the provenance repository is not available.
+ *
+ * The journal is made of memory-mapped segment files of fixed size. Every entry has the following layout:
+ *  - payload length (int)
+ *  - sequence number (long)
+ *  - entry type (byte): EVENT, or ACK of the event with the same sequence number
+ *  - CRC32 of the sequence number, entry type and payload (int)
+ *  - payload
+ * A segment is deleted once all its events are acknowledged and all older segments have been deleted, as the ACK of
+ * an event is always written in its segment or in a newer one
+ */
+public class EventJournal implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final String DEFAULT_DIRECTORY_NAME = "doec_journal";
+    public static final int DEFAULT_SEGMENT_SIZE_BYTES = 16 * 1024 * 1024;
+    public static final boolean DEFAULT_FORCE_ON_WRITE = false;
+
+    private static final byte ENTRY_END = 0;
+    private static final byte ENTRY_EVENT = 1;
+    private static final byte ENTRY_ACK = 2;
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES;
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".journal";
+    private static final String LOCK_FILE_NAME = "journal.lock";
+
+    private final Path directory;
+    private final int segmentSizeBytes;
+    private final boolean forceOnWrite;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<Long, Segment> segmentOfPendingEvent = new HashMap<>();
+    private final SortedMap<Long, byte[]> recoveredEvents = new TreeMap<>();
+    private Segment currentSegment;
+    private long nextSequence = 1;
+    private long nextSegmentIndex = 1;
+    private boolean closed = false;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public boolean isForceOnWrite() {
+        return forceOnWrite;
+    }
+
+    public synchronized int getNumPendingEvents() {
+        return this.segmentOfPendingEvent.size();
+    }
+
+    public synchronized int getNumSegments() {
+        return this.segments.size();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Open the journal stored in the directory received as parameter, recovering the events not acknowledged
+     * @param directory directory where the segment files are stored. It is created if it doesn't exist
+     * @param segmentSizeBytes size of every segment file
+     * @param forceOnWrite if true, every entry is forced to disk when written, so it survives an operating system
+     *                     crash and not only a crash of Cordra
+     * @throws IOException if the journal can't be read or it is being used by another controller
+     */
+    public EventJournal(Path directory, int segmentSizeBytes, boolean forceOnWrite) throws IOException {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.forceOnWrite = forceOnWrite;
+
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = this.lockChannel.tryLock();
+        } catch (OverlappingFileLockException e){
+            fileLock = null;
+        }
+        if (fileLock == null){
+            this.lockChannel.close();
+            throw new IOException("Event journal " + directory + " is being used by another controller");
+        }
+        this.lock = fileLock;
+
+        try {
+            this.recover();
+            this.compact();
+            this.currentSegment = this.createSegment(this.getSegmentSizeBytes());
+        } catch (IOException e){
+            this.releaseLock();
+            throw e;
+        }
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Append an event to the journal
+     * @param payload serialized event
+     * @return sequence number assigned to the event, to be used to acknowledge it
+     * @throws IOException
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        long sequence = this.nextSequence++;
+        Segment segment = this.write(sequence, ENTRY_EVENT, payload);
+        segment.numPendingEvents++;
+        this.segmentOfPendingEvent.put(sequence, segment);
+        return sequence;
+    }
+
+    /**
+     * Acknowledge an event, so it is no longer recovered when the journal is opened
+     * @param sequence sequence number of the event
+     * @throws IOException
+     */
+    public synchronized void ack(long sequence) throws IOException {
+        Segment segment = this.segmentOfPendingEvent.remove(sequence);
+        if (segment == null){
+            //Unknown or already acknowledged
+            return;
+        }
+        this.recoveredEvents.remove(sequence);
+        this.write(sequence, ENTRY_ACK, new byte[0]);
+        segment.numPendingEvents--;
+        this.compact();
+    }
+
+    /**
+     * Get the events found in the journal when it was opened that have not been acknowledged yet
+     * @return serialized events indexed by their sequence number, in the order they were appended
+     */
+    public synchronized SortedMap<Long, byte[]> getRecoveredEvents() {
+        return new TreeMap<>(this.recoveredEvents);
+    }
+
+    /**
+     * Flush the current segment to disk and release the journal. The events not acknowledged are recovered the next
+     * time the journal is opened
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed){
+            return;
+        }
+        this.closed = true;
+        if (this.currentSegment != null){
+            this.currentSegment.buffer.force();
+        }
+        this.releaseLock();
+    }
+
+    /**
+     * Get the journal using the parameters found in the configuration. By default it is stored in the Cordra data
+     * directory, or in the temporary directory if the cordra.data system property is not defined
+     * @param config configuration
+     * @return journal
+     * @throws IOException
+     */
+    public static EventJournal getEventJournalFromConfig(Configuration config) throws IOException {
+        return new EventJournal(getEventJournalDirectoryFromConfig(config),
+                config.getInt("journal.segmentSizeBytes", DEFAULT_SEGMENT_SIZE_BYTES),
+                config.getBoolean("journal.forceOnWrite", DEFAULT_FORCE_ON_WRITE));
+    }
+
+    /**
+     * Get the directory of the journal found in the configuration
+     * @param config configuration
+     * @return directory of the journal
+     */
+    public static Path getEventJournalDirectoryFromConfig(Configuration config) {
+        String defaultDirectory = Paths.get(System.getProperty("cordra.data", System.getProperty("java.io.tmpdir")),
+                DEFAULT_DIRECTORY_NAME).toString();
+        return Paths.get(config.getString("journal.directory", defaultDirectory));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Read all segment files, keeping the events not acknowledged. Reading a segment stops at the first entry that is
+     * incomplete or whose checksum doesn't match, as it was being written when Cordra stopped
+     * @throws IOException
+     */
+    private void recover() throws IOException {
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.list(this.getDirectory())) {
+            segmentFiles = files.filter(file -> {
+                String fileName = file.getFileName().toString();
+                return fileName.startsWith(SEGMENT_FILE_PREFIX) && fileName.endsWith(SEGMENT_FILE_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+
+        for (Path segmentFile:segmentFiles) {
+            Segment segment = new Segment(segmentFile, null);
+            try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= ENTRY_HEADER_SIZE) {
+                    int payloadLength = buffer.getInt();
+                    long sequence = buffer.getLong();
+                    byte entryType = buffer.get();
+                    int checksum = buffer.getInt();
+                    if (entryType == ENTRY_END || payloadLength < 0 || payloadLength > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] payload = new byte[payloadLength];
+                    buffer.get(payload);
+                    if (checksum != checksum(sequence, entryType, payload)) {
+                        //Entry torn when Cordra stopped while it was being written, which is expected at the tail of
+                        //the last segment: the rest of the segment is ignored
+                        break;
+                    }
+                    if (entryType == ENTRY_EVENT) {
+                        this.recoveredEvents.put(sequence, payload);
+                        this.segmentOfPendingEvent.put(sequence, segment);
+                        segment.numPendingEvents++;
+                    } else if (entryType == ENTRY_ACK) {
+                        Segment segmentOfEvent = this.segmentOfPendingEvent.remove(sequence);
+                        if (segmentOfEvent != null) {
+                            this.recoveredEvents.remove(sequence);
+                            segmentOfEvent.numPendingEvents--;
+                        }
+                    }
+                    this.nextSequence = Math.max(this.nextSequence, sequence + 1);
+                }
+            }
+            this.segments.addLast(segment);
+            this.nextSegmentIndex = Math.max(this.nextSegmentIndex, getSegmentIndex(segmentFile) + 1);
+        }
+    }
+
+    /**
+     * Delete the oldest segments while all their events are acknowledged. The current segment is never deleted
+     */
+    private void compact() {
+        while (!this.segments.isEmpty() && this.segments.peekFirst() != this.currentSegment
+                && this.segments.peekFirst().numPendingEvents == 0) {
+            Segment segment = this.segments.pollFirst();
+            try {
+                //The file may still be mapped until its buffer is garbage collected, but the space is released then
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Write an entry in the current segment, moving to a new segment if it doesn't fit
+     * @param sequence sequence number of the event
+     * @param entryType type of entry
+     * @param payload payload of the entry
+     * @return segment where the entry was written
+     * @throws IOException
+     */
+    private Segment write(long sequence, byte entryType, byte[] payload) throws IOException {
+        if (this.closed){
+            throw new IOException("Event journal " + this.getDirectory() + " is closed");
+        }
+        int entrySize = ENTRY_HEADER_SIZE + payload.length;
+        //Leave room for the end marker, so the reader doesn't need to rely on the file size
+        if (this.currentSegment.buffer.remaining() < entrySize + 1){
+            this.currentSegment.buffer.force();
+            this.currentSegment = this.createSegment(Math.max(this.getSegmentSizeBytes(), entrySize + 1));
+        }
+        MappedByteBuffer buffer = this.currentSegment.buffer;
+        buffer.putInt(payload.length);
+        buffer.putLong(sequence);
+        buffer.put(entryType);
+        buffer.putInt(checksum(sequence, entryType, payload));
+        buffer.put(payload);
+        if (this.isForceOnWrite()){
+            buffer.force();
+        }
+        return this.currentSegment;
+    }
+
+    /**
+     * Create and map a new segment file, which becomes the last segment of the journal
+     * @param size size of the segment file
+     * @return segment
+     * @throws IOException
+     */
+    private Segment createSegment(int size) throws IOException {
+        Path segmentFile = this.getDirectory().resolve(String.format("%s%019d%s", SEGMENT_FILE_PREFIX, this.nextSegmentIndex++, SEGMENT_FILE_SUFFIX));
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Segment segment = new Segment(segmentFile, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            this.segments.addLast(segment);
+            return segment;
+        }
+    }
+
+    private void releaseLock() {
+        try {
+            this.lock.release();
+            this.lockChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static long getSegmentIndex(Path segmentFile) {
+        String fileName = segmentFile.getFileName().toString();
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_FILE_PREFIX.length(), fileName.length() - SEGMENT_FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int checksum(long sequence, byte entryType, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES + 1).putLong(sequence).put(entryType).array());
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int numPendingEvents = 0;
+
+        Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package eu.dissco.doec.eventProcessing;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated executor for the asynchronous processing of events (i.e. saving their provenance records).
+ * It uses a fixed number of named daemon threads, and it bounds the number of events in progress: an event counts
+ * against the capacity of the executor from the moment it is submitted until its processing completes, including the
+ * time it waits to be visible in the repository and the time its provenance record waits to be written. What happens
+ * when the executor is full is decided by its overflow policy:
+ *  - BLOCK: the caller waits until an event in progress finishes
+ *  - CALLER_RUNS: the processing of the event is started in the caller thread, and its later stages run in the
+ *    executor without counting against its capacity. The caller doesn't wait until the processing completes, as the
+ *    event can't be visible in the repository before the Cordra operation that fired it returns
+ *  - SPILL: the event is kept in a spill buffer and it is started as soon as an event in progress finishes. If the
+ *    spill buffer is full too the event is rejected, so it stays in the event journal and it is processed again when
+ *    Cordra is restarted
+ * Events in progress are flushed when the executor is drained, so no event is lost when Cordra stops.
+ * The executor is also the Executor of the stages of the events in progress (e.g. the probes of a wait and the stages
+ * that depend on it), which are never blocked nor rejected by the overflow policy, as their event is already counted
+ */
+public class EventProcessingExecutor implements Executor {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_NUM_THREADS = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final long DEFAULT_DRAIN_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_SPILL_CAPACITY = 10000;
+
+    private final OVERFLOW_POLICY overflowPolicy;
+    private final long drainTimeoutMillis;
+    private final int capacity;
+    private final Semaphore eventPermits;
+    private final BlockingDeque<Supplier<? extends CompletionStage<?>>> spillBuffer;
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private volatile boolean draining = false;
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum OVERFLOW_POLICY {
+        BLOCK,
+        CALLER_RUNS,
+        SPILL
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public OVERFLOW_POLICY getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueSize() {
+        return this.threadPoolExecutor.getQueue().size();
+    }
+
+    public int getSpillBufferSize() {
+        return this.spillBuffer.size();
+    }
+
+    public int getActiveCount() {
+        return this.threadPoolExecutor.getActiveCount();
+    }
+
+    public int getNumEventsInProgress() {
+        return this.getCapacity() - this.eventPermits.availablePermits();
+    }
+
+    public boolean isShutdown() {
+        return this.draining;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new EventProcessingExecutor
+     * @param numThreads number of threads processing events
+     * @param queueCapacity maximum number of events waiting, besides the ones being processed by the threads
+     * @param overflowPolicy what to do with new events when the executor is full
+     * @param drainTimeoutMillis maximum time to wait for the events in progress to be processed on shutdown
+     * @param spillCapacity maximum number of events in the spill buffer, used by the SPILL overflow policy
+     */
+    public EventProcessingExecutor(int numThreads, int queueCapacity, OVERFLOW_POLICY overflowPolicy, long drainTimeoutMillis, int spillCapacity) {
+        this.overflowPolicy = overflowPolicy;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+        this.capacity = numThreads + queueCapacity;
+        this.eventPermits = new Semaphore(this.capacity);
+        this.spillBuffer = new LinkedBlockingDeque<>(spillCapacity);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "doec-event-processor-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        //The queue is not bounded by itself: it holds at most the events counted against the capacity and their stages
+        this.threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Submit an event to be processed asynchronously
+     * @param eventProcessing task that starts the processing of the event and returns a stage completed when the
+     *                        processing has finished
+     * @throws RejectedExecutionException if the executor has been shut down
+     */
+    public void submit(Supplier<? extends CompletionStage<?>> eventProcessing) {
+        if (this.draining){
+            throw new RejectedExecutionException("EventProcessingExecutor has been shut down");
+        }
+        if (this.eventPermits.tryAcquire()){
+            this.start(eventProcessing);
+        } else{
+            this.handleOverflow(eventProcessing);
+        }
+    }
+
+    /**
+     * Run a stage of an event in progress in the threads of the executor
+     * @param stage stage of an event already submitted
+     * @throws RejectedExecutionException if the executor has been shut down and drained
+     */
+    @Override
+    public void execute(Runnable stage) {
+        this.threadPoolExecutor.execute(stage);
+    }
+
+    /**
+     * Stop accepting new events and wait until all the events in progress and the spilled ones have been processed
+     * @param timeout maximum time to wait
+     * @param unit time unit of the timeout
+     * @return true if all events were processed, false if the timeout expired before
+     * @throws InterruptedException
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.draining = true;
+        do {
+            //Spilled events are started as the events in progress finish, so once all the permits are back there
+            //is nothing left to process
+            if (!this.eventPermits.tryAcquire(this.getCapacity(), deadline - System.nanoTime(), TimeUnit.NANOSECONDS)){
+                return false;
+            }
+            this.eventPermits.release(this.getCapacity());
+            this.startSpilledEvents();
+        } while (!this.spillBuffer.isEmpty() || this.getNumEventsInProgress() > 0);
+        this.threadPoolExecutor.shutdown();
+        return this.threadPoolExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Drain the executor waiting at most the drain timeout, and then interrupt any event still being processed
+     */
+    public void shutdown() {
+        try {
+            if (!this.drain(this.getDrainTimeoutMillis(), TimeUnit.MILLISECONDS)){
+                //The events remain in the event journal
+                System.err.println("EventProcessingExecutor shut down with " + (this.getNumEventsInProgress() + this.getSpillBufferSize())
+                        + " events not processed after " + this.getDrainTimeoutMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.threadPoolExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Get the executor using the parameters found in the configuration
+     * @param config configuration
+     * @return executor for processing events
+     */
+    public static EventProcessingExecutor getEventProcessingExecutorFromConfig(Configuration config){
+        return new EventProcessingExecutor(config.getInt("eventProcessing.threads", DEFAULT_NUM_THREADS),
+                config.getInt("eventProcessing.queueCapacity", DEFAULT_QUEUE_CAPACITY),
+                OVERFLOW_POLICY.valueOf(config.getString("eventProcessing.overflowPolicy", OVERFLOW_POLICY.BLOCK.name()).toUpperCase()),
+                config.getLong("eventProcessing.drainTimeoutMillis", DEFAULT_DRAIN_TIMEOUT_MILLIS),
+                config.getInt("eventProcessing.spillCapacity", DEFAULT_SPILL_CAPACITY));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Handle an event that can't be started because the executor is full, according to the overflow policy
+     * @param eventProcessing task that starts the processing of the event
+     */
+    private void handleOverflow(Supplier<? extends CompletionStage<?>> eventProcessing) {
+        switch (this.getOverflowPolicy()){
+            case CALLER_RUNS:
+                eventProcessing.get();
+                break;
+            case SPILL:
+                if (!this.spillBuffer.offerLast(eventProcessing)){
+                    throw new RejectedExecutionException("EventProcessingExecutor spill buffer is full");
+                }
+                //An event in progress might have finished while it was being spilled
+                this.startSpilledEvents();
+                break;
+            case BLOCK:
+            default:
+                try {
+                    this.eventPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for room in the event processing executor", e);
+                }
+                this.start(eventProcessing);
+        }
+    }
+
+    /**
+     * Start the processing of an event in the threads of the executor, once it holds a permit
+     * @param eventProcessing task that starts the processing of the event
+     */
+    private void start(Supplier<? extends CompletionStage<?>> eventProcessing) {
+        try {
+            this.threadPoolExecutor.execute(() -> {
+                CompletionStage<?> processing;
+                try {
+                    processing = eventProcessing.get();
+                } catch (RuntimeException e){
+                    this.finish();
+                    throw e;
+                }
+                processing.whenComplete((result, error) -> this.finish());
+            });
+        } catch (RejectedExecutionException e){
+            this.eventPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Release the permit of an event whose processing has finished, and start the spilled events while there is room
+     */
+    private void finish() {
+        this.eventPermits.release();
+        this.startSpilledEvents();
+    }
+
+    private void startSpilledEvents() {
+        while (!this.spillBuffer.isEmpty() && this.eventPermits.tryAcquire()){
+            Supplier<? extends CompletionStage<?>> eventProcessing = this.spillBuffer.pollFirst();
+            if (eventProcessing == null){
+                this.eventPermits.release();
+                break;
+            }
+            try {
+                this.start(eventProcessing);
+            } catch (RejectedExecutionException e){
+                //Shut down before it could be started: it remains in the event journal
+                this.spillBuffer.offerFirst(eventProcessing);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package eu.dissco.doec.eventProcessing;
+
+import eu.dissco.doec.utils.JsonCodec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Event accepted by the controller whose provenance record has not been saved yet.
+ * It only keeps the data received from Cordra, as received, so it can be written in the event journal and processed
+ * again if Cordra stops before its provenance record is saved
+ */
+public class PendingEvent {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final EVENT_TYPE eventType;
+    private final String object;
+    private final String originalObject;
+    private final String context;
+    private final long timestamp;
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum EVENT_TYPE {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public EVENT_TYPE getEventType() {
+        return eventType;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    public String getOriginalObject() {
+        return originalObject;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new PendingEvent
+     * @param eventType type of event
+     * @param object digital object received in the event (the modified object for updates), as json string
+     * @param originalObject digital object before the update as json string, or null for other events
+     * @param context context received in the event as json string
+     * @param timestamp time when the event was accepted, in milliseconds since the epoch
+     */
+    public PendingEvent(EVENT_TYPE eventType, String object, String originalObject, String context, long timestamp) {
+        this.eventType = eventType;
+        this.object = object;
+        this.originalObject = originalObject;
+        this.context = context;
+        this.timestamp = timestamp;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Serialize the event to be written in the journal
+     * @return event as UTF-8 encoded json
+     */
+    public byte[] toBytes() {
+        return JsonCodec.getGson().toJson(this).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deserialize an event read from the journal
+     * @param bytes event as UTF-8 encoded json
+     * @return event
+     */
+    public static PendingEvent fromBytes(byte[] bytes) {
+        return JsonCodec.getGson().fromJson(new String(bytes, StandardCharsets.UTF_8), PendingEvent.class);
+    }
+}
@@ -0,0 +1,222 @@
+package eu.dissco.doec.eventProcessing;
+
+import eu.dissco.doec.digitalObjectRepository.BatchCreateResult;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClient;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClientPool;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import net.dona.doip.client.DigitalObject;
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Write-behind stage in front of the provenance repository.
+ * Provenance records are accumulated and written in batches, with a single request per batch, instead of with one
+ * request per record. A batch is written when it reaches the maximum batch size or when its oldest record has been
+ * waiting for the maximum delay, whichever comes first. The result of every record is reported back through the
+ * future returned when it was submitted
+ */
+public class ProvenanceRecordBatchWriter implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 50;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 200;
+
+    private final DigitalObjectRepositoryClientPool provenanceRepositoryClientPool;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BlockingQueue<PendingRecord> pendingRecords = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public int getNumPendingRecords() {
+        return this.pendingRecords.size();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new ProvenanceRecordBatchWriter
+     * @param provenanceRepositoryClientPool pool of clients for the provenance repository
+     * @param maxBatchSize maximum number of records written in a single request
+     * @param maxDelayMillis maximum time a record waits before its batch is written
+     */
+    public ProvenanceRecordBatchWriter(DigitalObjectRepositoryClientPool provenanceRepositoryClientPool, int maxBatchSize, long maxDelayMillis) {
+        this.provenanceRepositoryClientPool = provenanceRepositoryClientPool;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayMillis = maxDelayMillis;
+        this.writerThread = new Thread(this::writeBatches, "doec-provenance-batch-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Submit a provenance record to be written in the next batch
+     * @param provenanceRecord provenance record to be written
+     * @return future completed with the provenance record saved in the repository, or completed exceptionally with
+     * the error that prevented it from being saved
+     */
+    public CompletableFuture<DigitalObject> submit(DigitalObject provenanceRecord) {
+        CompletableFuture<DigitalObject> future = new CompletableFuture<>();
+        if (this.closed){
+            future.completeExceptionally(new DigitalObjectRepositoryException("ProvenanceRecordBatchWriter is closed"));
+            return future;
+        }
+        PendingRecord pendingRecord = new PendingRecord(provenanceRecord, future);
+        this.pendingRecords.add(pendingRecord);
+        //If it was closed meanwhile, the last drain of close might have finished before the record was added. If the
+        //record is still in the queue nobody is going to write it, otherwise it has been taken and it will be written
+        if (this.closed && this.pendingRecords.remove(pendingRecord)){
+            future.completeExceptionally(new DigitalObjectRepositoryException("ProvenanceRecordBatchWriter is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Stop accepting records and wait until the records still pending are written
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        //Records submitted while the writer thread was stopping, or left if it was interrupted
+        List<PendingRecord> batch = new ArrayList<>();
+        while (this.pendingRecords.drainTo(batch, this.getMaxBatchSize()) > 0){
+            this.write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Get the batch writer using the parameters found in the configuration
+     * @param config configuration
+     * @param provenanceRepositoryClientPool pool of clients for the provenance repository
+     * @return batch writer
+     */
+    public static ProvenanceRecordBatchWriter getProvenanceRecordBatchWriterFromConfig(Configuration config,
+                                                                                       DigitalObjectRepositoryClientPool provenanceRepositoryClientPool){
+        return new ProvenanceRecordBatchWriter(provenanceRepositoryClientPool,
+                config.getInt("provenanceRepository.batch.maxSize", DEFAULT_MAX_BATCH_SIZE),
+                config.getLong("provenanceRepository.batch.maxDelayMillis", DEFAULT_MAX_DELAY_MILLIS));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Loop of the writer thread: wait for the first record of a batch, then keep collecting records until the batch
+     * is full or the maximum delay expires, and write it
+     */
+    private void writeBatches() {
+        List<PendingRecord> batch = new ArrayList<>();
+        while (!this.closed || !this.pendingRecords.isEmpty()){
+            try {
+                PendingRecord first = this.pendingRecords.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null){
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.getMaxDelayMillis());
+                while (batch.size() < this.getMaxBatchSize()){
+                    if (this.pendingRecords.drainTo(batch, this.getMaxBatchSize() - batch.size()) > 0){
+                        continue;
+                    }
+                    PendingRecord next = this.pendingRecords.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null){
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (!batch.isEmpty()){
+                    this.write(batch);
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a batch of records in the provenance repository and complete their futures
+     * @param batch records to be written
+     */
+    private void write(List<PendingRecord> batch) {
+        List<DigitalObject> provenanceRecords = new ArrayList<>(batch.size());
+        for (PendingRecord pendingRecord:batch) {
+            provenanceRecords.add(pendingRecord.getProvenanceRecord());
+        }
+        try(DigitalObjectRepositoryClient provenanceRepositoryClient = this.provenanceRepositoryClientPool.borrowClient()){
+            List<BatchCreateResult> results = provenanceRepositoryClient.createAll(provenanceRecords);
+            for (int i = 0; i < batch.size(); i++) {
+                BatchCreateResult result = results.get(i);
+                if (result.isSuccess()){
+                    batch.get(i).getFuture().complete(result.getDigitalObject());
+                } else{
+                    batch.get(i).getFuture().completeExceptionally(result.getError());
+                }
+            }
+        } catch (Exception e){
+            for (PendingRecord pendingRecord:batch) {
+                pendingRecord.getFuture().completeExceptionally(e);
+            }
+        }
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    private static final class PendingRecord {
+        private final DigitalObject provenanceRecord;
+        private final CompletableFuture<DigitalObject> future;
+
+        PendingRecord(DigitalObject provenanceRecord, CompletableFuture<DigitalObject> future) {
+            this.provenanceRecord = provenanceRecord;
+            this.future = future;
+        }
+
+        DigitalObject getProvenanceRecord() {
+            return provenanceRecord;
+        }
+
+        CompletableFuture<DigitalObject> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package eu.dissco.doec.eventProcessing;
+
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Policy that decides whether the provenance record of an update stores the whole content of the object or only
+ * the JSON Patch against its previous content.
+ * In DELTA mode, a record with the whole content (snapshot) is written after a number of updates of the object or
+ * when the size of the patches written since the last snapshot exceeds a maximum, so rebuilding the object only needs
+ * the last snapshot and a bounded number of patches. The updates since the last snapshot are only counted in memory,
+ * so a snapshot is written for the first update of an object seen by this policy
+ */
+public class ProvenanceStoragePolicy {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_SNAPSHOT_EVERY_UPDATES = 10;
+    public static final long DEFAULT_SNAPSHOT_MAX_DELTA_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_TRACKED_OBJECTS = 10000;
+
+    private final STORAGE_MODE storageMode;
+    private final int snapshotEveryUpdates;
+    private final long snapshotMaxDeltaBytes;
+    private final Map<String, DeltasSinceSnapshot> deltasSinceSnapshot;
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum STORAGE_MODE {
+        FULL,
+        DELTA
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public STORAGE_MODE getStorageMode() {
+        return storageMode;
+    }
+
+    public int getSnapshotEveryUpdates() {
+        return snapshotEveryUpdates;
+    }
+
+    public long getSnapshotMaxDeltaBytes() {
+        return snapshotMaxDeltaBytes;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new ProvenanceStoragePolicy
+     * @param storageMode FULL to store the whole content of the object in every record, DELTA to store patches
+     * @param snapshotEveryUpdates maximum number of consecutive patches of an object
+     * @param snapshotMaxDeltaBytes maximum size of the consecutive patches of an object
+     */
+    public ProvenanceStoragePolicy(STORAGE_MODE storageMode, int snapshotEveryUpdates, long snapshotMaxDeltaBytes) {
+        this.storageMode = storageMode;
+        this.snapshotEveryUpdates = snapshotEveryUpdates;
+        this.snapshotMaxDeltaBytes = snapshotMaxDeltaBytes;
+        this.deltasSinceSnapshot = new LinkedHashMap<String, DeltasSinceSnapshot>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DeltasSinceSnapshot> eldest) {
+                return this.size() > DEFAULT_MAX_TRACKED_OBJECTS;
+            }
+        };
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Decide how the provenance record of an update is stored, and count it
+     * @param objectId id of the object updated
+     * @param deltaBytes size of the patch of the update
+     * @return true if the record must store the whole content of the object, false if it can store the patch only
+     */
+    public synchronized boolean storeFullContent(String objectId, long deltaBytes) {
+        if (this.getStorageMode() == STORAGE_MODE.FULL){
+            return true;
+        }
+        DeltasSinceSnapshot deltas = this.deltasSinceSnapshot.get(objectId);
+        if (deltas == null || deltas.count + 1 > this.getSnapshotEveryUpdates() || deltas.bytes + deltaBytes > this.getSnapshotMaxDeltaBytes()){
+            this.deltasSinceSnapshot.put(objectId, new DeltasSinceSnapshot());
+            return true;
+        }
+        deltas.count++;
+        deltas.bytes += deltaBytes;
+        return false;
+    }
+
+    /**
+     * Record that the whole content of an object has been stored (e.g. on its creation)
+     * @param objectId id of the object
+     */
+    public synchronized void fullContentStored(String objectId) {
+        if (this.getStorageMode() == STORAGE_MODE.DELTA){
+            this.deltasSinceSnapshot.put(objectId, new DeltasSinceSnapshot());
+        }
+    }
+
+    /**
+     * Stop tracking an object (e.g. when it is deleted)
+     * @param objectId id of the object
+     */
+    public synchronized void forget(String objectId) {
+        this.deltasSinceSnapshot.remove(objectId);
+    }
+
+    /**
+     * Create a ProvenanceStoragePolicy using the parameters in the configuration, or the default ones if they are not
+     * configured
+     * @param config configuration
+     * @return ProvenanceStoragePolicy
+     */
+    public static ProvenanceStoragePolicy getProvenanceStoragePolicyFromConfig(Configuration config){
+        return new ProvenanceStoragePolicy(
+                STORAGE_MODE.valueOf(config.getString("provenanceRepository.storage.mode", STORAGE_MODE.FULL.name()).toUpperCase()),
+                config.getInt("provenanceRepository.storage.snapshotEveryUpdates", DEFAULT_SNAPSHOT_EVERY_UPDATES),
+                config.getLong("provenanceRepository.storage.snapshotMaxDeltaBytes", DEFAULT_SNAPSHOT_MAX_DELTA_BYTES));
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    private static final class DeltasSinceSnapshot {
+        private int count = 0;
+        private long bytes = 0;
+    }
+}
@@ -0,0 +1,266 @@
+package eu.dissco.doec.eventProcessing;
+
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import eu.dissco.doec.metrics.Tracing;
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper to wait until the result of an operation is visible in the repository.
+ * Events are fired by Cordra before the operation is stored (e.g. on beforeSchemaValidation), so before saving its
+ * provenance record we need to wait until the object is created, updated or deleted. Instead of waiting a fixed
+ * amount of time, the repository is probed with a short initial delay and an exponential backoff with jitter until
+ * the probe succeeds or the deadline expires.
+ * The poller only schedules the probes, which run in the executor given by the caller, so no thread (nor the
+ * repository client used by the probe) is held between two probes
+ */
+public class ReadinessPoller implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 50;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.2;
+    public static final long DEFAULT_DEADLINE_MILLIS = 60000;
+    public static final int DEFAULT_NUM_THREADS = 1;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double backoffMultiplier;
+    private final double jitter;
+    private final long deadlineMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger numPendingWaits = new AtomicInteger();
+
+
+    /**************/
+    /* INTERFACES */
+    /**************/
+
+    /**
+     * Check done against the repository
+     * @param <T> type of the result of the probe
+     */
+    @FunctionalInterface
+    public interface ReadinessProbe<T> {
+        /**
+         * Check if the expected state is visible in the repository
+         * @return result of the check, or null if it isn't visible yet
+         * @throws DigitalObjectRepositoryException
+         */
+        T probe() throws DigitalObjectRepositoryException;
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public int getNumPendingWaits() {
+        return this.numPendingWaits.get();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new ReadinessPoller
+     * @param initialDelayMillis delay before the first probe
+     * @param maxDelayMillis maximum delay between two probes
+     * @param backoffMultiplier factor by which the delay grows after every unsuccessful probe
+     * @param jitter fraction of the delay that is randomly added or subtracted to avoid probes in lockstep
+     * @param deadlineMillis maximum time to wait
+     * @param numThreads number of threads scheduling the probes
+     */
+    public ReadinessPoller(long initialDelayMillis, long maxDelayMillis, double backoffMultiplier, double jitter, long deadlineMillis, int numThreads) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.backoffMultiplier = backoffMultiplier;
+        this.jitter = jitter;
+        this.deadlineMillis = deadlineMillis;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "doec-readiness-poller-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, numThreads), threadFactory);
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Probe the repository until the probe returns a result or the deadline expires, so the caller doesn't wait.
+     * A probe that fails is retried as if it hadn't found the expected state, e.g. if the repository is briefly
+     * unavailable
+     * @param probe check to be done against the repository
+     * @param probeExecutor executor where the probes run
+     * @param <T> type of the result of the probe
+     * @return future completed with the result of the first successful probe, or with null if the deadline expired
+     * before, or completed exceptionally with the error of the last probe if it failed
+     */
+    public <T> CompletableFuture<T> waitUntilReady(ReadinessProbe<T> probe, Executor probeExecutor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long deadline = System.currentTimeMillis() + this.getDeadlineMillis();
+        this.numPendingWaits.incrementAndGet();
+        try {
+            this.scheduleProbe(probe, probeExecutor, future, deadline, this.getInitialDelayMillis(), Tracing.getCorrelationId());
+        } catch (RejectedExecutionException e){
+            this.endWait(future, null, new DigitalObjectRepositoryException("ReadinessPoller is closed", e));
+        }
+        return future;
+    }
+
+    /**
+     * Wait until the waits in progress finish, which happens at the latest when their deadline expires, and stop the
+     * threads of the poller
+     */
+    @Override
+    public void close() {
+        long deadline = System.currentTimeMillis() + this.getDeadlineMillis() + this.getMaxDelayMillis();
+        synchronized (this.numPendingWaits) {
+            long remaining;
+            while (this.numPendingWaits.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    this.numPendingWaits.wait(remaining);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Get the poller using the parameters found in the configuration
+     * @param config configuration
+     * @return poller
+     */
+    public static ReadinessPoller getReadinessPollerFromConfig(Configuration config){
+        return new ReadinessPoller(config.getLong("eventProcessing.readiness.initialDelayMillis", DEFAULT_INITIAL_DELAY_MILLIS),
+                config.getLong("eventProcessing.readiness.maxDelayMillis", DEFAULT_MAX_DELAY_MILLIS),
+                config.getDouble("eventProcessing.readiness.backoffMultiplier", DEFAULT_BACKOFF_MULTIPLIER),
+                config.getDouble("eventProcessing.readiness.jitter", DEFAULT_JITTER),
+                config.getLong("eventProcessing.readiness.deadlineMillis", DEFAULT_DEADLINE_MILLIS),
+                config.getInt("eventProcessing.readiness.threads", DEFAULT_NUM_THREADS));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Schedule the next probe of a wait
+     * @param probe check to be done against the repository
+     * @param probeExecutor executor where the probe runs
+     * @param future future of the wait
+     * @param deadline epoch millis when the wait expires
+     * @param delay delay before the probe, without jitter
+     * @param correlationId correlation id of the event waiting, so the repository calls of the probe are traced
+     */
+    private <T> void scheduleProbe(ReadinessProbe<T> probe, Executor probeExecutor, CompletableFuture<T> future, long deadline,
+                                   double delay, String correlationId) {
+        long remaining = Math.max(0L, deadline - System.currentTimeMillis());
+        this.scheduler.schedule(() -> {
+            try {
+                probeExecutor.execute(() -> this.runProbe(probe, probeExecutor, future, deadline, delay, correlationId));
+            } catch (RejectedExecutionException e){
+                this.endWait(future, null, new DigitalObjectRepositoryException("Executor of the readiness probes is shut down", e));
+            }
+        }, Math.min(remaining, this.addJitter(delay)), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a probe, and either complete the wait or schedule the next probe with a longer delay
+     */
+    private <T> void runProbe(ReadinessProbe<T> probe, Executor probeExecutor, CompletableFuture<T> future, long deadline,
+                              double delay, String correlationId) {
+        String previousCorrelationId = Tracing.setCorrelationId(correlationId);
+        try {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = probe.probe();
+            } catch (Exception e){
+                error = e;
+            }
+            if (result == null && System.currentTimeMillis() < deadline){
+                try {
+                    this.scheduleProbe(probe, probeExecutor, future, deadline,
+                            Math.min(delay * this.getBackoffMultiplier(), this.getMaxDelayMillis()), correlationId);
+                    return;
+                } catch (RejectedExecutionException e){
+                    error = new DigitalObjectRepositoryException("ReadinessPoller is closed", e);
+                }
+            }
+            this.endWait(future, result, error);
+        } finally {
+            Tracing.setCorrelationId(previousCorrelationId);
+        }
+    }
+
+    /**
+     * Complete a wait with the result of its last probe
+     */
+    private <T> void endWait(CompletableFuture<T> future, T result, Throwable error) {
+        try {
+            if (result == null && error != null){
+                future.completeExceptionally(error);
+            } else{
+                future.complete(result);
+            }
+        } finally {
+            this.endWait();
+        }
+    }
+
+    private void endWait() {
+        if (this.numPendingWaits.decrementAndGet() == 0){
+            synchronized (this.numPendingWaits) {
+                this.numPendingWaits.notifyAll();
+            }
+        }
+    }
+
+    private long addJitter(double delay) {
+        if (this.getJitter() <= 0) {
+            return (long) delay;
+        }
+        double randomFactor = 1 + this.getJitter() * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1L, (long) (delay * randomFactor));
+    }
+}
@@ -0,0 +1,291 @@
+package eu.dissco.doec.eventProcessing;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClient;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClientPool;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import eu.dissco.doec.utils.JsonSchemaCache;
+import eu.dissco.doec.utils.JsonUtils;
+import net.dona.doip.client.DigitalObject;
+import org.apache.commons.configuration2.Configuration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory dictionary of the reference objects used when saving provenance records: the event types (stored in the
+ * provenance repository) and the roles (stored in the digital object repository), indexed by their name.
+ * These objects rarely change, so instead of searching for them on every event they are loaded when the controller
+ * starts and refreshed in the background. Names not found in the dictionary are looked up in the repository
+ */
+public class ReferenceDictionary implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 300000;
+
+    private static final String EVENT_TYPE = "EventType";
+    private static final String ROLE = "Role";
+
+    private final DigitalObjectRepositoryClientPool digitalObjectRepositoryClientPool;
+    private final DigitalObjectRepositoryClientPool provenanceRepositoryClientPool;
+    private final long refreshIntervalMillis;
+    private final ScheduledExecutorService refresher;
+
+    private volatile Map<String, ReferenceEntry> eventTypes = new ConcurrentHashMap<>();
+    private volatile Map<String, ReferenceEntry> roles = new ConcurrentHashMap<>();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    public Map<String, ReferenceEntry> getEventTypes() {
+        return Collections.unmodifiableMap(this.eventTypes);
+    }
+
+    public Map<String, ReferenceEntry> getRoles() {
+        return Collections.unmodifiableMap(this.roles);
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new ReferenceDictionary, loading the event types and roles and scheduling their refresh.
+     * If the repositories can't be reached, the dictionary starts empty and it is filled by the live lookups and
+     * the next refresh
+     * @param digitalObjectRepositoryClientPool pool of clients for the digital object repository, where roles are stored
+     * @param provenanceRepositoryClientPool pool of clients for the provenance repository, where event types are stored
+     * @param refreshIntervalMillis interval between two refreshes of the dictionary
+     */
+    public ReferenceDictionary(DigitalObjectRepositoryClientPool digitalObjectRepositoryClientPool,
+                               DigitalObjectRepositoryClientPool provenanceRepositoryClientPool, long refreshIntervalMillis) {
+        this.digitalObjectRepositoryClientPool = digitalObjectRepositoryClientPool;
+        this.provenanceRepositoryClientPool = provenanceRepositoryClientPool;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+
+        this.refresh();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "doec-reference-dictionary-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the event type with the name received as parameter
+     * @param name name of the event type
+     * @return event type, or null if it doesn't exist
+     * @throws DigitalObjectRepositoryException
+     */
+    public ReferenceEntry getEventType(String name) throws DigitalObjectRepositoryException {
+        return this.get(this.eventTypes, this.provenanceRepositoryClientPool, EVENT_TYPE, name);
+    }
+
+    /**
+     * Get the role with the name received as parameter
+     * @param name name of the role
+     * @return role, or null if it doesn't exist
+     * @throws DigitalObjectRepositoryException
+     */
+    public ReferenceEntry getRole(String name) throws DigitalObjectRepositoryException {
+        return this.get(this.roles, this.digitalObjectRepositoryClientPool, ROLE, name);
+    }
+
+    /**
+     * Get the id of the event type with the name received as parameter
+     * @param name name of the event type
+     * @return id of the event type
+     * @throws DigitalObjectRepositoryException if the event type doesn't exist
+     */
+    public String getEventTypeId(String name) throws DigitalObjectRepositoryException {
+        ReferenceEntry eventType = this.getEventType(name);
+        if (eventType == null){
+            throw new DigitalObjectRepositoryException("Event type " + name + " not found in the provenance repository");
+        }
+        return eventType.getId();
+    }
+
+    /**
+     * Get the id of the role with the name received as parameter
+     * @param name name of the role
+     * @return id of the role
+     * @throws DigitalObjectRepositoryException if the role doesn't exist
+     */
+    public String getRoleId(String name) throws DigitalObjectRepositoryException {
+        ReferenceEntry role = this.getRole(name);
+        if (role == null){
+            throw new DigitalObjectRepositoryException("Role " + name + " not found in the digital object repository");
+        }
+        return role.getId();
+    }
+
+    /**
+     * Reload all event types and roles from the repositories. Errors are reported but the current entries are kept,
+     * so a repository being temporarily down doesn't empty the dictionary
+     */
+    public void refresh() {
+        try {
+            this.eventTypes = this.load(this.provenanceRepositoryClientPool, EVENT_TYPE);
+        } catch (Exception e){
+            e.printStackTrace();
+        }
+        try {
+            this.roles = this.load(this.digitalObjectRepositoryClientPool, ROLE);
+        } catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop refreshing the dictionary
+     */
+    @Override
+    public void close() {
+        this.refresher.shutdownNow();
+    }
+
+    /**
+     * Get the dictionary using the parameters found in the configuration
+     * @param config configuration
+     * @param digitalObjectRepositoryClientPool pool of clients for the digital object repository
+     * @param provenanceRepositoryClientPool pool of clients for the provenance repository
+     * @return dictionary
+     */
+    public static ReferenceDictionary getReferenceDictionaryFromConfig(Configuration config,
+                                                                       DigitalObjectRepositoryClientPool digitalObjectRepositoryClientPool,
+                                                                       DigitalObjectRepositoryClientPool provenanceRepositoryClientPool){
+        return new ReferenceDictionary(digitalObjectRepositoryClientPool, provenanceRepositoryClientPool,
+                config.getLong("referenceDictionary.refreshIntervalMillis", DEFAULT_REFRESH_INTERVAL_MILLIS));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Get an entry from the dictionary, looking for it in the repository if it isn't found
+     * @param entries entries of the dictionary
+     * @param pool pool of clients for the repository where the objects are stored
+     * @param type type of the objects
+     * @param name name of the object
+     * @return entry found, or null if the object doesn't exist
+     * @throws DigitalObjectRepositoryException
+     */
+    private ReferenceEntry get(Map<String, ReferenceEntry> entries, DigitalObjectRepositoryClientPool pool, String type,
+                               String name) throws DigitalObjectRepositoryException {
+        ReferenceEntry entry = entries.get(name);
+        if (entry == null){
+            try(DigitalObjectRepositoryClient client = pool.borrowClient()){
+                DigitalObject digitalObject = client.searchUnique("type:" + type + " AND /name:" + client.escapeQueryParamValue(name));
+                if (digitalObject != null){
+                    entry = new ReferenceEntry(digitalObject);
+                    entries.put(name, entry);
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Load all objects of the given type from the repository
+     * @param pool pool of clients for the repository where the objects are stored
+     * @param type type of the objects
+     * @return entries indexed by name
+     * @throws DigitalObjectRepositoryException
+     */
+    private Map<String, ReferenceEntry> load(DigitalObjectRepositoryClientPool pool, String type) throws DigitalObjectRepositoryException {
+        Map<String, ReferenceEntry> entries = new ConcurrentHashMap<>();
+        try(DigitalObjectRepositoryClient client = pool.borrowClient()){
+            List<DigitalObject> digitalObjects = client.searchAll("type:" + type);
+            for (DigitalObject digitalObject:digitalObjects) {
+                ReferenceEntry entry = new ReferenceEntry(digitalObject);
+                if (entry.getName() != null){
+                    entries.put(entry.getName(), entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    /**
+     * Event type or role found in the repository
+     */
+    public static final class ReferenceEntry {
+        private final String id;
+        private final String name;
+        private final JsonObject additionalDataSchema;
+        private final String additionalDataSchemaKey;
+
+        ReferenceEntry(DigitalObject digitalObject) {
+            JsonObject content = digitalObject.attributes.getAsJsonObject("content");
+            JsonElement name = content.get("name");
+            this.id = digitalObject.id;
+            this.name = name != null && !name.isJsonNull() ? name.getAsString() : null;
+            this.additionalDataSchema = content.has("additionalDataSchema") && content.get("additionalDataSchema").isJsonObject() ?
+                    content.getAsJsonObject("additionalDataSchema") : null;
+            this.additionalDataSchemaKey = JsonSchemaCache.getSchemaKey(this.id, this.additionalDataSchema);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the schema that the additional data of events of this type must validate against
+         * @return copy of the schema, or null for roles
+         */
+        public JsonObject getAdditionalDataSchema() {
+            return additionalDataSchema != null ? additionalDataSchema.deepCopy() : null;
+        }
+
+        /**
+         * Get the key of the schema in the cache of compiled schemas, computed once when the entry is read
+         * @return key of the schema
+         */
+        public String getAdditionalDataSchemaKey() {
+            return additionalDataSchemaKey;
+        }
+
+        /**
+         * Validate the additional data of an event of this type against its schema, which is only compiled the first
+         * time it is used
+         * @param additionalData additional data of the event
+         * @return true if the additional data is valid according to the schema or false otherwise
+         */
+        public boolean validateAdditionalData(JsonObject additionalData) {
+            return JsonUtils.validateJsonAgainstSchema(this.additionalDataSchemaKey, additionalData, this.additionalDataSchema, false);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package eu.dissco.doec.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the events of a type: accepted, succeeded, failed and dropped
+ */
+public class EventCounters implements EventCountersMXBean {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    @Override
+    public long getAccepted() {
+        return this.accepted.sum();
+    }
+
+    @Override
+    public long getSucceeded() {
+        return this.succeeded.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+
+    /*******************/
+    /* PACKAGE METHODS */
+    /*******************/
+
+    void accepted() {
+        this.accepted.increment();
+    }
+
+    void succeeded() {
+        this.succeeded.increment();
+    }
+
+    void failed() {
+        this.failed.increment();
+    }
+
+    void dropped() {
+        this.dropped.increment();
+    }
+}
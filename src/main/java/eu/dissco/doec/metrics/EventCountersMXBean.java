@@ -0,0 +1,27 @@
+package eu.dissco.doec.metrics;
+
+/**
+ * Counters of the events of a type published through JMX, since the controller was started
+ */
+public interface EventCountersMXBean {
+
+    /**
+     * @return events received by the controller (including the ones recovered from the event journal)
+     */
+    long getAccepted();
+
+    /**
+     * @return events whose provenance record was saved
+     */
+    long getSucceeded();
+
+    /**
+     * @return events whose provenance record couldn't be saved
+     */
+    long getFailed();
+
+    /**
+     * @return events rejected without being processed (e.g. after the controller was closed)
+     */
+    long getDropped();
+}
@@ -0,0 +1,22 @@
+package eu.dissco.doec.metrics;
+
+/**
+ * Gauges of the events being processed published through JMX
+ */
+public interface EventProcessingMXBean {
+
+    /**
+     * @return events accepted that have not succeeded, failed or been dropped yet
+     */
+    long getInFlight();
+
+    /**
+     * @return events waiting in the queues (and spill buffers) of the event processing executors
+     */
+    long getQueued();
+
+    /**
+     * @return events being processed by the threads of the event processing executors
+     */
+    long getActive();
+}
@@ -0,0 +1,44 @@
+package eu.dissco.doec.metrics;
+
+/**
+ * Factory of the flight recorder events. It is only loaded when jdk.jfr is available
+ */
+final class FlightRecorderEvents {
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Begin the event of a stage of the processing of an event
+     * @return flight recorder event, or null if the event is not enabled in any recording
+     */
+    static TracedEvent beginStage(String correlationId, String stage, String eventType, String objectId) {
+        ProcessingStageEvent event = new ProcessingStageEvent();
+        if (!event.isEnabled()){
+            return null;
+        }
+        event.correlationId = correlationId;
+        event.stage = stage;
+        event.eventType = eventType;
+        event.objectId = objectId;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begin the event of a call to a repository
+     * @return flight recorder event, or null if the event is not enabled in any recording
+     */
+    static TracedEvent beginRepositoryCall(String correlationId, String repository, String operation, String objectId) {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        if (!event.isEnabled()){
+            return null;
+        }
+        event.correlationId = correlationId;
+        event.repository = repository;
+        event.operation = operation;
+        event.objectId = objectId;
+        event.begin();
+        return event;
+    }
+}
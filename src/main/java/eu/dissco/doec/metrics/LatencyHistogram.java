@@ -0,0 +1,160 @@
+package eu.dissco.doec.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies that can be recorded concurrently without locks. Latencies are counted in buckets of
+ * microseconds: one per value below 16 us and then 8 per power of 2, so percentiles are reported with an error below
+ * 12.5%. It takes a few kilobytes regardless of the number of latencies recorded
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //Values up to 2^42 us (about 50 days) have their own bucket, bigger ones are counted in the last one
+    private static final int MAX_EXPONENT = 42;
+    private static final int NUM_BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    @Override
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return toMillis(this.totalNanos.sum());
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = this.count.sum();
+        return count > 0 ? toMillis(this.totalNanos.sum()) / count : 0;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return toMillis(this.maxNanos.get());
+    }
+
+    @Override
+    public double getP50Millis() {
+        return this.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return this.getPercentileMillis(90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return this.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return this.getPercentileMillis(99.9);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Record a latency
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0){
+            nanos = 0;
+        }
+        this.buckets.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        this.count.increment();
+        this.totalNanos.add(nanos);
+        this.maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Record the latency of an operation that started at the time received as parameter
+     * @param startNanos value of System.nanoTime() when the operation started
+     */
+    public void recordSince(long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get a percentile of the latencies recorded, as the upper bound of the bucket where it falls
+     * @param percentile percentile between 0 and 100
+     * @return latency in milliseconds, or 0 if no latency has been recorded
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank){
+                //The max is exact, so it is used when the bucket upper bound is above it
+                return Math.min(getBucketUpperBoundMicros(i) / 1000.0, this.getMaxMillis());
+            }
+        }
+        return this.getMaxMillis();
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static int getBucket(long micros) {
+        if (micros < LINEAR_BUCKETS){
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT){
+            return NUM_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketUpperBoundMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS){
+            return bucket + 1;
+        }
+        int exponent = 4 + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) (subBucket + 1) << (exponent - SUB_BUCKET_BITS));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,24 @@
+package eu.dissco.doec.metrics;
+
+/**
+ * Latency of an operation published through JMX, since the controller was started. Count and TotalMillis only grow,
+ * so the mean latency of an interval can be computed from two readings
+ */
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getTotalMillis();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+}
@@ -0,0 +1,242 @@
+package eu.dissco.doec.metrics;
+
+import eu.dissco.doec.eventProcessing.EventProcessingExecutor;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the operational metrics of the controller, shared by all the controllers of the JVM and published
+ * through the platform MBean server, so they can be read with any JMX client from the Cordra JVM:
+ *  - eu.dissco.doec:type=Events,eventType=create|update|delete|retrieve|custom: events accepted, succeeded, failed and dropped
+ *  - eu.dissco.doec:type=EventProcessing: events in flight, queued and being processed
+ *  - eu.dissco.doec:type=StageLatency,stage=waitForVisibility|lookup|diff|provenanceCreate: latency of the stages of
+ *    the processing of the events
+ *  - eu.dissco.doec:type=OperationLatency,repository=(handle prefix),operation=(name): latency of the calls to the
+ *    repositories, by DOIP operation or REST call
+ * If the MBeans can't be registered (e.g. there is a security manager that doesn't allow it) the metrics are still
+ * recorded, but they are not published
+ */
+public class MetricsRegistry {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final String DOMAIN = "eu.dissco.doec";
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    private final Map<String, EventCounters> eventCounters = new ConcurrentHashMap<>();
+    private final Map<STAGE, LatencyHistogram> stageLatencies = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> operationLatencies = new ConcurrentHashMap<>();
+    private final Set<EventProcessingExecutor> eventProcessingExecutors = new CopyOnWriteArraySet<>();
+    private final AtomicLong inFlight = new AtomicLong();
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum STAGE {
+        WAIT_FOR_VISIBILITY("waitForVisibility"),
+        LOOKUP("lookup"),
+        DIFF("diff"),
+        PROVENANCE_CREATE("provenanceCreate");
+
+        private final String metricName;
+
+        STAGE(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private MetricsRegistry() {
+        this.register("type=EventProcessing", new EventProcessingGauges(), EventProcessingMXBean.class);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the registry shared by all the controllers of the JVM
+     * @return metrics registry
+     */
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the counters of the events of a type, registering them the first time
+     * @param eventType type of the event, e.g. create
+     * @return counters of the events
+     */
+    public EventCounters getEventCounters(String eventType) {
+        String name = eventType.toLowerCase();
+        return this.eventCounters.computeIfAbsent(name, key -> {
+            EventCounters counters = new EventCounters();
+            this.register("type=Events,eventType=" + quoteIfNeeded(key), counters, EventCountersMXBean.class);
+            return counters;
+        });
+    }
+
+    /**
+     * Get the latency of a stage of the processing of the events, registering it the first time
+     * @param stage stage
+     * @return latency histogram
+     */
+    public LatencyHistogram getStageLatency(STAGE stage) {
+        return this.stageLatencies.computeIfAbsent(stage, key -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            this.register("type=StageLatency,stage=" + key.getMetricName(), histogram, LatencyHistogramMXBean.class);
+            return histogram;
+        });
+    }
+
+    /**
+     * Get the latency of the calls to a repository, registering it the first time
+     * @param repository name of the repository (its handle prefix)
+     * @param operation DOIP operation or REST call, e.g. retrieve
+     * @return latency histogram
+     */
+    public LatencyHistogram getOperationLatency(String repository, String operation) {
+        return this.operationLatencies.computeIfAbsent(repository + "|" + operation, key -> {
+            LatencyHistogram histogram = new LatencyHistogram();
+            this.register("type=OperationLatency,repository=" + quoteIfNeeded(repository) + ",operation=" + quoteIfNeeded(operation),
+                    histogram, LatencyHistogramMXBean.class);
+            return histogram;
+        });
+    }
+
+    /**
+     * Count an event received by the controller, which is in flight until it succeeds, fails or is dropped
+     * @param eventType type of the event
+     */
+    public void eventAccepted(String eventType) {
+        this.getEventCounters(eventType).accepted();
+        this.inFlight.incrementAndGet();
+    }
+
+    public void eventSucceeded(String eventType) {
+        this.getEventCounters(eventType).succeeded();
+        this.inFlight.decrementAndGet();
+    }
+
+    public void eventFailed(String eventType) {
+        this.getEventCounters(eventType).failed();
+        this.inFlight.decrementAndGet();
+    }
+
+    public void eventDropped(String eventType) {
+        this.getEventCounters(eventType).dropped();
+        this.inFlight.decrementAndGet();
+    }
+
+    /**
+     * Add an executor whose queued and active events are reported
+     * @param eventProcessingExecutor event processing executor
+     */
+    public void addEventProcessingExecutor(EventProcessingExecutor eventProcessingExecutor) {
+        this.eventProcessingExecutors.add(eventProcessingExecutor);
+    }
+
+    /**
+     * Stop reporting the queued and active events of an executor, e.g. when its controller is closed
+     * @param eventProcessingExecutor event processing executor
+     */
+    public void removeEventProcessingExecutor(EventProcessingExecutor eventProcessingExecutor) {
+        this.eventProcessingExecutors.remove(eventProcessingExecutor);
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Register an MBean in the platform MBean server, replacing the one registered with the same name (e.g. by a
+     * previous version of the library loaded in the same JVM)
+     * @param keyProperties key properties of the name of the MBean, e.g. type=EventProcessing
+     * @param mbean MBean
+     * @param mbeanInterface MXBean interface implemented by the MBean
+     * @param <T> type of the MXBean interface
+     */
+    private <T> void register(String keyProperties, T mbean, Class<T> mbeanInterface) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(DOMAIN + ":" + keyProperties);
+            StandardMBean standardMBean = new StandardMBean(mbean, mbeanInterface, true);
+            try {
+                mBeanServer.registerMBean(standardMBean, objectName);
+            } catch (InstanceAlreadyExistsException e){
+                mBeanServer.unregisterMBean(objectName);
+                mBeanServer.registerMBean(standardMBean, objectName);
+            }
+        } catch (JMException | SecurityException e){
+            e.printStackTrace();
+        }
+    }
+
+    private static String quoteIfNeeded(String value) {
+        for (char c:value.toCharArray()) {
+            if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\n'){
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    /**
+     * Gauges of the events being processed by all the controllers
+     */
+    private final class EventProcessingGauges implements EventProcessingMXBean {
+
+        @Override
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public long getQueued() {
+            long queued = 0;
+            for (EventProcessingExecutor eventProcessingExecutor:eventProcessingExecutors) {
+                queued += eventProcessingExecutor.getQueueSize() + eventProcessingExecutor.getSpillBufferSize();
+            }
+            return queued;
+        }
+
+        @Override
+        public long getActive() {
+            long active = 0;
+            for (EventProcessingExecutor eventProcessingExecutor:eventProcessingExecutors) {
+                active += eventProcessingExecutor.getActiveCount();
+            }
+            return active;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package eu.dissco.doec.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a stage of the processing of an event over a digital object
+ */
+@Name("eu.dissco.doec.ProcessingStage")
+@Label("Processing Stage")
+@Category({"DiSSCo", "Digital Object Event Controller"})
+@Description("Stage of the processing of an event over a digital object")
+@StackTrace(false)
+class ProcessingStageEvent extends jdk.jfr.Event implements TracedEvent {
+
+    @Label("Correlation Id")
+    @Description("Id shared by the stages and repository calls of the same event")
+    String correlationId;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Event Type")
+    String eventType;
+
+    @Label("Object Id")
+    String objectId;
+
+    @Label("Failed")
+    boolean failed;
+
+    @Override
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
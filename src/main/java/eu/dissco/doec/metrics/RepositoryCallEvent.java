@@ -0,0 +1,61 @@
+package eu.dissco.doec.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a DOIP operation or REST call done to a repository
+ */
+@Name("eu.dissco.doec.RepositoryCall")
+@Label("Repository Call")
+@Category({"DiSSCo", "Digital Object Event Controller"})
+@Description("DOIP operation or REST call done to a digital object repository")
+@StackTrace(false)
+class RepositoryCallEvent extends jdk.jfr.Event implements TracedEvent {
+
+    @Label("Correlation Id")
+    @Description("Id of the event being processed when the call was done, if any")
+    String correlationId;
+
+    @Label("Repository")
+    @Description("Handle prefix of the repository")
+    String repository;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Object Id")
+    @Description("Target of the operation, if any")
+    String objectId;
+
+    @Label("Page Number")
+    @Description("Page of the results requested by a search, or -1")
+    int pageNumber = -1;
+
+    @Label("Payload Size")
+    @Description("Size of the payload sent or received, or -1 if it isn't known")
+    @DataAmount
+    long payloadBytes = -1;
+
+    @Label("Failed")
+    boolean failed;
+
+    @Override
+    public void setPageNumber(int pageNumber) {
+        this.pageNumber = pageNumber;
+    }
+
+    @Override
+    public void setPayloadBytes(long payloadBytes) {
+        this.payloadBytes = payloadBytes;
+    }
+
+    @Override
+    public void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
@@ -0,0 +1,93 @@
+package eu.dissco.doec.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Timed section of the processing of an event, e.g. a stage or a call to a repository. When it ends its latency is
+ * recorded in its histogram and, if the flight recorder is recording it, its event is committed
+ */
+public final class Span {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final LatencyHistogram latency;
+    private final TracedEvent tracedEvent;
+    private final long startNanos;
+    private LongSupplier payloadBytes;
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    Span(LatencyHistogram latency, TracedEvent tracedEvent) {
+        this.latency = latency;
+        this.tracedEvent = tracedEvent;
+        this.startNanos = System.nanoTime();
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Check whether the span is recorded by the flight recorder, so no work is done to set its attributes otherwise
+     * @return true if the span is recorded by the flight recorder
+     */
+    public boolean isTraced() {
+        return this.tracedEvent != null;
+    }
+
+    public Span setPageNumber(int pageNumber) {
+        if (this.tracedEvent != null){
+            this.tracedEvent.setPageNumber(pageNumber);
+        }
+        return this;
+    }
+
+    public Span setPayloadBytes(long payloadBytes) {
+        if (this.tracedEvent != null){
+            this.tracedEvent.setPayloadBytes(payloadBytes);
+        }
+        return this;
+    }
+
+    /**
+     * Set the size of the payload sent or received when it is expensive to compute (e.g. the object has to be
+     * serialized). It is only computed when the span ends, if its event is going to be committed
+     * @param payloadBytes function that computes the size in bytes
+     * @return this span
+     */
+    public Span setPayloadBytes(LongSupplier payloadBytes) {
+        if (this.tracedEvent != null){
+            this.payloadBytes = payloadBytes;
+        }
+        return this;
+    }
+
+    /**
+     * Mark the span as failed
+     */
+    public void failed() {
+        if (this.tracedEvent != null){
+            this.tracedEvent.setFailed(true);
+        }
+    }
+
+    /**
+     * End the span, recording its latency
+     */
+    public void end() {
+        this.latency.recordSince(this.startNanos);
+        if (this.tracedEvent != null){
+            this.tracedEvent.end();
+            if (this.payloadBytes != null && this.tracedEvent.shouldCommit()){
+                this.tracedEvent.setPayloadBytes(this.payloadBytes.getAsLong());
+            }
+            this.tracedEvent.commit();
+        }
+    }
+}
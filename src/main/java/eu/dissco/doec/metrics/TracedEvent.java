@@ -0,0 +1,41 @@
+package eu.dissco.doec.metrics;
+
+/**
+ * Flight recorder event of a span. It is an interface so the spans can hold the events without loading the classes
+ * of jdk.jfr, which are not available in every JVM
+ */
+interface TracedEvent {
+
+    /**
+     * Set the page of the results requested by a search
+     * @param pageNumber number of the page, starting from 0
+     */
+    default void setPageNumber(int pageNumber) {
+    }
+
+    /**
+     * Set the size of the payload sent or received
+     * @param payloadBytes size in bytes
+     */
+    default void setPayloadBytes(long payloadBytes) {
+    }
+
+    void setFailed(boolean failed);
+
+    /**
+     * End the timing of the event. It is implemented by jdk.jfr.Event
+     */
+    void end();
+
+    /**
+     * Check whether the event is going to be committed, i.e. its duration is above the threshold of the recording.
+     * It is implemented by jdk.jfr.Event
+     * @return true if the event will be committed
+     */
+    boolean shouldCommit();
+
+    /**
+     * Commit the event, if its duration is above the threshold of the recording. It is implemented by jdk.jfr.Event
+     */
+    void commit();
+}
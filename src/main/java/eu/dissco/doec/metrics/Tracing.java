@@ -0,0 +1,113 @@
+package eu.dissco.doec.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracing of the processing of the events with Java Flight Recorder. Every event gets a correlation id, and its
+ * stages and the calls done to the repositories while it is processed are emitted as the flight recorder events
+ * eu.dissco.doec.ProcessingStage and eu.dissco.doec.RepositoryCall with that correlation id, so the latency of an
+ * event can be broken down in a recording, e.g. one started with -XX:StartFlightRecording
+ * The flight recorder events are only created when they are enabled in a recording, and not at all in JVMs without
+ * jdk.jfr, so the only cost otherwise is the latency recorded in the histograms of the MetricsRegistry
+ */
+public final class Tracing {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final boolean FLIGHT_RECORDER_AVAILABLE = isFlightRecorderAvailable();
+
+    //Correlation ids are unique in the JVM, and the prefix makes them unlikely to be repeated after a restart
+    private static final String CORRELATION_ID_PREFIX = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong correlationIdCounter = new AtomicLong();
+
+    //Correlation id of the event being processed by the thread
+    private static final ThreadLocal<String> currentCorrelationId = new ThreadLocal<>();
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private Tracing() {
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Generate the correlation id of a new event
+     * @return correlation id
+     */
+    public static String newCorrelationId() {
+        return CORRELATION_ID_PREFIX + "-" + Long.toString(correlationIdCounter.incrementAndGet(), 36);
+    }
+
+    /**
+     * Get the correlation id of the event being processed by the current thread
+     * @return correlation id, or null if the thread is not processing an event
+     */
+    public static String getCorrelationId() {
+        return currentCorrelationId.get();
+    }
+
+    /**
+     * Set the correlation id of the event being processed by the current thread
+     * @param correlationId correlation id, or null when the thread finishes the processing of the event
+     * @return correlation id set before, so it can be restored
+     */
+    public static String setCorrelationId(String correlationId) {
+        String previousCorrelationId = currentCorrelationId.get();
+        if (correlationId != null){
+            currentCorrelationId.set(correlationId);
+        } else{
+            currentCorrelationId.remove();
+        }
+        return previousCorrelationId;
+    }
+
+    /**
+     * Begin a stage of the processing of the event of the current thread
+     * @param stage stage
+     * @param eventType type of the event, e.g. create
+     * @param objectId id of the object of the event, if known
+     * @return span of the stage, which must be ended when the stage finishes
+     */
+    public static Span beginStage(MetricsRegistry.STAGE stage, String eventType, String objectId) {
+        LatencyHistogram latency = MetricsRegistry.getInstance().getStageLatency(stage);
+        TracedEvent tracedEvent = FLIGHT_RECORDER_AVAILABLE ?
+                FlightRecorderEvents.beginStage(getCorrelationId(), stage.getMetricName(), eventType.toLowerCase(), objectId) : null;
+        return new Span(latency, tracedEvent);
+    }
+
+    /**
+     * Begin a call to a repository
+     * @param repository name of the repository (its handle prefix)
+     * @param operation DOIP operation or REST call, e.g. retrieve
+     * @param objectId target of the operation, if any
+     * @return span of the call, which must be ended when the call finishes
+     */
+    public static Span beginRepositoryCall(String repository, String operation, String objectId) {
+        LatencyHistogram latency = MetricsRegistry.getInstance().getOperationLatency(repository, operation);
+        TracedEvent tracedEvent = FLIGHT_RECORDER_AVAILABLE ?
+                FlightRecorderEvents.beginRepositoryCall(getCorrelationId(), repository, operation, objectId) : null;
+        return new Span(latency, tracedEvent);
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Tracing.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e){
+            return false;
+        }
+    }
+}
@@ -67,7 +67,7 @@ public class FileUtils {
      * @throws URISyntaxException
      */
     public static JsonElement loadJsonElementFromResourceFile(String filename) throws IOException, URISyntaxException {
-        Gson gson = new Gson();
+        Gson gson = JsonCodec.getGson();
         URL url = Resources.getResource(filename);
         Path path = Paths.get(url.toURI());
 
@@ -82,7 +82,7 @@ public class FileUtils {
      * @throws URISyntaxException
      */
     public static JsonElement loadJsonElementFromFilePath(String filepath) throws IOException {
-        Gson gson = new Gson();
+        Gson gson = JsonCodec.getGson();
         JsonReader reader = new JsonReader(new FileReader(filepath));
         return gson.fromJson(reader, JsonElement.class);
     }
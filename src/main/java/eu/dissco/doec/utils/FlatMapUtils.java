@@ -1,12 +1,18 @@
 package eu.dissco.doec.utils;
 
-import java.util.AbstractMap;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
 
+import java.util.*;
+
+/**
+ * Flatten nested maps and json elements into maps of leaves by their JSON pointer (RFC 6901), e.g.
+ * {"a":{"b":[1,2]}} into {"/a/b/0":1, "/a/b/1":2}. The keys are escaped, so "/" and "~" inside keys don't produce
+ * ambiguous paths. The nested elements are walked with an explicit stack and the paths are built in a single buffer,
+ * so deep documents don't use the call stack and no intermediate objects are created for every level
+ */
 public final class FlatMapUtils {
 
 
@@ -15,14 +21,96 @@ public final class FlatMapUtils {
     /******************/
 
     /**
-     * Flat the Map object received as parameter
+     * Flat the Map object received as parameter. Nested maps and lists are flattened; empty ones have no leaves
      * @param map Map to be flatter
      * @return Map flatten
      */
     public static Map<String, Object> flatten(Map<String, Object> map) {
-        return map.entrySet().stream()
-                .flatMap(FlatMapUtils::flatten)
-                .collect(LinkedHashMap::new, (m, e) -> m.put("/" + e.getKey(), e.getValue()), LinkedHashMap::putAll);
+        Map<String, Object> flatMap = new LinkedHashMap<>();
+        StringBuilder path = new StringBuilder();
+        Deque<Level> levels = new ArrayDeque<>();
+        levels.push(new Level(map, 0));
+        while (!levels.isEmpty()){
+            Level level = levels.peek();
+            if (!level.hasNext()){
+                levels.pop();
+                continue;
+            }
+            path.setLength(level.pathLength);
+            Object value = level.next(path);
+            if (value instanceof Map<?, ?> || value instanceof List<?>){
+                levels.push(new Level(value, path.length()));
+            } else{
+                flatMap.put(path.toString(), value);
+            }
+        }
+        return flatMap;
+    }
+
+    /**
+     * Flat the json element received as parameter. Empty objects and arrays are kept as leaves, so the json element
+     * can be rebuilt with unflatten
+     * @param jsonElement json element to be flattened
+     * @return Map with the leaves of the json element by their JSON pointer
+     */
+    public static Map<String, JsonElement> flatten(JsonElement jsonElement) {
+        Map<String, JsonElement> flatMap = new LinkedHashMap<>();
+        if (!isNonEmptyContainer(jsonElement)){
+            flatMap.put("", jsonElement);
+            return flatMap;
+        }
+        StringBuilder path = new StringBuilder();
+        Deque<Level> levels = new ArrayDeque<>();
+        levels.push(new Level(jsonElement, 0));
+        while (!levels.isEmpty()){
+            Level level = levels.peek();
+            if (!level.hasNext()){
+                levels.pop();
+                continue;
+            }
+            path.setLength(level.pathLength);
+            JsonElement value = (JsonElement) level.next(path);
+            if (isNonEmptyContainer(value)){
+                levels.push(new Level(value, path.length()));
+            } else{
+                flatMap.put(path.toString(), value);
+            }
+        }
+        return flatMap;
+    }
+
+    /**
+     * Rebuild a json element from its leaves by their JSON pointer, as returned by flatten
+     * Note: JSON pointers don't tell whether a level is an object or an array, so levels whose keys are numbers are
+     * rebuilt as arrays
+     * @param flatMap Map with the leaves of the json element by their JSON pointer
+     * @return json element
+     */
+    public static JsonElement unflatten(Map<String, JsonElement> flatMap) {
+        if (flatMap.containsKey("")){
+            return flatMap.get("");
+        }
+        JsonElement root = null;
+        for (Map.Entry<String, JsonElement> leaf:flatMap.entrySet()) {
+            String[] tokens = leaf.getKey().substring(1).split("/", -1);
+            if (root == null){
+                root = newContainer(tokens[0]);
+            }
+            JsonElement parent = root;
+            for (int i = 0; i < tokens.length; i++) {
+                String token = unescape(tokens[i]);
+                boolean isLeaf = i == tokens.length - 1;
+                JsonElement child = getChild(parent, token);
+                if (isLeaf){
+                    setChild(parent, token, leaf.getValue() != null ? leaf.getValue().deepCopy() : JsonNull.INSTANCE);
+                } else if (child == null || child.isJsonNull()){
+                    child = newContainer(tokens[i + 1]);
+                    setChild(parent, token, child);
+                }
+                parent = child;
+            }
+        }
+        return root != null ? root : new JsonObject();
     }
 
 
@@ -30,28 +118,120 @@ public final class FlatMapUtils {
     /* PRIVATE METHODS */
     /*******************/
 
+    private static boolean isNonEmptyContainer(JsonElement jsonElement) {
+        return (jsonElement.isJsonObject() && jsonElement.getAsJsonObject().size() > 0)
+                || (jsonElement.isJsonArray() && jsonElement.getAsJsonArray().size() > 0);
+    }
+
+    private static JsonElement newContainer(String nextToken) {
+        return isIndex(nextToken) ? new JsonArray() : new JsonObject();
+    }
+
+    private static boolean isIndex(String token) {
+        if (token.isEmpty()){
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonElement getChild(JsonElement parent, String token) {
+        if (parent.isJsonArray()){
+            int index = Integer.parseInt(token);
+            return index < parent.getAsJsonArray().size() ? parent.getAsJsonArray().get(index) : null;
+        }
+        return parent.getAsJsonObject().get(token);
+    }
+
+    private static void setChild(JsonElement parent, String token, JsonElement child) {
+        if (parent.isJsonArray()){
+            JsonArray array = parent.getAsJsonArray();
+            int index = Integer.parseInt(token);
+            while (array.size() <= index){
+                array.add(JsonNull.INSTANCE);
+            }
+            array.set(index, child);
+        } else{
+            parent.getAsJsonObject().add(token, child);
+        }
+    }
+
     /**
-     * Flat a map entry
-     * @param entry Map entry to be flatten
-     * @return Stream with the map entry flatten
+     * Append a key to a JSON pointer, escaping "~" as "~0" and "/" as "~1"
+     * @param path JSON pointer
+     * @param key key to be appended
      */
-    private static Stream<Map.Entry<String, Object>> flatten(Map.Entry<String, Object> entry) {
-        if (entry == null) {
-            return Stream.empty();
+    private static void appendEscaped(StringBuilder path, String key) {
+        path.append('/');
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '~'){
+                path.append("~0");
+            } else if (c == '/'){
+                path.append("~1");
+            } else{
+                path.append(c);
+            }
         }
+    }
+
+    private static String unescape(String token) {
+        return token.indexOf('~') < 0 ? token : token.replace("~1", "/").replace("~0", "~");
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
 
-        if (entry.getValue() instanceof Map<?, ?>) {
-            return ((Map<?, ?>) entry.getValue()).entrySet().stream()
-                    .flatMap(e -> flatten(new AbstractMap.SimpleEntry<>(entry.getKey() + "/" + e.getKey(), e.getValue())));
+    /**
+     * Level of the nested maps, lists, json objects or json arrays being flattened
+     */
+    private static final class Level {
+        private final Iterator<?> iterator;
+        private final boolean keyed;
+        private final int pathLength;
+        private int index = 0;
+
+        Level(Object container, int pathLength) {
+            if (container instanceof Map<?, ?>){
+                this.iterator = ((Map<?, ?>) container).entrySet().iterator();
+                this.keyed = true;
+            } else if (container instanceof List<?>){
+                this.iterator = ((List<?>) container).iterator();
+                this.keyed = false;
+            } else if (container instanceof JsonObject){
+                this.iterator = ((JsonObject) container).entrySet().iterator();
+                this.keyed = true;
+            } else{
+                this.iterator = ((JsonArray) container).iterator();
+                this.keyed = false;
+            }
+            this.pathLength = pathLength;
         }
 
-        if (entry.getValue() instanceof List<?>) {
-            List<?> list = (List<?>) entry.getValue();
-            return IntStream.range(0, list.size())
-                    .mapToObj(i -> new AbstractMap.SimpleEntry<String, Object>(entry.getKey() + "/" + i, list.get(i)))
-                    .flatMap(FlatMapUtils::flatten);
+        boolean hasNext() {
+            return this.iterator.hasNext();
         }
 
-        return Stream.of(entry);
+        /**
+         * Get the next value of the level, appending its key or index to the path
+         * @param path JSON pointer of the level
+         * @return value
+         */
+        Object next(StringBuilder path) {
+            Object next = this.iterator.next();
+            if (this.keyed){
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) next;
+                appendEscaped(path, String.valueOf(entry.getKey()));
+                return entry.getValue();
+            }
+            path.append('/').append(this.index++);
+            return next;
+        }
     }
-}
\ No newline at end of file
+}
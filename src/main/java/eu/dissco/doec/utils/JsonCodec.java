@@ -0,0 +1,407 @@
+package eu.dissco.doec.utils;
+
+import com.google.common.collect.MapDifference;
+import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import net.cnri.cordra.api.VersionInfo;
+import net.dona.doip.client.DigitalObject;
+import net.dona.doip.client.Element;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Shared Gson instances used to convert objects to and from json. Gson instances are thread-safe, so they are created
+ * once instead of on every conversion. The types converted in the hot paths (digital objects, versions and the results
+ * of the comparisons) have hand-written adapters, so they are converted without reflection
+ */
+public final class JsonCodec {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final Gson gson = registerTypeAdapters(new GsonBuilder()).create();
+
+    private static final TypeAdapter<JsonElement> JSON_ELEMENT_ADAPTER = gson.getAdapter(JsonElement.class);
+
+    //Gson that doesn't serialize the loggers of the objects
+    private static final Gson serializationGson = registerTypeAdapters(new GsonBuilder())
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getName().startsWith("logger");
+                }
+            })
+            .create();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    /**
+     * Get the shared Gson instance
+     * @return Gson
+     */
+    public static Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * Get the shared Gson instance used to serialize objects that could have loggers
+     * @return Gson
+     */
+    public static Gson getSerializationGson() {
+        return serializationGson;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private JsonCodec() {
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Parse a json string into a json object
+     * @param strJson json string
+     * @return json object, or null if the string is empty
+     */
+    public static JsonObject parseJsonObject(String strJson) {
+        return gson.fromJson(strJson, JsonObject.class);
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static GsonBuilder registerTypeAdapters(GsonBuilder gsonBuilder) {
+        return gsonBuilder
+                .registerTypeAdapter(DigitalObject.class, new DigitalObjectTypeAdapter().nullSafe())
+                .registerTypeAdapter(VersionInfo.class, new VersionInfoTypeAdapter().nullSafe())
+                .registerTypeAdapterFactory(new StreamingSerializerFactory<>(JsonTreeDiff.class, JsonCodec::writeJsonTreeDiff))
+                .registerTypeAdapterFactory(new StreamingSerializerFactory<>(MapDifference.class, JsonCodec::writeMapDifference));
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL){
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    private static Long nextLongOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL){
+            in.nextNull();
+            return null;
+        }
+        return in.nextLong();
+    }
+
+    private static JsonObject nextJsonObjectOrNull(JsonReader in) throws IOException {
+        JsonElement jsonElement = JSON_ELEMENT_ADAPTER.read(in);
+        return jsonElement != null && jsonElement.isJsonObject() ? jsonElement.getAsJsonObject() : null;
+    }
+
+    private static void writeJsonElement(JsonWriter out, String name, JsonElement jsonElement) throws IOException {
+        if (jsonElement != null){
+            out.name(name);
+            JSON_ELEMENT_ADAPTER.write(out, jsonElement);
+        }
+    }
+
+    /**
+     * Write any value with the adapter of its runtime type, as Gson does with the values of maps
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeValue(Gson gson, JsonWriter out, Object value) throws IOException {
+        if (value == null){
+            out.nullValue();
+            return;
+        }
+        ((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(out, value);
+    }
+
+    private static void writeMap(Gson gson, JsonWriter out, Map<?, ?> map) throws IOException {
+        out.beginObject();
+        for (Map.Entry<?, ?> entry:map.entrySet()) {
+            out.name(String.valueOf(entry.getKey()));
+            writeValue(gson, out, entry.getValue());
+        }
+        out.endObject();
+    }
+
+    /**
+     * Write the result of a comparison of json elements, with the attributes onlyOnLeft, onlyOnRight and differences,
+     * as JsonTreeDiff.toJsonObject
+     */
+    private static void writeJsonTreeDiff(Gson gson, JsonWriter out, JsonTreeDiff jsonTreeDiff) throws IOException {
+        out.beginObject();
+        out.name("onlyOnLeft").beginObject();
+        for (Map.Entry<String, JsonElement> leaf:jsonTreeDiff.getOnlyOnLeft().entrySet()) {
+            writeJsonElement(out, leaf.getKey(), leaf.getValue());
+        }
+        out.endObject();
+        out.name("onlyOnRight").beginObject();
+        for (Map.Entry<String, JsonElement> leaf:jsonTreeDiff.getOnlyOnRight().entrySet()) {
+            writeJsonElement(out, leaf.getKey(), leaf.getValue());
+        }
+        out.endObject();
+        out.name("differences").beginObject();
+        for (Map.Entry<String, JsonTreeDiff.ValueDifference> difference:jsonTreeDiff.getDifferences().entrySet()) {
+            out.name(difference.getKey()).beginObject();
+            writeJsonElement(out, "left", difference.getValue().getLeft());
+            writeJsonElement(out, "right", difference.getValue().getRight());
+            out.endObject();
+        }
+        out.endObject();
+        out.endObject();
+    }
+
+    /**
+     * Write the result of a comparison of maps, with the attributes onlyOnLeft, onlyOnRight, onBoth and differences
+     * (with the left and right values of every difference)
+     */
+    private static void writeMapDifference(Gson gson, JsonWriter out, MapDifference<?, ?> mapDifference) throws IOException {
+        out.beginObject();
+        out.name("onlyOnLeft");
+        writeMap(gson, out, mapDifference.entriesOnlyOnLeft());
+        out.name("onlyOnRight");
+        writeMap(gson, out, mapDifference.entriesOnlyOnRight());
+        out.name("onBoth");
+        writeMap(gson, out, mapDifference.entriesInCommon());
+        out.name("differences").beginObject();
+        for (Map.Entry<?, ? extends MapDifference.ValueDifference<?>> difference:mapDifference.entriesDiffering().entrySet()) {
+            out.name(String.valueOf(difference.getKey())).beginObject();
+            out.name("left");
+            writeValue(gson, out, difference.getValue().leftValue());
+            out.name("right");
+            writeValue(gson, out, difference.getValue().rightValue());
+            out.endObject();
+        }
+        out.endObject();
+        out.endObject();
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    /**
+     * Adapter of digital objects and their elements. The input streams of the elements are not converted, as in the
+     * DOIP SDK
+     */
+    private static final class DigitalObjectTypeAdapter extends TypeAdapter<DigitalObject> {
+
+        @Override
+        public void write(JsonWriter out, DigitalObject digitalObject) throws IOException {
+            out.beginObject();
+            if (digitalObject.id != null) out.name("id").value(digitalObject.id);
+            if (digitalObject.type != null) out.name("type").value(digitalObject.type);
+            writeJsonElement(out, "attributes", digitalObject.attributes);
+            if (digitalObject.elements != null){
+                out.name("elements").beginArray();
+                for (Element element:digitalObject.elements) {
+                    if (element == null){
+                        out.nullValue();
+                        continue;
+                    }
+                    out.beginObject();
+                    if (element.id != null) out.name("id").value(element.id);
+                    if (element.length != null) out.name("length").value(element.length);
+                    if (element.type != null) out.name("type").value(element.type);
+                    writeJsonElement(out, "attributes", element.attributes);
+                    out.endObject();
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public DigitalObject read(JsonReader in) throws IOException {
+            DigitalObject digitalObject = new DigitalObject();
+            in.beginObject();
+            while (in.hasNext()){
+                switch (in.nextName()){
+                    case "id":
+                        digitalObject.id = nextStringOrNull(in);
+                        break;
+                    case "type":
+                        digitalObject.type = nextStringOrNull(in);
+                        break;
+                    case "attributes":
+                        digitalObject.attributes = nextJsonObjectOrNull(in);
+                        break;
+                    case "elements":
+                        if (in.peek() == JsonToken.NULL){
+                            in.nextNull();
+                            break;
+                        }
+                        digitalObject.elements = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()){
+                            digitalObject.elements.add(this.readElement(in));
+                        }
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return digitalObject;
+        }
+
+        private Element readElement(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL){
+                in.nextNull();
+                return null;
+            }
+            Element element = new Element();
+            in.beginObject();
+            while (in.hasNext()){
+                switch (in.nextName()){
+                    case "id":
+                        element.id = nextStringOrNull(in);
+                        break;
+                    case "length":
+                        element.length = nextLongOrNull(in);
+                        break;
+                    case "type":
+                        element.type = nextStringOrNull(in);
+                        break;
+                    case "attributes":
+                        element.attributes = nextJsonObjectOrNull(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return element;
+        }
+    }
+
+    /**
+     * Adapter of the versions of the CORDRA REST API
+     */
+    private static final class VersionInfoTypeAdapter extends TypeAdapter<VersionInfo> {
+
+        @Override
+        public void write(JsonWriter out, VersionInfo versionInfo) throws IOException {
+            out.beginObject();
+            if (versionInfo.id != null) out.name("id").value(versionInfo.id);
+            if (versionInfo.type != null) out.name("type").value(versionInfo.type);
+            if (versionInfo.versionOf != null) out.name("versionOf").value(versionInfo.versionOf);
+            if (versionInfo.publishedBy != null) out.name("publishedBy").value(versionInfo.publishedBy);
+            if (versionInfo.publishedOn != null) out.name("publishedOn").value(versionInfo.publishedOn);
+            if (versionInfo.modifiedOn != null) out.name("modifiedOn").value(versionInfo.modifiedOn);
+            out.name("isTip").value(versionInfo.isTip);
+            out.endObject();
+        }
+
+        @Override
+        public VersionInfo read(JsonReader in) throws IOException {
+            VersionInfo versionInfo = new VersionInfo();
+            in.beginObject();
+            while (in.hasNext()){
+                switch (in.nextName()){
+                    case "id":
+                        versionInfo.id = nextStringOrNull(in);
+                        break;
+                    case "type":
+                        versionInfo.type = nextStringOrNull(in);
+                        break;
+                    case "versionOf":
+                        versionInfo.versionOf = nextStringOrNull(in);
+                        break;
+                    case "publishedBy":
+                        versionInfo.publishedBy = nextStringOrNull(in);
+                        break;
+                    case "publishedOn":
+                        versionInfo.publishedOn = nextLongOrNull(in);
+                        break;
+                    case "modifiedOn":
+                        versionInfo.modifiedOn = nextLongOrNull(in);
+                        break;
+                    case "isTip":
+                        versionInfo.isTip = in.nextBoolean();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return versionInfo;
+        }
+    }
+
+    /**
+     * Writer of a type to a json stream
+     * @param <T> type written
+     */
+    @FunctionalInterface
+    private interface StreamingSerializer<T> {
+        void write(Gson gson, JsonWriter out, T value) throws IOException;
+    }
+
+    /**
+     * Factory of the adapters of a type (and its subtypes) that are only written, such as the results of the
+     * comparisons, from which the JSON Patch of the comparison can't be rebuilt. They are written directly to the
+     * stream, without building a tree of json elements first, and they are read as Gson would do without the adapter
+     * @param <T> type written
+     */
+    private static final class StreamingSerializerFactory<T> implements TypeAdapterFactory {
+        private final Class<T> baseType;
+        private final StreamingSerializer<T> serializer;
+
+        StreamingSerializerFactory(Class<T> baseType, StreamingSerializer<T> serializer) {
+            this.baseType = baseType;
+            this.serializer = serializer;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> typeToken) {
+            if (!this.baseType.isAssignableFrom(typeToken.getRawType())){
+                return null;
+            }
+            TypeAdapter<R> delegate = gson.getDelegateAdapter(this, typeToken);
+            return new TypeAdapter<R>() {
+                @Override
+                public void write(JsonWriter out, R value) throws IOException {
+                    if (value == null){
+                        out.nullValue();
+                    } else{
+                        serializer.write(gson, out, (T) value);
+                    }
+                }
+
+                @Override
+                public R read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+}
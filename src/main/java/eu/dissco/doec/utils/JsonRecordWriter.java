@@ -0,0 +1,157 @@
+package eu.dissco.doec.utils;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writer of records (e.g. digital objects) as json, one at a time, so a large number of records can be written as they
+ * are received without keeping them in memory. The records are written either as newline delimited json (one record
+ * per line) or as a json array
+ */
+public class JsonRecordWriter implements Closeable, Flushable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final Writer writer;
+    private final FORMAT format;
+    private final GZIPOutputStream gzipOutputStream;
+    private final JsonWriter jsonWriter;
+    private long numRecords = 0;
+    private boolean finished = false;
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum FORMAT {
+        NDJSON,
+        JSON_ARRAY
+    }
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public FORMAT getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the number of records written
+     * @return number of records
+     */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new JsonRecordWriter
+     * @param writer writer where the records are written
+     * @param format format of the output
+     */
+    public JsonRecordWriter(Writer writer, FORMAT format) throws IOException {
+        this(writer, format, null);
+    }
+
+    /**
+     * Create a new JsonRecordWriter that writes the records as UTF-8
+     * @param outputStream stream where the records are written
+     * @param format format of the output
+     * @param gzip if true, the output is compressed with gzip
+     */
+    public JsonRecordWriter(OutputStream outputStream, FORMAT format, boolean gzip) throws IOException {
+        this(outputStream, format, gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : null);
+    }
+
+    private JsonRecordWriter(OutputStream outputStream, FORMAT format, GZIPOutputStream gzipOutputStream) throws IOException {
+        this(new BufferedWriter(new OutputStreamWriter(gzipOutputStream != null ? gzipOutputStream : outputStream, StandardCharsets.UTF_8)),
+                format, gzipOutputStream);
+    }
+
+    private JsonRecordWriter(Writer writer, FORMAT format, GZIPOutputStream gzipOutputStream) throws IOException {
+        this.writer = writer;
+        this.format = format;
+        this.gzipOutputStream = gzipOutputStream;
+        if (format == FORMAT.JSON_ARRAY){
+            this.jsonWriter = new JsonWriter(writer);
+            this.jsonWriter.beginArray();
+        } else{
+            this.jsonWriter = null;
+        }
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Write a record
+     * @param record record to be written
+     * @throws IOException
+     */
+    public void write(Object record) throws IOException {
+        if (this.finished){
+            throw new IOException("The writer has already been finished");
+        }
+        if (this.getFormat() == FORMAT.JSON_ARRAY){
+            JsonCodec.getSerializationGson().toJson(record, record.getClass(), this.jsonWriter);
+        } else{
+            JsonCodec.getSerializationGson().toJson(record, record.getClass(), this.writer);
+            this.writer.write('\n');
+        }
+        this.numRecords++;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.jsonWriter != null){
+            this.jsonWriter.flush();
+        }
+        this.writer.flush();
+    }
+
+    /**
+     * Complete the output (closing the json array and writing the end of the gzip stream) without closing the
+     * underlying writer or stream, so the caller can keep using it. No more records can be written
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (this.finished){
+            return;
+        }
+        this.finished = true;
+        if (this.jsonWriter != null){
+            this.jsonWriter.endArray();
+        }
+        this.flush();
+        if (this.gzipOutputStream != null){
+            this.gzipOutputStream.finish();
+        }
+    }
+
+    /**
+     * Complete the output and close the underlying writer or stream
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.finish();
+        } finally {
+            this.writer.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package eu.dissco.doec.utils;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.everit.json.schema.Schema;
+import org.everit.json.schema.loader.SchemaLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of compiled json schemas, so a schema used to validate many json objects (e.g. the additional data schema of
+ * an event type) is only loaded once. Schemas are cached by a key given by the caller, which must change when the
+ * schema changes so it is loaded again, e.g. one built with getSchemaKey when the schema is read. When it is full, the
+ * least recently used schema is evicted. The compiled schemas can be used from several threads
+ */
+public class JsonSchemaCache {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final Map<String, Schema> schemas;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public synchronized int size() {
+        return this.schemas.size();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new JsonSchemaCache
+     * @param maxEntries maximum number of compiled schemas kept
+     */
+    public JsonSchemaCache(int maxEntries) {
+        this.schemas = new LinkedHashMap<String, Schema>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Schema> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the compiled schema, loading it if it isn't cached
+     * @param schemaKey key of the schema, which changes when the schema changes
+     * @param jsonSchema json object with the schema. It is not modified
+     * @param checkRequiredId flag to indicate if the id attribute should not be included as required field
+     *                        even if the schema indicate it to be required
+     * @return compiled schema
+     */
+    public Schema getSchema(String schemaKey, JsonObject jsonSchema, boolean checkRequiredId) {
+        String cacheKey = schemaKey + "|" + checkRequiredId;
+        Schema schema;
+        synchronized (this){
+            schema = this.schemas.get(cacheKey);
+        }
+        if (schema == null){
+            //Loaded outside of the lock, so a slow schema doesn't block the validations against other schemas. If it
+            //is loaded by 2 threads at the same time, both get an equivalent schema
+            schema = loadSchema(jsonSchema, checkRequiredId);
+            synchronized (this){
+                this.schemas.put(cacheKey, schema);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Validate the json object passed a parameter against the json schema
+     * @param schemaKey key of the schema, which changes when the schema changes
+     * @param jsonObject json object to be validated
+     * @param jsonSchema json object with the schema to be used in the validation. It is not modified
+     * @param checkRequiredId flag to indicate if the id attribute should not be included as required field
+     *                        even if the schema indicate it to be required
+     * @return true if json is valid according to the schema or false otherwise
+     */
+    public boolean validate(String schemaKey, JsonObject jsonObject, JsonObject jsonSchema, boolean checkRequiredId) {
+        try {
+            Schema schema = this.getSchema(schemaKey, jsonSchema, checkRequiredId);
+            // Validate json against schema. Throws a ValidationException if this object is invalid
+            schema.validate(JsonUtils.convertGsonToOrgJson(jsonObject));
+            return true;
+        } catch(Exception e){
+            return false;
+        }
+    }
+
+    /**
+     * Get a key for a schema made of a name (e.g. the id of the event type it belongs to) and the hash of its content,
+     * so it changes when the schema changes. It is meant to be computed once, when the schema is read
+     * @param name name of the schema
+     * @param jsonSchema json object with the schema, or null
+     * @return key of the schema
+     */
+    public static String getSchemaKey(String name, JsonObject jsonSchema) {
+        if (jsonSchema == null){
+            return name;
+        }
+        return name + "|" + Hashing.sha256().hashString(jsonSchema.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Load a json schema
+     * @param jsonSchema json object with the schema. It is not modified
+     * @param checkRequiredId flag to indicate if the id attribute should not be included as required field
+     *                        even if the schema indicate it to be required
+     * @return compiled schema
+     */
+    public static Schema loadSchema(JsonObject jsonSchema, boolean checkRequiredId) {
+        if (!checkRequiredId && jsonSchema.has("required") && jsonSchema.get("required").isJsonArray()){
+            //If we want to validate the json against the schema in order to create the object,
+            // the attribute "id" should not considered as required. It is removed from a copy of the schema
+            JsonArray requiredFields = new JsonArray();
+            for (JsonElement requiredField:jsonSchema.getAsJsonArray("required")) {
+                if (!requiredField.isJsonPrimitive() || !requiredField.getAsString().equals("id")){
+                    requiredFields.add(requiredField);
+                }
+            }
+            JsonObject jsonSchemaWithoutRequiredId = new JsonObject();
+            for (Map.Entry<String, JsonElement> attribute:jsonSchema.entrySet()) {
+                jsonSchemaWithoutRequiredId.add(attribute.getKey(), attribute.getKey().equals("required") ? requiredFields : attribute.getValue());
+            }
+            jsonSchema = jsonSchemaWithoutRequiredId;
+        }
+
+        //Gson doesn't currently offer the functionality to validate an json object against a schema
+        //so we need to use the library https://github.com/everit-org/json-schema to validate them,
+        //and because the library works with org.json.JSONObject we need to convert our gson.JsonObjects
+        SchemaLoader loader = SchemaLoader.builder()
+                .schemaJson(JsonUtils.convertGsonToOrgJson(jsonSchema))
+                .draftV6Support() // or draftV7Support()
+                .build();
+        return loader.load().build();
+    }
+}
@@ -0,0 +1,276 @@
+package eu.dissco.doec.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.*;
+
+/**
+ * Structural difference between 2 json elements, calculated walking both trees at the same time without copying nor
+ * modifying them. The differences are kept by the JSON pointer (RFC 6901) of the leaves, as in the flattened maps
+ * compared by JsonUtils.compareJsonElements (empty objects and arrays are considered leaves), and they can also be
+ * obtained as a JSON Patch (RFC 6902) that transforms the left element into the right one
+ */
+public class JsonTreeDiff {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final Map<String, JsonElement> onlyOnLeft = new LinkedHashMap<>();
+    private final Map<String, JsonElement> onlyOnRight = new LinkedHashMap<>();
+    private final Map<String, ValueDifference> differences = new LinkedHashMap<>();
+    private final JsonArray jsonPatch = new JsonArray();
+    private final Set<String> ignorePaths;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    /**
+     * Get the leaves that are only in the left element
+     * @return values by JSON pointer
+     */
+    public Map<String, JsonElement> getOnlyOnLeft() {
+        return Collections.unmodifiableMap(onlyOnLeft);
+    }
+
+    /**
+     * Get the leaves that are only in the right element
+     * @return values by JSON pointer
+     */
+    public Map<String, JsonElement> getOnlyOnRight() {
+        return Collections.unmodifiableMap(onlyOnRight);
+    }
+
+    /**
+     * Get the leaves that are in both elements with different values
+     * @return differences by JSON pointer
+     */
+    public Map<String, ValueDifference> getDifferences() {
+        return Collections.unmodifiableMap(differences);
+    }
+
+    /**
+     * Get the JSON Patch (RFC 6902) that transforms the left element into the right one
+     * @return copy of the list of operations
+     */
+    public JsonArray getJsonPatch() {
+        return jsonPatch.deepCopy();
+    }
+
+    /**
+     * Check whether both elements are equal, ignoring the paths excluded from the comparison
+     * @return true if there are no differences
+     */
+    public boolean areEqual() {
+        return onlyOnLeft.isEmpty() && onlyOnRight.isEmpty() && differences.isEmpty();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private JsonTreeDiff(Set<String> ignorePaths) {
+        this.ignorePaths = ignorePaths;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Get the differences between 2 json elements
+     * @param leftJsonElem left json element
+     * @param rightJsonElem right json element
+     * @param ignorePaths JSON pointers of the parts of the elements excluded from the comparison (e.g. "/id")
+     * @return differences between both elements
+     */
+    public static JsonTreeDiff compare(JsonElement leftJsonElem, JsonElement rightJsonElem, String... ignorePaths){
+        JsonTreeDiff diff = new JsonTreeDiff(new HashSet<>(Arrays.asList(ignorePaths)));
+        diff.compare("", leftJsonElem, rightJsonElem);
+        return diff;
+    }
+
+    /**
+     * Convert the differences into a json object with the attributes onlyOnLeft, onlyOnRight and differences (with
+     * the left and right values of every difference), as the comparisons stored in the provenance records
+     * @return json object with the differences
+     */
+    public JsonObject toJsonObject(){
+        JsonObject jsonObject = new JsonObject();
+        jsonObject.add("onlyOnLeft", toJsonObject(this.onlyOnLeft));
+        jsonObject.add("onlyOnRight", toJsonObject(this.onlyOnRight));
+        JsonObject jsonDifferences = new JsonObject();
+        for (Map.Entry<String, ValueDifference> difference:this.differences.entrySet()) {
+            JsonObject jsonDifference = new JsonObject();
+            jsonDifference.add("left", difference.getValue().getLeft());
+            jsonDifference.add("right", difference.getValue().getRight());
+            jsonDifferences.add(difference.getKey(), jsonDifference);
+        }
+        jsonObject.add("differences", jsonDifferences);
+        return jsonObject;
+    }
+
+    /**
+     * Escape a key of a json object to be used in a JSON pointer (RFC 6901)
+     * @param key key of a json object
+     * @return escaped key
+     */
+    public static String escapeJsonPointerToken(String key){
+        if (key.indexOf('~') < 0 && key.indexOf('/') < 0){
+            return key;
+        }
+        return key.replace("~", "~0").replace("/", "~1");
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Compare 2 json elements found at the same path
+     * @param path JSON pointer of the elements
+     * @param left left element, or null if it doesn't exist
+     * @param right right element, or null if it doesn't exist
+     */
+    private void compare(String path, JsonElement left, JsonElement right){
+        if (this.ignorePaths.contains(path)){
+            return;
+        }
+        if (left != null && left.isJsonObject() && right != null && right.isJsonObject()){
+            this.compareObjects(path, left.getAsJsonObject(), right.getAsJsonObject());
+        } else if (left != null && left.isJsonArray() && right != null && right.isJsonArray()){
+            this.compareArrays(path, left.getAsJsonArray(), right.getAsJsonArray());
+        } else if (left == null){
+            this.addLeaves(path, right, this.onlyOnRight);
+            this.addOperation("add", path, right);
+        } else if (right == null){
+            this.addLeaves(path, left, this.onlyOnLeft);
+            this.addOperation("remove", path, null);
+        } else if (!left.equals(right)){
+            if (isContainer(left) || isContainer(right)){
+                //Different kinds of elements: their leaves don't match
+                this.addLeaves(path, left, this.onlyOnLeft);
+                this.addLeaves(path, right, this.onlyOnRight);
+            } else{
+                this.differences.put(path, new ValueDifference(left, right));
+            }
+            this.addOperation("replace", path, right);
+        }
+    }
+
+    private void compareObjects(String path, JsonObject left, JsonObject right){
+        for (Map.Entry<String, JsonElement> leftEntry:left.entrySet()) {
+            this.compare(path + "/" + escapeJsonPointerToken(leftEntry.getKey()), leftEntry.getValue(), right.get(leftEntry.getKey()));
+        }
+        for (Map.Entry<String, JsonElement> rightEntry:right.entrySet()) {
+            if (!left.has(rightEntry.getKey())){
+                this.compare(path + "/" + escapeJsonPointerToken(rightEntry.getKey()), null, rightEntry.getValue());
+            }
+        }
+    }
+
+    private void compareArrays(String path, JsonArray left, JsonArray right){
+        int commonSize = Math.min(left.size(), right.size());
+        for (int i = 0; i < commonSize; i++) {
+            this.compare(path + "/" + i, left.get(i), right.get(i));
+        }
+        for (int i = commonSize; i < right.size(); i++) {
+            this.compare(path + "/" + i, null, right.get(i));
+        }
+        //Remove from the end, so the positions of the elements still to be removed don't change
+        for (int i = left.size() - 1; i >= commonSize; i--) {
+            this.compare(path + "/" + i, left.get(i), null);
+        }
+    }
+
+    /**
+     * Add the leaves of a json element to the map received, by JSON pointer
+     * @param path JSON pointer of the element
+     * @param element json element
+     * @param leaves map where the leaves are added
+     */
+    private void addLeaves(String path, JsonElement element, Map<String, JsonElement> leaves){
+        if (this.ignorePaths.contains(path)){
+            return;
+        }
+        if (isContainer(element) && isEmpty(element)){
+            //Empty objects and arrays have no leaves, but they are still a difference
+            leaves.put(path, element.deepCopy());
+        } else if (element.isJsonObject()){
+            for (Map.Entry<String, JsonElement> entry:element.getAsJsonObject().entrySet()) {
+                this.addLeaves(path + "/" + escapeJsonPointerToken(entry.getKey()), entry.getValue(), leaves);
+            }
+        } else if (element.isJsonArray()){
+            JsonArray array = element.getAsJsonArray();
+            for (int i = 0; i < array.size(); i++) {
+                this.addLeaves(path + "/" + i, array.get(i), leaves);
+            }
+        } else{
+            leaves.put(path, element);
+        }
+    }
+
+    private void addOperation(String op, String path, JsonElement value){
+        JsonObject operation = new JsonObject();
+        operation.addProperty("op", op);
+        operation.addProperty("path", path);
+        if (value != null){
+            operation.add("value", value.deepCopy());
+        }
+        this.jsonPatch.add(operation);
+    }
+
+    private static boolean isContainer(JsonElement element){
+        return element.isJsonObject() || element.isJsonArray();
+    }
+
+    private static boolean isEmpty(JsonElement element){
+        return element.isJsonObject() ? element.getAsJsonObject().size() == 0 : element.getAsJsonArray().size() == 0;
+    }
+
+    private static JsonObject toJsonObject(Map<String, JsonElement> leaves){
+        JsonObject jsonObject = new JsonObject();
+        for (Map.Entry<String, JsonElement> leaf:leaves.entrySet()) {
+            jsonObject.add(leaf.getKey(), leaf.getValue());
+        }
+        return jsonObject;
+    }
+
+
+    /*****************/
+    /* INNER CLASSES */
+    /*****************/
+
+    /**
+     * Left and right values of a leaf that is in both elements
+     */
+    public static final class ValueDifference {
+        private final JsonElement left;
+        private final JsonElement right;
+
+        public ValueDifference(JsonElement left, JsonElement right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public JsonElement getLeft() {
+            return left;
+        }
+
+        public JsonElement getRight() {
+            return right;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + ", " + right + ")";
+        }
+    }
+}
@@ -5,13 +5,18 @@ import com.google.common.collect.Maps;
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
 import org.everit.json.schema.Schema;
-import org.everit.json.schema.loader.SchemaLoader;
 
 import java.lang.reflect.Type;
 import java.util.Map;
 
 public class JsonUtils {
 
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final JsonSchemaCache schemaCache = new JsonSchemaCache(JsonSchemaCache.DEFAULT_MAX_ENTRIES);
+
 
     /******************/
     /* PUBLIC METHODS */
@@ -27,9 +32,8 @@ public class JsonUtils {
      */
     public static boolean validateJsonAgainstSchema(String json, String schema, boolean checkRequiredId){
         try {
-            Gson gson = new Gson();
-            JsonObject jsonObject = gson.fromJson(json, JsonObject.class);
-            JsonObject jsonSchema = gson.fromJson(schema, JsonObject.class);
+            JsonObject jsonObject = JsonCodec.parseJsonObject(json);
+            JsonObject jsonSchema = JsonCodec.parseJsonObject(schema);
 
             return JsonUtils.validateJsonAgainstSchema(jsonObject,jsonSchema,checkRequiredId);
         } catch(Exception e){
@@ -47,35 +51,10 @@ public class JsonUtils {
      */
     public static boolean validateJsonAgainstSchema(JsonObject jsonObject, JsonObject jsonSchema, boolean checkRequiredId){
         try {
-            if (!checkRequiredId){
-                //If we want to validate the json against the schema in order to create the object,
-                // the attribute "id" should not considered as required
-                JsonArray requiredFields = jsonSchema.getAsJsonArray("required");
-                JsonElement jsonElementToRemove=null;
-                for (JsonElement jsonElement:requiredFields) {
-                    if (jsonElement.getAsString().equals("id")){
-                        jsonElementToRemove=jsonElement;
-                        break;
-                    }
-                };
-                requiredFields.remove(jsonElementToRemove);
-            }
-
-            //Gson doesn't currently offer the functionality to validate an json object against a schema
-            //so we need to use the library https://github.com/everit-org/json-schema to validate them,
-            //and because the library works with org.json.JSONObject we need to convert our gson.JsonObjects
-            org.json.JSONObject orgJsonObject = convertGsonToOrgJson(jsonObject);
-            org.json.JSONObject orgJsonSchema = convertGsonToOrgJson(jsonSchema);
-
-            //Load the schema
-            SchemaLoader loader = SchemaLoader.builder()
-                    .schemaJson(orgJsonSchema)
-                    .draftV6Support() // or draftV7Support()
-                    .build();
-            Schema schema = loader.load().build();
+            Schema schema = JsonSchemaCache.loadSchema(jsonSchema, checkRequiredId);
 
             // Validate json against schema. Throws a ValidationException if this object is invalid
-            schema.validate(orgJsonObject);
+            schema.validate(convertGsonToOrgJson(jsonObject));
 
             return true;
         } catch(Exception e){
@@ -83,6 +62,21 @@ public class JsonUtils {
         }
     }
 
+    /**
+     * Validate the json object passed a parameter against the json schema, which is only loaded the first time it is
+     * used and kept in a cache shared by all the validations
+     * @param schemaKey key of the schema in the cache, which must change when the schema changes (see
+     *                  JsonSchemaCache.getSchemaKey)
+     * @param jsonObject json object to be validated
+     * @param jsonSchema json object with the schema to be used in the validation
+     * @param checkRequiredId flag to indicate if the id attribute should not be included as required field
+     *                        even if the schema indicate it to be required
+     * @return true if json is valid according to the schema or false otherwise
+     */
+    public static boolean validateJsonAgainstSchema(String schemaKey, JsonObject jsonObject, JsonObject jsonSchema, boolean checkRequiredId){
+        return schemaCache.validate(schemaKey, jsonObject, jsonSchema, checkRequiredId);
+    }
+
     /**
      * Convert a com.google.gson.JsonObject to a org.json.JSONObject
      * @param gson com.google.gson.JsonObject to conver to org.json.JSONObject
@@ -95,12 +89,13 @@ public class JsonUtils {
 
     /**
      * Get the differences between 2 json elements
+     * Note: JsonTreeDiff.compare gets the same differences without serializing and flattening both elements
      * @param leftJsonElem
      * @param rightJsonElem
      * @return MapDifference object with the result of the comparision
      */
     public static MapDifference<String, Object> compareJsonElements(JsonElement leftJsonElem, JsonElement rightJsonElem){
-        Gson gson = new Gson();
+        Gson gson = JsonCodec.getGson();
         String leftJson = JsonUtils.serializeObject(leftJsonElem);
         String rightJson = JsonUtils.serializeObject(rightJsonElem);
         Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
@@ -114,28 +109,70 @@ public class JsonUtils {
         return Maps.difference(leftMap, rightMap);
     }
 
+    /**
+     * Apply a JSON Patch (RFC 6902) to a json element. Only the operations add, remove and replace are supported, as
+     * they are the ones generated by JsonTreeDiff
+     * @param jsonElement json element to be patched. It is not modified
+     * @param jsonPatch list of operations
+     * @return copy of the json element with the operations applied
+     * @throws IllegalArgumentException if an operation is not supported or its path doesn't exist
+     */
+    public static JsonElement applyJsonPatch(JsonElement jsonElement, JsonArray jsonPatch){
+        //The element is wrapped so the operations on the root are done as on any other path
+        JsonArray root = new JsonArray();
+        root.add(jsonElement.deepCopy());
+        for (JsonElement jsonOperation:jsonPatch) {
+            JsonObject operation = jsonOperation.getAsJsonObject();
+            String op = operation.get("op").getAsString();
+            String[] tokens = ("/0" + operation.get("path").getAsString()).substring(1).split("/", -1);
+            JsonElement parent = root;
+            for (int i = 0; i < tokens.length - 1; i++) {
+                parent = getJsonPointerChild(parent, unescapeJsonPointerToken(tokens[i]), operation);
+            }
+            String token = unescapeJsonPointerToken(tokens[tokens.length - 1]);
+            if (parent.isJsonObject()){
+                JsonObject parentObject = parent.getAsJsonObject();
+                if ((op.equals("remove") || op.equals("replace")) && !parentObject.has(token)){
+                    throw new IllegalArgumentException("Path not found applying JSON Patch operation " + operation);
+                }
+                if (op.equals("remove")){
+                    parentObject.remove(token);
+                } else if (op.equals("add") || op.equals("replace")){
+                    parentObject.add(token, operation.get("value").deepCopy());
+                } else{
+                    throw new IllegalArgumentException("Unsupported JSON Patch operation " + operation);
+                }
+            } else if (parent.isJsonArray()){
+                JsonArray parentArray = parent.getAsJsonArray();
+                int index = token.equals("-") ? parentArray.size() : getJsonPointerIndex(token, operation);
+                if (op.equals("add") && index <= parentArray.size()){
+                    //JsonArray doesn't support inserting at a position, so the following elements are moved
+                    parentArray.add(JsonNull.INSTANCE);
+                    for (int i = parentArray.size() - 1; i > index; i--) {
+                        parentArray.set(i, parentArray.get(i - 1));
+                    }
+                    parentArray.set(index, operation.get("value").deepCopy());
+                } else if (op.equals("remove") && index < parentArray.size()){
+                    parentArray.remove(index);
+                } else if (op.equals("replace") && index < parentArray.size()){
+                    parentArray.set(index, operation.get("value").deepCopy());
+                } else{
+                    throw new IllegalArgumentException("Unsupported JSON Patch operation or path not found " + operation);
+                }
+            } else{
+                throw new IllegalArgumentException("Path not found applying JSON Patch operation " + operation);
+            }
+        }
+        return root.get(0);
+    }
+
     /**
      * Serialize a json object using a custom strategy (not serializing logger)
      * @param obj Object to be serialize as json
      * @return Json string with the result of the serialization
      */
     public static String serializeObject(Object obj){
-        ExclusionStrategy strategy = new ExclusionStrategy() {
-            @Override
-            public boolean shouldSkipClass(Class<?> clazz) {
-                return false;
-            }
-
-            @Override
-            public boolean shouldSkipField(FieldAttributes field) {
-                return field.getName().startsWith("logger");
-            }
-        };
-
-        Gson gson = new GsonBuilder()
-                .setExclusionStrategies(strategy)
-                .create();
-        return gson.toJson(obj);
+        return JsonCodec.getSerializationGson().toJson(obj);
     }
 
     /**
@@ -154,29 +191,37 @@ public class JsonUtils {
      * @return json element as result of the conversion
      */
     public static JsonElement convertObjectToJsonElement(Object obj){
-        JsonElement jsonElement=null;
-        if(obj instanceof MapDifference){
-            jsonElement = JsonUtils.convertMapDifferenceToJsonElement((MapDifference)obj);
-        } else{
-            Gson gson = new Gson();
-            jsonElement = gson.toJsonTree(obj);
+        return JsonCodec.getGson().toJsonTree(obj);
+    }
+
+    private static JsonElement getJsonPointerChild(JsonElement parent, String token, JsonObject operation){
+        JsonElement child = null;
+        if (parent.isJsonObject()){
+            child = parent.getAsJsonObject().get(token);
+        } else if (parent.isJsonArray()){
+            int index = getJsonPointerIndex(token, operation);
+            child = index < parent.getAsJsonArray().size() ? parent.getAsJsonArray().get(index) : null;
         }
-        return jsonElement;
+        if (child == null){
+            throw new IllegalArgumentException("Path not found applying JSON Patch operation " + operation);
+        }
+        return child;
     }
 
-    /**
-     * Function that converts a MapDifference object into a json object
-     * Note: the function convertObjectToJsonElement doesn't serialize correctly the attribute differences
-     * @param mapDifference MapDifference object to be converted
-     * @return json element as result of the conversion
-     */
-    private static JsonElement convertMapDifferenceToJsonElement(MapDifference mapDifference){
-        Gson gson = new Gson();
-        JsonElement jsonElement = gson.toJsonTree(mapDifference);
-        jsonElement.getAsJsonObject().remove("differences");
-        Object differences = mapDifference.entriesDiffering();
-        jsonElement.getAsJsonObject().add("differences",JsonUtils.convertObjectToJsonElement(differences));
-        return jsonElement;
+    private static int getJsonPointerIndex(String token, JsonObject operation){
+        try {
+            int index = Integer.parseInt(token);
+            if (index >= 0){
+                return index;
+            }
+        } catch (NumberFormatException e){
+            //Not a number, same as a negative index
+        }
+        throw new IllegalArgumentException("Invalid array index applying JSON Patch operation " + operation);
+    }
+
+    private static String unescapeJsonPointerToken(String token){
+        return token.replace("~1", "/").replace("~0", "~");
     }
 
 }
@@ -0,0 +1,125 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.apache.commons.configuration2.Configuration;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class DigitalObjectRepositoryClientPoolTest {
+
+    //Nothing listens in this port, so clients can be created but any call to the repository fails
+    private static final int UNUSED_PORT = 1;
+
+    @Test
+    public void testClientIsReusedAfterItIsClosed() throws DigitalObjectRepositoryException {
+        try (DigitalObjectRepositoryClientPool pool = newPool(2, 1000, 300000, 300000)){
+            DigitalObjectRepositoryClient client = pool.borrowClient();
+            assertEquals(1, pool.getNumActive());
+            assertEquals(0, pool.getNumIdle());
+
+            client.close();
+            assertEquals(0, pool.getNumActive());
+            assertEquals(1, pool.getNumIdle());
+            //Giving back a client twice is ignored
+            client.close();
+            assertEquals(1, pool.getNumIdle());
+
+            try (DigitalObjectRepositoryClient reusedClient = pool.borrowClient()){
+                assertSame(client, reusedClient);
+            }
+        }
+    }
+
+    @Test
+    public void testBorrowTimesOutWhenAllClientsAreBorrowed() throws Exception {
+        try (DigitalObjectRepositoryClientPool pool = newPool(2, 100, 300000, 300000)){
+            DigitalObjectRepositoryClient first = pool.borrowClient();
+            DigitalObjectRepositoryClient second = pool.borrowClient();
+            assertNotSame(first, second);
+            try {
+                pool.borrowClient();
+                fail("No client should be available");
+            } catch (DigitalObjectRepositoryException e){
+                assertEquals(2, pool.getNumActive());
+            }
+
+            //A client given back is handed out to the caller waiting
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<DigitalObjectRepositoryClient> waitingBorrow = executor.submit(pool::borrowClient);
+                Thread.sleep(20);
+                first.close();
+                assertSame(first, waitingBorrow.get(5, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testIdleClientsAreDiscardedWhenTheyExpireOrFailValidation() throws Exception {
+        try (DigitalObjectRepositoryClientPool pool = newPool(2, 1000, 50, 300000)){
+            DigitalObjectRepositoryClient client = pool.borrowClient();
+            client.close();
+            Thread.sleep(100);
+            try (DigitalObjectRepositoryClient newClient = pool.borrowClient()){
+                assertNotSame("A client idle for longer than the idle timeout shouldn't be reused", client, newClient);
+            }
+        }
+
+        try (DigitalObjectRepositoryClientPool pool = newPool(2, 1000, 300000, 0)){
+            DigitalObjectRepositoryClient client = pool.borrowClient();
+            client.close();
+            Thread.sleep(5);
+            try (DigitalObjectRepositoryClient newClient = pool.borrowClient()){
+                assertNotSame("A client that can't reach the repository shouldn't be reused", client, newClient);
+                assertEquals(0, pool.getNumIdle());
+            }
+        }
+    }
+
+    @Test
+    public void testClosedPool() throws DigitalObjectRepositoryException {
+        DigitalObjectRepositoryClientPool pool = newPool(2, 1000, 300000, 300000);
+        pool.borrowClient().close();
+        DigitalObjectRepositoryClient borrowedClient = pool.borrowClient();
+        pool.borrowClient().close();
+        assertEquals(1, pool.getNumIdle());
+
+        pool.close();
+        assertEquals("Idle clients should be closed with the pool", 0, pool.getNumIdle());
+        try {
+            pool.borrowClient();
+            fail("A closed pool shouldn't hand out clients");
+        } catch (DigitalObjectRepositoryException e){
+            //Expected
+        }
+        borrowedClient.close();
+        assertEquals("A client given back to a closed pool should be closed", 0, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static DigitalObjectRepositoryClientPool newPool(int maxConnections, long borrowTimeoutMillis, long idleTimeoutMillis,
+                                                             long validationIntervalMillis) {
+        Configuration config = new BaseConfiguration();
+        config.setProperty("digitalObjectRepository.url", "http://localhost:" + UNUSED_PORT + "/");
+        config.setProperty("digitalObjectRepository.doipPort", UNUSED_PORT);
+        config.setProperty("digitalObjectRepository.handlePrefix", "test");
+        config.setProperty("digitalObjectRepository.username", "user");
+        config.setProperty("digitalObjectRepository.password", "password");
+        config.setProperty("digitalObjectRepository.searchPageSize", 10);
+        config.setProperty("digitalObjectRepository.pool.maxConnections", maxConnections);
+        config.setProperty("digitalObjectRepository.pool.borrowTimeoutMillis", borrowTimeoutMillis);
+        config.setProperty("digitalObjectRepository.pool.idleTimeoutMillis", idleTimeoutMillis);
+        config.setProperty("digitalObjectRepository.pool.validationIntervalMillis", validationIntervalMillis);
+        return DigitalObjectRepositoryClientPool.getDigitalObjectRepositoryClientPoolFromConfig(config);
+    }
+}
@@ -0,0 +1,97 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import com.google.gson.JsonObject;
+import net.dona.doip.client.DigitalObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class VersionObjectCacheTest {
+
+    @Test
+    public void testCachedVersionIsACopy() {
+        for (boolean offHeap:new boolean[]{false, true}) {
+            VersionObjectCache versionObjectCache = new VersionObjectCache(10000, offHeap);
+            versionObjectCache.put("v1", version("v1", "first"));
+
+            DigitalObject cachedVersion = versionObjectCache.get("v1");
+            assertEquals("first", getName(cachedVersion));
+            cachedVersion.attributes.getAsJsonObject("content").addProperty("name", "modified");
+            assertEquals("Modifying a returned version shouldn't modify the cache", "first", getName(versionObjectCache.get("v1")));
+
+            assertNull(versionObjectCache.get("v2"));
+            assertEquals(2, versionObjectCache.getHits());
+            assertEquals(1, versionObjectCache.getMisses());
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedVersionsAreEvicted() {
+        long versionBytes = serializedSize(version("v1", "first"));
+        VersionObjectCache versionObjectCache = new VersionObjectCache(3 * versionBytes, false);
+        versionObjectCache.put("v1", version("v1", "first"));
+        versionObjectCache.put("v2", version("v2", "secnd"));
+        versionObjectCache.put("v3", version("v3", "third"));
+        assertEquals(3, versionObjectCache.size());
+        assertEquals(3 * versionBytes, versionObjectCache.getSizeBytes());
+
+        //v1 becomes the most recently used, so v2 is evicted
+        assertNotNull(versionObjectCache.get("v1"));
+        versionObjectCache.put("v4", version("v4", "forth"));
+        assertEquals(3, versionObjectCache.size());
+        assertEquals(1, versionObjectCache.getEvictions());
+        assertNull(versionObjectCache.get("v2"));
+        assertNotNull(versionObjectCache.get("v1"));
+        assertNotNull(versionObjectCache.get("v3"));
+        assertNotNull(versionObjectCache.get("v4"));
+        assertTrue(versionObjectCache.getSizeBytes() <= versionObjectCache.getMaxBytes());
+    }
+
+    @Test
+    public void testReplacedVersionIsCountedOnce() {
+        long versionBytes = serializedSize(version("v1", "first"));
+        VersionObjectCache versionObjectCache = new VersionObjectCache(10 * versionBytes, false);
+        versionObjectCache.put("v1", version("v1", "first"));
+        versionObjectCache.put("v1", version("v1", "first"));
+        assertEquals(1, versionObjectCache.size());
+        assertEquals(versionBytes, versionObjectCache.getSizeBytes());
+    }
+
+    @Test
+    public void testVersionsBiggerThanTheCacheAreNotAdded() {
+        VersionObjectCache versionObjectCache = new VersionObjectCache(10, false);
+        versionObjectCache.put("v1", version("v1", "first"));
+        assertEquals(0, versionObjectCache.size());
+        assertNull(versionObjectCache.get("v1"));
+
+        VersionObjectCache disabledCache = new VersionObjectCache(0, false);
+        disabledCache.put("v1", version("v1", "first"));
+        assertEquals(0, disabledCache.size());
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static DigitalObject version(String id, String name) {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = id;
+        digitalObject.type = "DigitalSpecimen";
+        digitalObject.attributes = new JsonObject();
+        JsonObject content = new JsonObject();
+        content.addProperty("name", name);
+        digitalObject.attributes.add("content", content);
+        return digitalObject;
+    }
+
+    private static String getName(DigitalObject digitalObject) {
+        return digitalObject.attributes.getAsJsonObject("content").get("name").getAsString();
+    }
+
+    private static long serializedSize(DigitalObject digitalObject) {
+        VersionObjectCache versionObjectCache = new VersionObjectCache(Long.MAX_VALUE, false);
+        versionObjectCache.put(digitalObject.id, digitalObject);
+        return versionObjectCache.getSizeBytes();
+    }
+}
@@ -0,0 +1,67 @@
+package eu.dissco.doec.digitalObjectRepository;
+
+import net.cnri.cordra.api.VersionInfo;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class VersionTimelineTest {
+
+    @Test
+    public void testVersionsAreSortedByPublicationTime() {
+        VersionTimeline versionTimeline = new VersionTimeline(Arrays.asList(
+                version("v3", 300L), version("current", null), version("v1", 100L), version("v2", 200L)), 0);
+
+        assertEquals(4, versionTimeline.size());
+        assertEquals(Arrays.asList("v1", "v2", "v3", "current"), Arrays.asList(versionTimeline.getVersionId(0),
+                versionTimeline.getVersionId(1), versionTimeline.getVersionId(2), versionTimeline.getVersionId(3)));
+        assertEquals("current", versionTimeline.getCurrentVersionId());
+    }
+
+    @Test
+    public void testFindPositionAt() {
+        VersionTimeline versionTimeline = new VersionTimeline(Arrays.asList(
+                version("v1", 100L), version("v2", 200L), version("v3", 300L), version("current", null)), 0);
+        long now = 1000;
+
+        assertEquals("Nothing was published before the first version", -1, versionTimeline.findPositionAt(99, now));
+        assertEquals("A version is found at the time it was published", 0, versionTimeline.findPositionAt(100, now));
+        assertEquals(0, versionTimeline.findPositionAt(199, now));
+        assertEquals(1, versionTimeline.findPositionAt(200, now));
+        assertEquals(2, versionTimeline.findPositionAt(999, now));
+        assertEquals("The current version is the object from now on", 3, versionTimeline.findPositionAt(1000, now));
+        assertEquals(3, versionTimeline.findPositionAt(5000, now));
+    }
+
+    @Test
+    public void testFindPositionAtWithoutCurrentVersion() {
+        VersionTimeline versionTimeline = new VersionTimeline(Arrays.asList(version("v2", 200L), version("v1", 100L)), 0);
+        assertEquals(2, versionTimeline.size());
+        assertNull(versionTimeline.getCurrentVersionId());
+        assertEquals(1, versionTimeline.findPositionAt(5000, 1000));
+    }
+
+    @Test
+    public void testFindPositionAtWithOnlyCurrentVersion() {
+        VersionTimeline versionTimeline = new VersionTimeline(Collections.singletonList(version("current", null)), 0);
+        assertEquals(1, versionTimeline.size());
+        assertEquals(-1, versionTimeline.findPositionAt(500, 1000));
+        assertEquals(0, versionTimeline.findPositionAt(1000, 1000));
+        assertEquals(-1, new VersionTimeline(Collections.emptyList(), 0).findPositionAt(1000, 1000));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static VersionInfo version(String id, Long publishedOn) {
+        VersionInfo versionInfo = new VersionInfo();
+        versionInfo.id = id;
+        versionInfo.publishedOn = publishedOn;
+        return versionInfo;
+    }
+}
@@ -0,0 +1,203 @@
+package eu.dissco.doec.eventProcessing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+
+    private static final int ENTRY_HEADER_SIZE = Integer.BYTES + Long.BYTES + 1 + Integer.BYTES;
+    private static final int SEGMENT_SIZE_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyUnacknowledgedEventsAreRecovered() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            assertEquals(1, eventJournal.append(payload("first")));
+            assertEquals(2, eventJournal.append(payload("second")));
+            assertEquals(3, eventJournal.append(payload("third")));
+            eventJournal.ack(2);
+            //Acknowledging twice or an unknown event is ignored
+            eventJournal.ack(2);
+            eventJournal.ack(42);
+            assertEquals(2, eventJournal.getNumPendingEvents());
+            assertTrue("A new journal shouldn't recover any event", eventJournal.getRecoveredEvents().isEmpty());
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            SortedMap<Long, byte[]> recoveredEvents = eventJournal.getRecoveredEvents();
+            assertEquals(Arrays.asList(1L, 3L), recoveredEvents.keySet().stream().collect(Collectors.toList()));
+            assertArrayEquals(payload("first"), recoveredEvents.get(1L));
+            assertArrayEquals(payload("third"), recoveredEvents.get(3L));
+            assertEquals("Sequence numbers should continue after the recovered ones", 4, eventJournal.append(payload("fourth")));
+
+            eventJournal.ack(1);
+            eventJournal.ack(3);
+            assertEquals(1, eventJournal.getNumPendingEvents());
+            assertTrue("Acknowledged events shouldn't be recovered anymore", eventJournal.getRecoveredEvents().isEmpty());
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            assertEquals(Arrays.asList(4L), eventJournal.getRecoveredEvents().keySet().stream().collect(Collectors.toList()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testJournalCantBeOpenedTwice() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false);
+        try {
+            new EventJournal(directory, SEGMENT_SIZE_BYTES, false).close();
+        } finally {
+            eventJournal.close();
+        }
+    }
+
+    @Test
+    public void testCorruptTailEntryIsIgnored() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            eventJournal.append(payload("first"));
+            eventJournal.append(payload("second"));
+        }
+
+        //Flip a byte of the payload of the last entry, so its checksum doesn't match
+        Path segmentFile = getSegmentFiles(directory).get(0);
+        long position = 2L * ENTRY_HEADER_SIZE + payload("first").length;
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, position);
+            buffer.put(0, (byte) (buffer.get(0) ^ 0xFF));
+            buffer.rewind();
+            channel.write(buffer, position);
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            SortedMap<Long, byte[]> recoveredEvents = eventJournal.getRecoveredEvents();
+            assertEquals(Arrays.asList(1L), recoveredEvents.keySet().stream().collect(Collectors.toList()));
+            assertArrayEquals(payload("first"), recoveredEvents.get(1L));
+        }
+    }
+
+    @Test
+    public void testTruncatedTailEntryIsIgnored() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            eventJournal.append(payload("first"));
+            eventJournal.append(payload("second"));
+        }
+
+        //Cut the segment in the middle of the payload of the last entry, as if Cordra stopped while writing it
+        Path segmentFile = getSegmentFiles(directory).get(0);
+        long size = 2L * ENTRY_HEADER_SIZE + payload("first").length + payload("second").length / 2;
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.WRITE)){
+            channel.truncate(size);
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, SEGMENT_SIZE_BYTES, false)){
+            SortedMap<Long, byte[]> recoveredEvents = eventJournal.getRecoveredEvents();
+            assertEquals(Arrays.asList(1L), recoveredEvents.keySet().stream().collect(Collectors.toList()));
+            assertEquals("The sequence of the lost entry can be reused", 2, eventJournal.append(payload("second")));
+        }
+    }
+
+    @Test
+    public void testEventsAreRecoveredFromAllSegments() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        int numEvents = 20;
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            for (int i = 1; i <= numEvents; i++) {
+                eventJournal.append(payload(i, 100));
+            }
+            assertTrue("Events should roll over to new segments", eventJournal.getNumSegments() > 1);
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            SortedMap<Long, byte[]> recoveredEvents = eventJournal.getRecoveredEvents();
+            assertEquals(numEvents, recoveredEvents.size());
+            for (int i = 1; i <= numEvents; i++) {
+                assertArrayEquals(payload(i, 100), recoveredEvents.get((long) i));
+            }
+        }
+    }
+
+    @Test
+    public void testEventLargerThanSegment() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            eventJournal.append(payload(1, 1000));
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            assertArrayEquals(payload(1, 1000), eventJournal.getRecoveredEvents().get(1L));
+        }
+    }
+
+    @Test
+    public void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            for (int i = 1; i <= 20; i++) {
+                eventJournal.append(payload(i, 100));
+            }
+            List<Path> segmentFiles = getSegmentFiles(directory);
+            assertEquals(eventJournal.getNumSegments(), segmentFiles.size());
+
+            //A segment with a pending event keeps the newer segments too, as their ACKs may refer to it
+            for (int i = 2; i <= 20; i++) {
+                eventJournal.ack(i);
+            }
+            assertTrue(getSegmentFiles(directory).containsAll(segmentFiles));
+
+            eventJournal.ack(1);
+            assertEquals("Only the current segment should be kept", 1, eventJournal.getNumSegments());
+            assertEquals(1, getSegmentFiles(directory).size());
+            assertEquals(0, eventJournal.getNumPendingEvents());
+        }
+
+        try (EventJournal eventJournal = new EventJournal(directory, 256, false)){
+            assertTrue(eventJournal.getRecoveredEvents().isEmpty());
+            assertEquals(1, eventJournal.getNumSegments());
+            assertEquals(1, getSegmentFiles(directory).size());
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static byte[] payload(String event) {
+        return event.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] payload(int event, int size) {
+        byte[] payload = new byte[size];
+        Arrays.fill(payload, (byte) event);
+        return payload;
+    }
+
+    private static List<Path> getSegmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".journal")).sorted().collect(Collectors.toList());
+        }
+    }
+}
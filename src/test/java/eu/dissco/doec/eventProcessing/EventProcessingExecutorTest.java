@@ -0,0 +1,160 @@
+package eu.dissco.doec.eventProcessing;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class EventProcessingExecutorTest {
+
+    private final List<CompletableFuture<Void>> eventsProcessing = new CopyOnWriteArrayList<>();
+    private final List<String> threadsStartingEvents = new CopyOnWriteArrayList<>();
+    private EventProcessingExecutor eventProcessingExecutor;
+
+    @After
+    public void tearDown() {
+        this.eventsProcessing.forEach(eventProcessing -> eventProcessing.complete(null));
+        if (this.eventProcessingExecutor != null){
+            this.eventProcessingExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockWaitsUntilAnEventFinishes() throws Exception {
+        this.eventProcessingExecutor = new EventProcessingExecutor(1, 1, EventProcessingExecutor.OVERFLOW_POLICY.BLOCK, 1000, 10);
+        this.eventProcessingExecutor.submit(newEvent());
+        this.eventProcessingExecutor.submit(newEvent());
+        this.waitUntilStarted(2);
+        assertEquals(2, this.eventProcessingExecutor.getNumEventsInProgress());
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> blockedSubmit = caller.submit(() -> this.eventProcessingExecutor.submit(newEvent()));
+            Thread.sleep(100);
+            assertFalse("The caller should wait while the executor is full", blockedSubmit.isDone());
+            assertEquals(2, this.threadsStartingEvents.size());
+
+            //Events still waiting (e.g. for their object to be visible) count against the capacity until they finish
+            this.eventsProcessing.get(0).complete(null);
+            blockedSubmit.get(5, TimeUnit.SECONDS);
+            this.waitUntilStarted(3);
+            assertEquals(2, this.eventProcessingExecutor.getNumEventsInProgress());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallerRunsStartsTheEventWithoutWaiting() throws Exception {
+        this.eventProcessingExecutor = new EventProcessingExecutor(1, 1, EventProcessingExecutor.OVERFLOW_POLICY.CALLER_RUNS, 1000, 10);
+        this.eventProcessingExecutor.submit(newEvent());
+        this.eventProcessingExecutor.submit(newEvent());
+        this.waitUntilStarted(2);
+
+        this.eventProcessingExecutor.submit(newEvent());
+        assertEquals("The event should be started by the caller", Thread.currentThread().getName(), this.threadsStartingEvents.get(2));
+        assertFalse("The caller shouldn't wait until the event finishes", this.eventsProcessing.get(2).isDone());
+        assertEquals(2, this.eventProcessingExecutor.getNumEventsInProgress());
+    }
+
+    @Test
+    public void testSpilledEventsStartWhenThereIsRoom() throws Exception {
+        this.eventProcessingExecutor = new EventProcessingExecutor(1, 1, EventProcessingExecutor.OVERFLOW_POLICY.SPILL, 1000, 1);
+        this.eventProcessingExecutor.submit(newEvent());
+        this.eventProcessingExecutor.submit(newEvent());
+        this.waitUntilStarted(2);
+
+        this.eventProcessingExecutor.submit(newEvent());
+        assertEquals(1, this.eventProcessingExecutor.getSpillBufferSize());
+        try {
+            this.eventProcessingExecutor.submit(newEvent());
+            fail("The event should be rejected when the spill buffer is full");
+        } catch (RejectedExecutionException e){
+            assertEquals(1, this.eventProcessingExecutor.getSpillBufferSize());
+        }
+
+        this.eventsProcessing.get(1).complete(null);
+        this.waitUntilStarted(3);
+        assertEquals(0, this.eventProcessingExecutor.getSpillBufferSize());
+        assertEquals(2, this.eventProcessingExecutor.getNumEventsInProgress());
+    }
+
+    @Test
+    public void testDrainWaitsForEventsInProgressAndSpilled() throws Exception {
+        this.eventProcessingExecutor = new EventProcessingExecutor(1, 1, EventProcessingExecutor.OVERFLOW_POLICY.SPILL, 1000, 10);
+        for (int i = 0; i < 5; i++) {
+            this.eventProcessingExecutor.submit(newEvent());
+        }
+        this.waitUntilStarted(2);
+        assertEquals(3, this.eventProcessingExecutor.getSpillBufferSize());
+
+        //Every event finishes as soon as the previous one has started
+        Thread finisher = new Thread(() -> {
+            for (int i = 0; i < 5; i++) {
+                try {
+                    this.waitUntilStarted(Math.min(5, i + 2));
+                } catch (InterruptedException e){
+                    return;
+                }
+                this.eventsProcessing.get(i).complete(null);
+            }
+        });
+        finisher.start();
+        assertTrue(this.eventProcessingExecutor.drain(5, TimeUnit.SECONDS));
+        finisher.join();
+        assertEquals(5, this.threadsStartingEvents.size());
+        assertEquals(0, this.eventProcessingExecutor.getNumEventsInProgress());
+        assertEquals(0, this.eventProcessingExecutor.getSpillBufferSize());
+
+        try {
+            this.eventProcessingExecutor.submit(newEvent());
+            fail("A drained executor shouldn't accept new events");
+        } catch (RejectedExecutionException e){
+            assertTrue(this.eventProcessingExecutor.isShutdown());
+        }
+    }
+
+    @Test
+    public void testDrainTimesOutWhenAnEventDoesntFinish() throws Exception {
+        this.eventProcessingExecutor = new EventProcessingExecutor(1, 1, EventProcessingExecutor.OVERFLOW_POLICY.BLOCK, 1000, 10);
+        this.eventProcessingExecutor.submit(newEvent());
+        this.waitUntilStarted(1);
+        assertFalse(this.eventProcessingExecutor.drain(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, this.eventProcessingExecutor.getNumEventsInProgress());
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Create an event whose processing, once started, finishes when the test completes its future
+     */
+    private Supplier<CompletionStage<?>> newEvent() {
+        return () -> {
+            CompletableFuture<Void> eventProcessing = new CompletableFuture<>();
+            synchronized (this.threadsStartingEvents){
+                this.eventsProcessing.add(eventProcessing);
+                this.threadsStartingEvents.add(Thread.currentThread().getName());
+                this.threadsStartingEvents.notifyAll();
+            }
+            return eventProcessing;
+        };
+    }
+
+    private void waitUntilStarted(int numEvents) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (this.threadsStartingEvents){
+            long remaining;
+            while (this.threadsStartingEvents.size() < numEvents && (remaining = deadline - System.currentTimeMillis()) > 0){
+                this.threadsStartingEvents.wait(remaining);
+            }
+        }
+        assertTrue("Only " + this.threadsStartingEvents.size() + " events started", this.threadsStartingEvents.size() >= numEvents);
+    }
+}
@@ -0,0 +1,123 @@
+package eu.dissco.doec.eventProcessing;
+
+import com.google.gson.JsonObject;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryClientPool;
+import eu.dissco.doec.fakeRepository.FakeDigitalObjectRepository;
+import net.dona.doip.client.DigitalObject;
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.apache.commons.configuration2.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class ProvenanceRecordBatchWriterTest {
+
+    private static final String HANDLE_PREFIX = "20.5000.1025";
+
+    private FakeDigitalObjectRepository provenanceRepository;
+    private DigitalObjectRepositoryClientPool provenanceRepositoryClientPool;
+
+    @Before
+    public void setUp() throws Exception {
+        this.provenanceRepository = new FakeDigitalObjectRepository(HANDLE_PREFIX);
+        this.provenanceRepository.start();
+        Configuration config = new BaseConfiguration();
+        config.setProperty("provenanceRepository.url", this.provenanceRepository.getUrl());
+        config.setProperty("provenanceRepository.doipPort", this.provenanceRepository.getDoipPort());
+        config.setProperty("provenanceRepository.handlePrefix", HANDLE_PREFIX);
+        config.setProperty("provenanceRepository.username", "admin");
+        config.setProperty("provenanceRepository.password", "password");
+        config.setProperty("provenanceRepository.searchPageSize", 10);
+        this.provenanceRepositoryClientPool = DigitalObjectRepositoryClientPool.getProvenanceRepositoryClientPoolFromConfig(config);
+    }
+
+    @After
+    public void tearDown() {
+        this.provenanceRepositoryClientPool.close();
+        this.provenanceRepository.close();
+    }
+
+    @Test
+    public void testRecordsAreWrittenInBatches() throws Exception {
+        List<CompletableFuture<DigitalObject>> futures = new ArrayList<>();
+        try (ProvenanceRecordBatchWriter batchWriter = new ProvenanceRecordBatchWriter(this.provenanceRepositoryClientPool, 4, 50)){
+            for (int i = 0; i < 10; i++) {
+                futures.add(batchWriter.submit(newProvenanceRecord(i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                DigitalObject savedRecord = futures.get(i).get(5, TimeUnit.SECONDS);
+                assertEquals(i, savedRecord.attributes.getAsJsonObject("content").get("sequence").getAsInt());
+                assertNotNull(this.provenanceRepository.getStore().get(savedRecord.id));
+            }
+        }
+        assertEquals(10, this.provenanceRepository.getStore().size());
+    }
+
+    @Test
+    public void testRecordsSubmittedWhileClosingAreNotStranded() throws Exception {
+        int numSubmitters = 4;
+        ProvenanceRecordBatchWriter batchWriter = new ProvenanceRecordBatchWriter(this.provenanceRepositoryClientPool, 10, 5);
+        List<CompletableFuture<DigitalObject>> futures = new CopyOnWriteArrayList<>();
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch submittersStarted = new CountDownLatch(numSubmitters);
+        ExecutorService submitters = Executors.newFixedThreadPool(numSubmitters);
+        try {
+            for (int i = 0; i < numSubmitters; i++) {
+                submitters.execute(() -> {
+                    submittersStarted.countDown();
+                    int sequence = 0;
+                    while (!stop.get()){
+                        futures.add(batchWriter.submit(newProvenanceRecord(sequence++)));
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                });
+            }
+            submittersStarted.await();
+            Thread.sleep(50);
+            batchWriter.close();
+            //Keep submitting for a while after the writer is closed
+            Thread.sleep(20);
+        } finally {
+            stop.set(true);
+            submitters.shutdown();
+            assertTrue(submitters.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        int numWritten = 0;
+        for (CompletableFuture<DigitalObject> future:futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                numWritten++;
+            } catch (ExecutionException e){
+                //Rejected because the writer was closed
+            } catch (TimeoutException e){
+                fail("A record submitted while the batch writer was closing was never written nor rejected");
+            }
+        }
+        assertTrue(numWritten > 0);
+        assertEquals(numWritten, this.provenanceRepository.getStore().size());
+        assertTrue(batchWriter.submit(newProvenanceRecord(0)).isCompletedExceptionally());
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static DigitalObject newProvenanceRecord(int sequence) {
+        DigitalObject provenanceRecord = new DigitalObject();
+        provenanceRecord.type = "ProvenanceRecord";
+        JsonObject content = new JsonObject();
+        content.addProperty("sequence", sequence);
+        provenanceRecord.setAttribute("content", content);
+        return provenanceRecord;
+    }
+}
@@ -0,0 +1,74 @@
+package eu.dissco.doec.eventProcessing;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.dona.doip.client.DigitalObject;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReferenceDictionaryTest {
+
+    private static final String SCHEMA = "{\"type\":\"object\",\"properties\":{\"museumId\":{\"type\":\"string\"}},\"required\":[\"id\",\"museumId\"]}";
+
+    @Test
+    public void testEntryOfEventType() {
+        ReferenceDictionary.ReferenceEntry eventType = new ReferenceDictionary.ReferenceEntry(newReferenceObject("eventType", parse(SCHEMA)));
+        assertEquals("eventType", eventType.getId());
+        assertEquals("name of eventType", eventType.getName());
+
+        assertTrue("The id shouldn't be required", eventType.validateAdditionalData(parse("{\"museumId\":\"m\"}")));
+        assertFalse(eventType.validateAdditionalData(parse("{\"museumId\":1}")));
+        assertFalse(eventType.validateAdditionalData(parse("{}")));
+    }
+
+    @Test
+    public void testSchemaOfTheEntryCantBeModified() {
+        ReferenceDictionary.ReferenceEntry eventType = new ReferenceDictionary.ReferenceEntry(newReferenceObject("eventType", parse(SCHEMA)));
+        String schemaKey = eventType.getAdditionalDataSchemaKey();
+
+        JsonObject additionalDataSchema = eventType.getAdditionalDataSchema();
+        assertEquals(parse(SCHEMA), additionalDataSchema);
+        additionalDataSchema.getAsJsonObject("properties").getAsJsonObject("museumId").addProperty("type", "integer");
+
+        assertEquals(parse(SCHEMA), eventType.getAdditionalDataSchema());
+        assertEquals(schemaKey, eventType.getAdditionalDataSchemaKey());
+        assertTrue(eventType.validateAdditionalData(parse("{\"museumId\":\"m\"}")));
+    }
+
+    @Test
+    public void testSchemaKeyOfEntries() {
+        String schemaKey = new ReferenceDictionary.ReferenceEntry(newReferenceObject("eventType", parse(SCHEMA))).getAdditionalDataSchemaKey();
+        assertEquals("The key should only change when the schema changes", schemaKey,
+                new ReferenceDictionary.ReferenceEntry(newReferenceObject("eventType", parse(SCHEMA))).getAdditionalDataSchemaKey());
+
+        JsonObject modifiedSchema = parse(SCHEMA);
+        modifiedSchema.remove("required");
+        assertNotEquals(schemaKey, new ReferenceDictionary.ReferenceEntry(newReferenceObject("eventType", modifiedSchema)).getAdditionalDataSchemaKey());
+
+        ReferenceDictionary.ReferenceEntry role = new ReferenceDictionary.ReferenceEntry(newReferenceObject("role", null));
+        assertNull(role.getAdditionalDataSchema());
+        assertEquals("role", role.getAdditionalDataSchemaKey());
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static DigitalObject newReferenceObject(String id, JsonObject additionalDataSchema) {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = id;
+        JsonObject content = new JsonObject();
+        content.addProperty("name", "name of " + id);
+        if (additionalDataSchema != null){
+            content.add("additionalDataSchema", additionalDataSchema);
+        }
+        digitalObject.setAttribute("content", content);
+        return digitalObject;
+    }
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,150 @@
+package eu.dissco.doec.fakeRepository;
+
+import com.sun.net.httpserver.HttpServer;
+import net.dona.doip.server.DoipServer;
+import net.dona.doip.server.DoipServerConfig;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process stand-in of a CORDRA repository, with everything kept in memory. It listens in localhost to DOIP
+ * requests (in a random port, with a self-signed certificate for its service id) and to the calls to the CORDRA
+ * REST API that are not available in DOIP (in another random port), so DigitalObjectRepositoryClient can be used
+ * against it without changes.
+ * Example:
+ *      try (FakeDigitalObjectRepository repository = new FakeDigitalObjectRepository("20.5000.1025")){
+ *          repository.start();
+ *          repository.getFaultInjection().setLatencyMillis(5, 20);
+ *          ... digitalObjectRepository.url=repository.getUrl(), digitalObjectRepository.doipPort=repository.getDoipPort()
+ *      }
+ */
+public class FakeDigitalObjectRepository implements AutoCloseable {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final int DEFAULT_NUM_THREADS = 32;
+
+    private static final AtomicInteger httpThreadCounter = new AtomicInteger();
+
+    private final String handlePrefix;
+    private final int numThreads;
+    private final InMemoryObjectStore store;
+    private final FaultInjection faultInjection = new FaultInjection();
+    private DoipServer doipServer;
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public String getHandlePrefix() {
+        return handlePrefix;
+    }
+
+    public String getServiceId() {
+        return this.handlePrefix + "/service";
+    }
+
+    public InMemoryObjectStore getStore() {
+        return store;
+    }
+
+    public FaultInjection getFaultInjection() {
+        return faultInjection;
+    }
+
+    /**
+     * Get the base url of the REST API
+     * @return url, e.g. http://localhost:12345/
+     */
+    public String getUrl() {
+        return "http://localhost:" + this.httpServer.getAddress().getPort() + "/";
+    }
+
+    public int getDoipPort() {
+        return this.doipServer.getPort();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new FakeDigitalObjectRepository, that must be started before being used
+     * @param handlePrefix handle prefix of the repository, used for its service id and the ids of the new objects
+     */
+    public FakeDigitalObjectRepository(String handlePrefix) {
+        this(handlePrefix, DEFAULT_NUM_THREADS);
+    }
+
+    /**
+     * Create a new FakeDigitalObjectRepository, that must be started before being used
+     * @param handlePrefix handle prefix of the repository, used for its service id and the ids of the new objects
+     * @param numThreads number of threads that process the DOIP requests, and the REST ones
+     */
+    public FakeDigitalObjectRepository(String handlePrefix, int numThreads) {
+        this.handlePrefix = handlePrefix;
+        this.numThreads = numThreads;
+        this.store = new InMemoryObjectStore(handlePrefix);
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Start listening to DOIP and REST requests
+     * @throws IOException if the servers can't be started
+     */
+    public synchronized void start() throws IOException {
+        DoipServerConfig doipServerConfig = new DoipServerConfig();
+        doipServerConfig.listenAddress = "127.0.0.1";
+        doipServerConfig.port = 0;
+        doipServerConfig.numThreads = this.numThreads;
+        //The client only accepts the certificate if it was issued for the service id
+        doipServerConfig.tlsConfig = new DoipServerConfig.TlsConfig();
+        doipServerConfig.tlsConfig.id = this.getServiceId();
+        this.doipServer = new DoipServer(doipServerConfig, new FakeDoipProcessor(this.getServiceId(), this.store, this.faultInjection));
+        try {
+            this.doipServer.init();
+        } catch (Exception e){
+            throw new IOException("Error starting DOIP server of fake repository " + this.handlePrefix + ": " + e.getMessage(), e);
+        }
+
+        this.httpExecutor = Executors.newFixedThreadPool(this.numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "doec-fake-repository-http-" + httpThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.httpServer.createContext("/", new FakeRestHandler(this.store, this.faultInjection));
+        this.httpServer.setExecutor(this.httpExecutor);
+        this.httpServer.start();
+    }
+
+    /**
+     * Stop listening to requests. The objects are kept in the store
+     */
+    @Override
+    public synchronized void close() {
+        if (this.httpServer != null){
+            this.httpServer.stop(0);
+            this.httpExecutor.shutdownNow();
+            this.httpServer = null;
+        }
+        if (this.doipServer != null){
+            this.doipServer.shutdown();
+            this.doipServer = null;
+        }
+    }
+}
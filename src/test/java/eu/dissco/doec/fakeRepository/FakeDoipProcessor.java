@@ -0,0 +1,196 @@
+package eu.dissco.doec.fakeRepository;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import net.dona.doip.DoipConstants;
+import net.dona.doip.InDoipSegment;
+import net.dona.doip.client.DigitalObject;
+import net.dona.doip.server.DoipProcessor;
+import net.dona.doip.server.DoipServerRequest;
+import net.dona.doip.server.DoipServerResponse;
+import net.dona.doip.util.GsonUtility;
+import net.dona.doip.util.InDoipMessageUtil;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * DOIP processor of a fake repository. It implements the basic operations used by the DOIP client (hello,
+ * listOperations, create, retrieve, update, delete and search) over an in-memory store, with the latency and errors
+ * configured in its fault injection
+ */
+public class FakeDoipProcessor implements DoipProcessor {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private static final String[] OPERATIONS = {DoipConstants.OP_HELLO, DoipConstants.OP_LIST_OPERATIONS,
+            DoipConstants.OP_CREATE, DoipConstants.OP_RETRIEVE, DoipConstants.OP_UPDATE, DoipConstants.OP_DELETE,
+            DoipConstants.OP_SEARCH};
+
+    private final String serviceId;
+    private final InMemoryObjectStore store;
+    private final FaultInjection faultInjection;
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new FakeDoipProcessor
+     * @param serviceId id of the DOIP service
+     * @param store store of the digital objects
+     * @param faultInjection latency and errors injected in the requests
+     */
+    public FakeDoipProcessor(String serviceId, InMemoryObjectStore store, FaultInjection faultInjection) {
+        this.serviceId = serviceId;
+        this.store = store;
+        this.faultInjection = faultInjection;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    @Override
+    public void process(DoipServerRequest req, DoipServerResponse resp) throws IOException {
+        try {
+            this.faultInjection.delay();
+            if (this.faultInjection.shouldFail()){
+                throw new DigitalObjectRepositoryException(DoipConstants.STATUS_ERROR, "Injected error");
+            }
+            String operationId = req.getOperationId();
+            if (DoipConstants.OP_HELLO.equals(operationId)){
+                this.hello(resp);
+            } else if (DoipConstants.OP_LIST_OPERATIONS.equals(operationId)){
+                this.listOperations(resp);
+            } else if (DoipConstants.OP_CREATE.equals(operationId)){
+                this.create(req, resp);
+            } else if (DoipConstants.OP_RETRIEVE.equals(operationId)){
+                this.retrieve(req, resp);
+            } else if (DoipConstants.OP_UPDATE.equals(operationId)){
+                this.update(req, resp);
+            } else if (DoipConstants.OP_DELETE.equals(operationId)){
+                this.store.delete(req.getTargetId());
+                resp.setStatus(DoipConstants.STATUS_OK);
+            } else if (DoipConstants.OP_SEARCH.equals(operationId)){
+                this.search(req, resp);
+            } else{
+                throw new DigitalObjectRepositoryException(DoipConstants.STATUS_DECLINED, "Operation not supported: " + operationId);
+            }
+        } catch (DigitalObjectRepositoryException e){
+            writeError(resp, e.getStatusCode(), e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e){
+            writeError(resp, DoipConstants.STATUS_BAD_REQUEST, e.getMessage());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            writeError(resp, DoipConstants.STATUS_ERROR, "Interrupted");
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private void hello(DoipServerResponse resp) throws IOException {
+        JsonObject attributes = new JsonObject();
+        attributes.addProperty("ipAddress", "127.0.0.1");
+        attributes.addProperty("protocol", "TCP");
+        attributes.addProperty("protocolVersion", "2.0");
+        JsonObject serviceInfo = new JsonObject();
+        serviceInfo.addProperty("id", this.serviceId);
+        serviceInfo.addProperty("type", "0.TYPE/DOIPServiceInfo");
+        serviceInfo.add("attributes", attributes);
+        resp.setStatus(DoipConstants.STATUS_OK);
+        resp.writeCompactOutput(serviceInfo);
+    }
+
+    private void listOperations(DoipServerResponse resp) throws IOException {
+        JsonArray operations = new JsonArray();
+        for (String operation:OPERATIONS) {
+            operations.add(operation);
+        }
+        resp.setStatus(DoipConstants.STATUS_OK);
+        resp.writeCompactOutput(operations);
+    }
+
+    private void create(DoipServerRequest req, DoipServerResponse resp) throws IOException, DigitalObjectRepositoryException {
+        DigitalObject created = this.store.create(readDigitalObject(req), getUsername(req));
+        writeDigitalObject(resp, created);
+    }
+
+    private void retrieve(DoipServerRequest req, DoipServerResponse resp) throws IOException, DigitalObjectRepositoryException {
+        DigitalObject digitalObject = this.store.get(req.getTargetId());
+        if (digitalObject == null){
+            throw new DigitalObjectRepositoryException(DoipConstants.STATUS_NOT_FOUND, "Object not found: " + req.getTargetId());
+        }
+        writeDigitalObject(resp, digitalObject);
+    }
+
+    private void update(DoipServerRequest req, DoipServerResponse resp) throws IOException, DigitalObjectRepositoryException {
+        DigitalObject digitalObject = readDigitalObject(req);
+        digitalObject.id = req.getTargetId();
+        writeDigitalObject(resp, this.store.update(digitalObject, getUsername(req)));
+    }
+
+    private void search(DoipServerRequest req, DoipServerResponse resp) throws IOException {
+        String query = req.getAttributeAsString("query");
+        int pageNum = req.getAttribute("pageNum") != null ? req.getAttribute("pageNum").getAsInt() : 0;
+        int pageSize = req.getAttribute("pageSize") != null ? req.getAttribute("pageSize").getAsInt() : -1;
+        boolean idsOnly = "id".equals(req.getAttributeAsString("type"));
+        List<DigitalObject> matches = this.store.search(FakeQuery.parse(query), FakeQuery.parseSortFields(req.getAttributeAsString("sortFields")));
+
+        //A negative page size returns all the results
+        int from = pageSize < 0 ? 0 : (int) Math.min((long) pageNum * pageSize, matches.size());
+        int to = pageSize < 0 ? matches.size() : (int) Math.min((long) from + pageSize, matches.size());
+        Gson gson = GsonUtility.getGson();
+        JsonArray results = new JsonArray();
+        for (DigitalObject digitalObject:matches.subList(from, to)) {
+            if (idsOnly){
+                results.add(digitalObject.id);
+            } else{
+                results.add(gson.toJsonTree(digitalObject));
+            }
+        }
+        JsonObject output = new JsonObject();
+        output.addProperty("size", matches.size());
+        output.add("results", results);
+        resp.setStatus(DoipConstants.STATUS_OK);
+        resp.writeCompactOutput(output);
+    }
+
+    private static DigitalObject readDigitalObject(DoipServerRequest req) throws IOException, DigitalObjectRepositoryException {
+        InDoipSegment segment = InDoipMessageUtil.getFirstSegment(req.getInput());
+        if (segment == null || !segment.isJson()){
+            throw new DigitalObjectRepositoryException(DoipConstants.STATUS_BAD_REQUEST, "Missing digital object in input");
+        }
+        return GsonUtility.getGson().fromJson(segment.getJson(), DigitalObject.class);
+    }
+
+    private static void writeDigitalObject(DoipServerResponse resp, DigitalObject digitalObject) throws IOException {
+        resp.setStatus(DoipConstants.STATUS_OK);
+        resp.writeCompactOutput(GsonUtility.getGson().toJsonTree(digitalObject));
+    }
+
+    private static void writeError(DoipServerResponse resp, String status, String message) throws IOException {
+        JsonObject output = new JsonObject();
+        output.addProperty(DoipConstants.MESSAGE_ATT, message);
+        resp.setStatus(status != null ? status : DoipConstants.STATUS_ERROR);
+        resp.writeCompactOutput(output);
+    }
+
+    private static String getUsername(DoipServerRequest req) {
+        JsonElement authentication = req.getAuthentication();
+        if (authentication != null && authentication.isJsonObject() && authentication.getAsJsonObject().has("username")){
+            return authentication.getAsJsonObject().get("username").getAsString();
+        }
+        return req.getClientId();
+    }
+}
@@ -0,0 +1,360 @@
+package eu.dissco.doec.fakeRepository;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.dona.doip.client.DigitalObject;
+import net.dona.doip.client.SortField;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Query in the subset of the Lucene Query Syntax used by the controller, evaluated in memory against digital objects:
+ * field:value terms (values can be quoted or escaped with backslashes, * matches any value and a trailing * any
+ * prefix), inclusive and exclusive ranges ([a TO b], {a TO b}, with * for open bounds), AND, OR, NOT, - and
+ * parentheses. Terms without an operator between them are combined with AND.
+ * Fields are id, type, metadata/... (attributes of the metadata) or JSON pointers into the content (e.g. /entityId).
+ * Values are compared as numbers if both of them are numbers and as strings otherwise. A term on an array matches if
+ * any of its elements matches
+ */
+public final class FakeQuery {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final String query;
+    private final Predicate<DigitalObject> predicate;
+    private int position = 0;
+    private boolean wildcard = false;
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    private FakeQuery(String query) {
+        this.query = query;
+        this.predicate = this.parseOr();
+        this.skipWhitespace();
+        if (this.position < this.query.length()){
+            throw this.error("Unexpected " + this.query.charAt(this.position));
+        }
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Parse a query
+     * @param query query using the subset of the Lucene Query Syntax
+     * @return query parsed
+     * @throws IllegalArgumentException if the query can't be parsed
+     */
+    public static FakeQuery parse(String query) {
+        if (StringUtils.isBlank(query)){
+            throw new IllegalArgumentException("Missing query");
+        }
+        return new FakeQuery(query);
+    }
+
+    /**
+     * Check if a digital object matches the query
+     * @param digitalObject digital object
+     * @return true if it matches
+     */
+    public boolean matches(DigitalObject digitalObject) {
+        return this.predicate.test(digitalObject);
+    }
+
+    /**
+     * Parse the sort fields as sent by the DOIP and REST clients, e.g. "/timestamp DESC,/entityId"
+     * @param sortFields sort fields separated by commas
+     * @return list of sort fields, empty if there are none
+     */
+    public static List<SortField> parseSortFields(String sortFields) {
+        if (StringUtils.isBlank(sortFields)){
+            return Collections.emptyList();
+        }
+        List<SortField> fields = new ArrayList<>();
+        for (String sortField:sortFields.split(",")) {
+            String[] nameAndOrder = sortField.trim().split("\\s+");
+            if (StringUtils.isNotBlank(nameAndOrder[0])){
+                fields.add(new SortField(nameAndOrder[0], nameAndOrder.length > 1 && nameAndOrder[1].equalsIgnoreCase("DESC")));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Get the comparator that sorts digital objects by the sort fields. Objects without a value are sorted last
+     * @param sortFields sort fields
+     * @return comparator
+     */
+    public static Comparator<DigitalObject> getComparator(List<SortField> sortFields) {
+        Comparator<DigitalObject> comparator = (left, right) -> 0;
+        for (SortField sortField:sortFields) {
+            Comparator<String> valueComparator = FakeQuery::compareValues;
+            if (sortField.isReverse()){
+                valueComparator = valueComparator.reversed();
+            }
+            comparator = comparator.thenComparing(digitalObject -> getFirstFieldValue(digitalObject, sortField.getName()),
+                    Comparator.nullsLast(valueComparator));
+        }
+        return comparator;
+    }
+
+    /**
+     * Get the values of a field of a digital object
+     * @param digitalObject digital object
+     * @param field id, type, metadata/... or JSON pointer into the content
+     * @return primitive values found, empty if the field is not found
+     */
+    public static List<String> getFieldValues(DigitalObject digitalObject, String field) {
+        List<String> values = new ArrayList<>();
+        if (field.equals("id")){
+            if (digitalObject.id != null) values.add(digitalObject.id);
+        } else if (field.equals("type")){
+            if (digitalObject.type != null) values.add(digitalObject.type);
+        } else if (digitalObject.attributes != null){
+            JsonElement root;
+            String pointer;
+            if (field.startsWith("metadata/") || field.startsWith("/metadata/")){
+                root = digitalObject.attributes.get("metadata");
+                pointer = field.substring(field.indexOf("metadata/") + "metadata".length());
+            } else{
+                root = digitalObject.attributes.get("content");
+                pointer = field.startsWith("/") ? field : "/" + field;
+            }
+            if (root != null){
+                addPointerValues(root, pointer.substring(1).split("/", -1), 0, values);
+            }
+        }
+        return values;
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private Predicate<DigitalObject> parseOr() {
+        Predicate<DigitalObject> predicate = this.parseAnd();
+        while (this.consumeKeyword("OR")){
+            predicate = predicate.or(this.parseAnd());
+        }
+        return predicate;
+    }
+
+    private Predicate<DigitalObject> parseAnd() {
+        Predicate<DigitalObject> predicate = this.parseUnary();
+        while (true){
+            this.skipWhitespace();
+            if (this.position >= this.query.length() || this.query.charAt(this.position) == ')' || this.isKeyword("OR")){
+                return predicate;
+            }
+            this.consumeKeyword("AND");
+            predicate = predicate.and(this.parseUnary());
+        }
+    }
+
+    private Predicate<DigitalObject> parseUnary() {
+        this.skipWhitespace();
+        if (this.consumeKeyword("NOT") || this.consume('-')){
+            return this.parseUnary().negate();
+        }
+        this.consume('+');
+        if (this.consume('(')){
+            Predicate<DigitalObject> predicate = this.parseOr();
+            this.skipWhitespace();
+            if (!this.consume(')')){
+                throw this.error("Missing )");
+            }
+            return predicate;
+        }
+        return this.parseTerm();
+    }
+
+    private Predicate<DigitalObject> parseTerm() {
+        String field = this.readValue(":");
+        if (!this.consume(':')){
+            throw this.error("Missing field in term " + field);
+        }
+        if (this.consume('[') || this.consume('{')){
+            boolean includeLower = this.query.charAt(this.position - 1) == '[';
+            this.skipWhitespace();
+            String lower = this.readValue("]}");
+            if (!this.consumeKeyword("TO")){
+                throw this.error("Missing TO in range");
+            }
+            this.skipWhitespace();
+            String upper = this.readValue("]}");
+            boolean includeUpper;
+            if (this.consume(']')){
+                includeUpper = true;
+            } else if (this.consume('}')){
+                includeUpper = false;
+            } else{
+                throw this.error("Missing end of range");
+            }
+            return digitalObject -> getFieldValues(digitalObject, field).stream().anyMatch(value ->
+                    isAboveLower(value, lower, includeLower) && isBelowUpper(value, upper, includeUpper));
+        }
+        String value = this.readValue("");
+        if (this.wildcard && field.equals("*") && value.equals("*")){
+            return digitalObject -> true;
+        }
+        if (this.wildcard && value.equals("*")){
+            return digitalObject -> !getFieldValues(digitalObject, field).isEmpty();
+        }
+        if (this.wildcard){
+            String prefix = value.substring(0, value.length() - 1);
+            return digitalObject -> getFieldValues(digitalObject, field).stream().anyMatch(fieldValue -> fieldValue.startsWith(prefix));
+        }
+        return digitalObject -> getFieldValues(digitalObject, field).stream().anyMatch(fieldValue -> compareValues(fieldValue, value) == 0);
+    }
+
+    /**
+     * Read a quoted or unquoted value, removing the escapes. Whether an unquoted value ends with a wildcard (an
+     * unescaped *) is kept in the attribute wildcard
+     * @param stopChars characters that end an unquoted value, besides whitespace and )
+     * @return value
+     */
+    private String readValue(String stopChars) {
+        StringBuilder value = new StringBuilder();
+        this.wildcard = false;
+        if (this.consume('"')){
+            while (this.position < this.query.length() && this.query.charAt(this.position) != '"'){
+                char c = this.query.charAt(this.position++);
+                if (c == '\\' && this.position < this.query.length()){
+                    c = this.query.charAt(this.position++);
+                }
+                value.append(c);
+            }
+            if (!this.consume('"')){
+                throw this.error("Missing closing quote");
+            }
+            return value.toString();
+        }
+        while (this.position < this.query.length()){
+            char c = this.query.charAt(this.position);
+            if (Character.isWhitespace(c) || c == ')' || stopChars.indexOf(c) >= 0){
+                break;
+            }
+            this.position++;
+            this.wildcard = c == '*';
+            if (c == '\\' && this.position < this.query.length()){
+                c = this.query.charAt(this.position++);
+            }
+            value.append(c);
+        }
+        if (value.length() == 0){
+            throw this.error("Missing value");
+        }
+        return value.toString();
+    }
+
+    private boolean isKeyword(String keyword) {
+        int end = this.position + keyword.length();
+        return this.query.startsWith(keyword, this.position)
+                && (end == this.query.length() || Character.isWhitespace(this.query.charAt(end)) || this.query.charAt(end) == '(');
+    }
+
+    private boolean consumeKeyword(String keyword) {
+        this.skipWhitespace();
+        if (this.isKeyword(keyword)){
+            this.position += keyword.length();
+            return true;
+        }
+        return false;
+    }
+
+    private boolean consume(char c) {
+        if (this.position < this.query.length() && this.query.charAt(this.position) == c){
+            this.position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.query.length() && Character.isWhitespace(this.query.charAt(this.position))){
+            this.position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + this.position + " of query " + this.query);
+    }
+
+    private static boolean isAboveLower(String value, String lower, boolean inclusive) {
+        if (lower.equals("*")){
+            return true;
+        }
+        int comparison = compareValues(value, lower);
+        return inclusive ? comparison >= 0 : comparison > 0;
+    }
+
+    private static boolean isBelowUpper(String value, String upper, boolean inclusive) {
+        if (upper.equals("*")){
+            return true;
+        }
+        int comparison = compareValues(value, upper);
+        return inclusive ? comparison <= 0 : comparison < 0;
+    }
+
+    private static int compareValues(String left, String right) {
+        try {
+            return Double.compare(Double.parseDouble(left), Double.parseDouble(right));
+        } catch (NumberFormatException e){
+            return left.compareTo(right);
+        }
+    }
+
+    private static String getFirstFieldValue(DigitalObject digitalObject, String field) {
+        List<String> values = getFieldValues(digitalObject, field);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Add the primitive values found at a JSON pointer. Arrays found on the way are walked element by element
+     * @param jsonElement current element
+     * @param tokens tokens of the JSON pointer
+     * @param index index of the next token
+     * @param values values found
+     */
+    private static void addPointerValues(JsonElement jsonElement, String[] tokens, int index, List<String> values) {
+        if (jsonElement == null || jsonElement.isJsonNull()){
+            return;
+        }
+        if (jsonElement.isJsonArray()){
+            JsonArray array = jsonElement.getAsJsonArray();
+            String token = index < tokens.length ? tokens[index] : "";
+            if (StringUtils.isNumeric(token)){
+                int position = Integer.parseInt(token);
+                if (position < array.size()){
+                    addPointerValues(array.get(position), tokens, index + 1, values);
+                }
+                return;
+            }
+            for (JsonElement element:array) {
+                addPointerValues(element, tokens, token.equals("_") ? index + 1 : index, values);
+            }
+        } else if (index == tokens.length || (index == tokens.length - 1 && tokens[index].isEmpty())){
+            if (jsonElement.isJsonPrimitive()){
+                values.add(jsonElement.getAsString());
+            }
+        } else if (jsonElement.isJsonObject()){
+            JsonObject jsonObject = jsonElement.getAsJsonObject();
+            String token = tokens[index].replace("~1", "/").replace("~0", "~");
+            addPointerValues(jsonObject.get(token), tokens, index + 1, values);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package eu.dissco.doec.fakeRepository;
+
+import com.google.common.io.CharStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import eu.dissco.doec.utils.JsonCodec;
+import net.dona.doip.DoipConstants;
+import net.dona.doip.client.DigitalObject;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handler of the calls to the CORDRA REST API done by the clients of a fake repository: search of objects
+ * (GET or POST /objects/, with paging, sorting and filtering of the fields returned), versions of an object
+ * (GET and POST /versions/) and batch upload (POST /batchUpload)
+ */
+public class FakeRestHandler implements HttpHandler {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final InMemoryObjectStore store;
+    private final FaultInjection faultInjection;
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new FakeRestHandler
+     * @param store store of the digital objects
+     * @param faultInjection latency and errors injected in the requests
+     */
+    public FakeRestHandler(InMemoryObjectStore store, FaultInjection faultInjection) {
+        this.store = store;
+        this.faultInjection = faultInjection;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            String body = CharStreams.toString(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+            this.faultInjection.delay();
+            if (this.faultInjection.shouldFail()){
+                writeError(exchange, 500, "Injected error");
+                return;
+            }
+            Map<String, String> params = parseForm(exchange.getRequestURI().getRawQuery());
+            if ("POST".equals(exchange.getRequestMethod()) && !exchange.getRequestURI().getPath().endsWith("batchUpload")){
+                params.putAll(parseForm(body));
+            }
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            if (path.equals("/objects/") && (method.equals("GET") || method.equals("POST"))){
+                writeJson(exchange, 200, this.search(params));
+            } else if (path.equals("/versions/") && method.equals("GET")){
+                writeJson(exchange, 200, JsonCodec.getGson().toJsonTree(this.store.getVersions(params.get("objectId"))));
+            } else if (path.equals("/versions/") && method.equals("POST")){
+                String username = getUsername(exchange);
+                writeJson(exchange, 200, JsonCodec.getGson().toJsonTree(this.store.publishVersion(params.get("objectId"), username)));
+            } else if (path.equals("/batchUpload") && method.equals("POST")){
+                writeJson(exchange, 200, this.batchUpload(JsonParser.parseString(body).getAsJsonArray(), getUsername(exchange)));
+            } else{
+                writeError(exchange, 404, "Not found: " + method + " " + path);
+            }
+        } catch (DigitalObjectRepositoryException e){
+            writeError(exchange, getHttpStatus(e.getStatusCode()), e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e){
+            writeError(exchange, 400, e.getMessage());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            writeError(exchange, 500, "Interrupted");
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private JsonObject search(Map<String, String> params) {
+        int pageNum = params.containsKey("pageNum") ? Integer.parseInt(params.get("pageNum")) : 0;
+        int pageSize = params.containsKey("pageSize") ? Integer.parseInt(params.get("pageSize")) : -1;
+        List<DigitalObject> matches = this.store.search(FakeQuery.parse(params.get("query")), FakeQuery.parseSortFields(params.get("sortFields")));
+        JsonArray filter = params.containsKey("filter") ? JsonParser.parseString(params.get("filter")).getAsJsonArray() : null;
+
+        //A negative page size returns all the results
+        int from = pageSize < 0 ? 0 : (int) Math.min((long) pageNum * pageSize, matches.size());
+        int to = pageSize < 0 ? matches.size() : (int) Math.min((long) from + pageSize, matches.size());
+        JsonArray results = new JsonArray();
+        for (DigitalObject digitalObject:matches.subList(from, to)) {
+            JsonObject cordraObject = toCordraObject(digitalObject);
+            results.add(filter != null ? project(cordraObject, filter) : cordraObject);
+        }
+        JsonObject output = new JsonObject();
+        output.addProperty("pageNum", pageNum);
+        output.addProperty("pageSize", pageSize);
+        output.addProperty("size", matches.size());
+        output.add("results", results);
+        return output;
+    }
+
+    private JsonObject batchUpload(JsonArray batch, String username) {
+        JsonArray results = new JsonArray();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonObject cordraObject = batch.get(i).getAsJsonObject();
+            DigitalObject digitalObject = new DigitalObject();
+            digitalObject.id = cordraObject.has("id") ? cordraObject.get("id").getAsString() : null;
+            digitalObject.type = cordraObject.get("type").getAsString();
+            digitalObject.setAttribute("content", cordraObject.get("content"));
+            JsonObject result = new JsonObject();
+            result.addProperty("position", i);
+            try {
+                result.add("response", toCordraObject(this.store.create(digitalObject, username)));
+                result.addProperty("responseCode", 200);
+            } catch (DigitalObjectRepositoryException e){
+                JsonObject response = new JsonObject();
+                response.addProperty("message", e.getMessage());
+                result.add("response", response);
+                result.addProperty("responseCode", getHttpStatus(e.getStatusCode()));
+            }
+            results.add(result);
+        }
+        JsonObject output = new JsonObject();
+        output.add("results", results);
+        return output;
+    }
+
+    private static JsonObject toCordraObject(DigitalObject digitalObject) {
+        JsonObject cordraObject = new JsonObject();
+        cordraObject.addProperty("id", digitalObject.id);
+        cordraObject.addProperty("type", digitalObject.type);
+        for (Map.Entry<String, JsonElement> attribute:digitalObject.attributes.entrySet()) {
+            cordraObject.add(attribute.getKey(), attribute.getValue());
+        }
+        return cordraObject;
+    }
+
+    /**
+     * Keep only the fields of a CORDRA object that are in the filter, as the REST API does
+     * @param cordraObject CORDRA object
+     * @param filter JSON pointers of the fields to keep
+     * @return new object with the fields of the filter found
+     */
+    private static JsonObject project(JsonObject cordraObject, JsonArray filter) {
+        JsonObject projection = new JsonObject();
+        for (JsonElement pointer:filter) {
+            String[] tokens = pointer.getAsString().substring(1).split("/");
+            JsonElement source = cordraObject;
+            JsonObject target = projection;
+            for (int i = 0; i < tokens.length && source != null && source.isJsonObject(); i++) {
+                String token = tokens[i].replace("~1", "/").replace("~0", "~");
+                source = source.getAsJsonObject().get(token);
+                if (source == null){
+                    break;
+                }
+                if (i == tokens.length - 1){
+                    target.add(token, source.deepCopy());
+                } else{
+                    if (!target.has(token)){
+                        target.add(token, new JsonObject());
+                    }
+                    target = target.getAsJsonObject(token);
+                }
+            }
+        }
+        return projection;
+    }
+
+    private static Map<String, String> parseForm(String form) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (StringUtils.isNotBlank(form)){
+            for (String param:form.split("&")) {
+                int separator = param.indexOf('=');
+                String name = separator >= 0 ? param.substring(0, separator) : param;
+                String value = separator >= 0 ? param.substring(separator + 1) : "";
+                params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static String getUsername(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.startsWith("Basic ")){
+            String credentials = new String(Base64.getDecoder().decode(authorization.substring("Basic ".length())), StandardCharsets.UTF_8);
+            return StringUtils.substringBefore(credentials, ":");
+        }
+        return null;
+    }
+
+    private static int getHttpStatus(String doipStatus) {
+        if (DoipConstants.STATUS_NOT_FOUND.equals(doipStatus)){
+            return 404;
+        } else if (DoipConstants.STATUS_CONFLICT.equals(doipStatus)){
+            return 409;
+        } else if (DoipConstants.STATUS_BAD_REQUEST.equals(doipStatus)){
+            return 400;
+        }
+        return 500;
+    }
+
+    private static void writeError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+        writeJson(exchange, statusCode, error);
+    }
+
+    private static void writeJson(HttpExchange exchange, int statusCode, JsonElement json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()){
+            outputStream.write(bytes);
+        }
+    }
+}
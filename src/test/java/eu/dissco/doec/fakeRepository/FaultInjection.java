@@ -0,0 +1,98 @@
+package eu.dissco.doec.fakeRepository;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and errors injected in the requests received by a fake repository. The values can be changed while the
+ * repository is running
+ */
+public class FaultInjection {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private volatile long minLatencyMillis = 0;
+    private volatile long maxLatencyMillis = 0;
+    private volatile double errorRate = 0;
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public long getMinLatencyMillis() {
+        return minLatencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    /**
+     * Set the latency added to every request. The latency of each request is chosen randomly between the minimum
+     * and the maximum
+     * @param minLatencyMillis minimum latency in milliseconds
+     * @param maxLatencyMillis maximum latency in milliseconds
+     */
+    public void setLatencyMillis(long minLatencyMillis, long maxLatencyMillis) {
+        if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis){
+            throw new IllegalArgumentException("Invalid latency range " + minLatencyMillis + "-" + maxLatencyMillis);
+        }
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Set the fraction of requests that fail with an internal error
+     * @param errorRate fraction between 0 and 1
+     */
+    public void setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1){
+            throw new IllegalArgumentException("Invalid error rate " + errorRate);
+        }
+        this.errorRate = errorRate;
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Wait for the latency of a request
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void delay() throws InterruptedException {
+        long min = this.minLatencyMillis;
+        long max = this.maxLatencyMillis;
+        long latencyMillis = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if (latencyMillis > 0){
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        }
+    }
+
+    /**
+     * Decide if a request must fail, counting the errors injected
+     * @return true if the request must fail
+     */
+    public boolean shouldFail() {
+        double rate = this.errorRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate){
+            this.injectedErrors.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+}
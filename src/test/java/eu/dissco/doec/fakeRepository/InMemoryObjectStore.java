@@ -0,0 +1,247 @@
+package eu.dissco.doec.fakeRepository;
+
+import com.google.gson.JsonObject;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import net.cnri.cordra.api.VersionInfo;
+import net.dona.doip.DoipConstants;
+import net.dona.doip.client.DigitalObject;
+import net.dona.doip.client.SortField;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory store of the digital objects of a fake repository. Objects have the same structure as the ones returned
+ * by CORDRA: their attributes are the content and the metadata (createdOn, createdBy, modifiedOn, modifiedBy and
+ * txnId). Published versions are kept apart, so they can be retrieved by their id but they are not found by searches.
+ * The stored objects are never modified, every change replaces them
+ */
+public class InMemoryObjectStore {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    private final String handlePrefix;
+    private final Map<String, DigitalObject> objects = new LinkedHashMap<>();
+    private final Map<String, DigitalObject> versions = new HashMap<>();
+    private final Map<String, List<VersionInfo>> versionInfos = new HashMap<>();
+    private final List<Consumer<DigitalObject>> createListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong txnCounter = new AtomicLong();
+
+
+    /***********************/
+    /* GETTERS AND SETTERS */
+    /***********************/
+
+    public String getHandlePrefix() {
+        return handlePrefix;
+    }
+
+    public synchronized int size() {
+        return this.objects.size();
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new InMemoryObjectStore
+     * @param handlePrefix prefix of the ids generated for the new objects
+     */
+    public InMemoryObjectStore(String handlePrefix) {
+        this.handlePrefix = handlePrefix;
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Add a listener called (in the thread that creates the object) every time an object is created
+     * @param listener listener that receives a copy of the created object
+     */
+    public void addCreateListener(Consumer<DigitalObject> listener) {
+        this.createListeners.add(listener);
+    }
+
+    /**
+     * Create a digital object
+     * @param digitalObject digital object to be created. If it has no id, a new one is generated
+     * @param userId id of the user that creates the object
+     * @return copy of the object created, with its id and metadata
+     * @throws DigitalObjectRepositoryException if an object with the same id already exists
+     */
+    public DigitalObject create(DigitalObject digitalObject, String userId) throws DigitalObjectRepositoryException {
+        DigitalObject created;
+        synchronized (this){
+            String id = StringUtils.isNotBlank(digitalObject.id) ? digitalObject.id : this.newId();
+            if (this.objects.containsKey(id)){
+                throw new DigitalObjectRepositoryException(DoipConstants.STATUS_CONFLICT, "Object already exists: " + id);
+            }
+            long now = System.currentTimeMillis();
+            JsonObject metadata = new JsonObject();
+            metadata.addProperty("createdOn", now);
+            metadata.addProperty("createdBy", userId);
+            metadata.addProperty("modifiedOn", now);
+            metadata.addProperty("modifiedBy", userId);
+            metadata.addProperty("txnId", this.txnCounter.incrementAndGet());
+            created = newDigitalObject(id, digitalObject.type, getContent(digitalObject), metadata);
+            this.objects.put(id, created);
+        }
+        for (Consumer<DigitalObject> listener:this.createListeners) {
+            listener.accept(copy(created));
+        }
+        return copy(created);
+    }
+
+    /**
+     * Update the content of a digital object
+     * @param digitalObject digital object with the id of the object and its new content
+     * @param userId id of the user that updates the object
+     * @return copy of the object updated
+     * @throws DigitalObjectRepositoryException if the object doesn't exist
+     */
+    public synchronized DigitalObject update(DigitalObject digitalObject, String userId) throws DigitalObjectRepositoryException {
+        DigitalObject existing = this.objects.get(digitalObject.id);
+        if (existing == null){
+            throw new DigitalObjectRepositoryException(DoipConstants.STATUS_NOT_FOUND, "Object not found: " + digitalObject.id);
+        }
+        JsonObject metadata = existing.attributes.getAsJsonObject("metadata").deepCopy();
+        metadata.addProperty("modifiedOn", Math.max(System.currentTimeMillis(), metadata.get("modifiedOn").getAsLong()));
+        metadata.addProperty("modifiedBy", userId);
+        metadata.addProperty("txnId", this.txnCounter.incrementAndGet());
+        String type = digitalObject.type != null ? digitalObject.type : existing.type;
+        DigitalObject updated = newDigitalObject(existing.id, type, getContent(digitalObject), metadata);
+        this.objects.put(existing.id, updated);
+        return copy(updated);
+    }
+
+    /**
+     * Delete a digital object. Its published versions are kept
+     * @param id id of the object
+     * @throws DigitalObjectRepositoryException if the object doesn't exist
+     */
+    public synchronized void delete(String id) throws DigitalObjectRepositoryException {
+        if (this.objects.remove(id) == null){
+            throw new DigitalObjectRepositoryException(DoipConstants.STATUS_NOT_FOUND, "Object not found: " + id);
+        }
+    }
+
+    /**
+     * Get a digital object or a published version
+     * @param id id of the object or the version
+     * @return copy of the object, or null if it doesn't exist
+     */
+    public synchronized DigitalObject get(String id) {
+        DigitalObject digitalObject = this.objects.get(id);
+        if (digitalObject == null){
+            digitalObject = this.versions.get(id);
+        }
+        return digitalObject != null ? copy(digitalObject) : null;
+    }
+
+    /**
+     * Search the digital objects that match a query
+     * @param query query
+     * @param sortFields fields used to sort the results. If empty, the objects are returned in order of creation
+     * @return objects that match the query. They are the stored objects, so they must not be modified
+     */
+    public List<DigitalObject> search(FakeQuery query, List<SortField> sortFields) {
+        List<DigitalObject> snapshot;
+        synchronized (this){
+            snapshot = new ArrayList<>(this.objects.values());
+        }
+        List<DigitalObject> results = snapshot.stream().filter(query::matches).collect(Collectors.toList());
+        if (!sortFields.isEmpty()){
+            results.sort(FakeQuery.getComparator(sortFields));
+        }
+        return results;
+    }
+
+    /**
+     * Publish a version of a digital object, as a copy of its current content
+     * @param id id of the object
+     * @param userId id of the user that publishes the version
+     * @return information of the published version
+     * @throws DigitalObjectRepositoryException if the object doesn't exist
+     */
+    public synchronized VersionInfo publishVersion(String id, String userId) throws DigitalObjectRepositoryException {
+        DigitalObject existing = this.objects.get(id);
+        if (existing == null){
+            throw new DigitalObjectRepositoryException(DoipConstants.STATUS_NOT_FOUND, "Object not found: " + id);
+        }
+        long now = System.currentTimeMillis();
+        VersionInfo versionInfo = new VersionInfo();
+        versionInfo.id = this.newId();
+        versionInfo.type = existing.type;
+        versionInfo.versionOf = id;
+        versionInfo.publishedBy = userId;
+        versionInfo.publishedOn = now;
+        versionInfo.modifiedOn = existing.attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong();
+        versionInfo.isTip = false;
+
+        JsonObject metadata = existing.attributes.getAsJsonObject("metadata").deepCopy();
+        metadata.addProperty("versionOf", id);
+        metadata.addProperty("publishedBy", userId);
+        metadata.addProperty("publishedOn", now);
+        this.versions.put(versionInfo.id, newDigitalObject(versionInfo.id, existing.type, existing.attributes.getAsJsonObject("content"), metadata));
+        this.versionInfos.computeIfAbsent(id, versionOf -> new ArrayList<>()).add(versionInfo);
+        return versionInfo;
+    }
+
+    /**
+     * Get the versions of a digital object: its published versions and, if it still exists, the object itself
+     * @param id id of the object
+     * @return versions of the object, empty if it has none
+     */
+    public synchronized List<VersionInfo> getVersions(String id) {
+        List<VersionInfo> versions = new ArrayList<>(this.versionInfos.getOrDefault(id, Collections.emptyList()));
+        DigitalObject existing = this.objects.get(id);
+        if (existing != null){
+            VersionInfo tip = new VersionInfo();
+            tip.id = id;
+            tip.type = existing.type;
+            tip.versionOf = id;
+            tip.modifiedOn = existing.attributes.getAsJsonObject("metadata").get("modifiedOn").getAsLong();
+            tip.isTip = true;
+            versions.add(tip);
+        }
+        return versions;
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private String newId() {
+        return this.handlePrefix + "/" + UUID.randomUUID().toString().replace("-", "").substring(0, 20);
+    }
+
+    private static JsonObject getContent(DigitalObject digitalObject) {
+        return digitalObject.attributes != null && digitalObject.attributes.has("content") && digitalObject.attributes.get("content").isJsonObject() ?
+                digitalObject.attributes.getAsJsonObject("content") : new JsonObject();
+    }
+
+    private static DigitalObject newDigitalObject(String id, String type, JsonObject content, JsonObject metadata) {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = id;
+        digitalObject.type = type;
+        digitalObject.setAttribute("content", content.deepCopy());
+        digitalObject.setAttribute("metadata", metadata);
+        return digitalObject;
+    }
+
+    private static DigitalObject copy(DigitalObject digitalObject) {
+        return newDigitalObject(digitalObject.id, digitalObject.type, digitalObject.attributes.getAsJsonObject("content"),
+                digitalObject.attributes.getAsJsonObject("metadata").deepCopy());
+    }
+}
@@ -0,0 +1,535 @@
+package eu.dissco.doec.loadTesting;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import eu.dissco.doec.DigitalObjectEventController;
+import eu.dissco.doec.DigitalObjectEventControllerRegistry;
+import eu.dissco.doec.digitalObjectRepository.DigitalObjectRepositoryException;
+import eu.dissco.doec.fakeRepository.FakeDigitalObjectRepository;
+import eu.dissco.doec.fakeRepository.InMemoryObjectStore;
+import eu.dissco.doec.utils.JsonCodec;
+import net.dona.doip.client.DigitalObject;
+import org.apache.commons.configuration2.BaseConfiguration;
+import org.apache.commons.configuration2.Configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load test of DigitalObjectEventController against two fake repositories (digital objects and
+ * provenance) running in the same process. Create, update, delete and custom events are fired at a target rate,
+ * simulating what CORDRA does: the hook of the controller is called and then the operation is stored in the digital
+ * object repository. The end-to-end latency of every event is measured until its provenance record is created in the
+ * provenance repository.
+ * It is run with key=value arguments, e.g.
+ *      loadTest.rate=200 loadTest.durationSeconds=60 loadTest.latency.maxMillis=20 eventProcessing.threads=8
+ * Arguments that don't start with loadTest. override the configuration of the controller (see config_template.properties)
+ * The controller is got from the DigitalObjectEventControllerRegistry before every event, as the CORDRA hooks do, so
+ * the reload of the controller when its configuration file changes can be tested with loadTest.reloadIntervalSeconds
+ */
+public class EventLoadGenerator {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final double DEFAULT_RATE = 50;
+    public static final long DEFAULT_DURATION_SECONDS = 30;
+    public static final int DEFAULT_MIX_CREATE = 4;
+    public static final int DEFAULT_MIX_UPDATE = 4;
+    public static final int DEFAULT_MIX_DELETE = 1;
+    public static final int DEFAULT_MIX_CUSTOM = 1;
+    public static final int DEFAULT_NUM_THREADS = 16;
+    public static final long DEFAULT_DRAIN_TIMEOUT_SECONDS = 60;
+    public static final long DEFAULT_RELOAD_INTERVAL_SECONDS = 0;
+
+    private static final String DIGITAL_OBJECT_HANDLE_PREFIX = "20.5000.1025";
+    private static final String PROVENANCE_HANDLE_PREFIX = "prov.994";
+    private static final String USERNAME = "admin";
+    private static final String PASSWORD = "loadTest";
+    private static final String CUSTOM_EVENT_TYPE = "DepositInMuseum";
+    private static final String ROLE = "Scientist";
+
+    private final Configuration config;
+    private final Map<EVENT_TYPE, Integer> mix = new EnumMap<>(EVENT_TYPE.class);
+    private final LoadTestStatistics statistics = new LoadTestStatistics();
+    //Start times of the events whose provenance record has not been written yet, by entity id and event type id
+    private final Map<String, Long> pendingRecords = new ConcurrentHashMap<>();
+    //Objects without events pending, so a new event over an object is only fired once the provenance record of the
+    //previous one is written (e.g. an object is never deleted before the record of its creation is written)
+    private final BlockingQueue<String> availableObjectIds = new LinkedBlockingQueue<>();
+    private final AtomicInteger objectCounter = new AtomicInteger();
+    private FakeDigitalObjectRepository digitalObjectRepository;
+    private FakeDigitalObjectRepository provenanceRepository;
+    private Path controllerConfigPath;
+    private Map<EVENT_TYPE, String> eventTypeIds;
+    private String agentId;
+
+
+    /**************/
+    /* ENUM TYPES */
+    /**************/
+
+    public enum EVENT_TYPE {
+        CREATE,
+        UPDATE,
+        DELETE,
+        CUSTOM
+    }
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new EventLoadGenerator
+     * @param config configuration of the load test (loadTest.*) and overrides of the configuration of the controller
+     */
+    public EventLoadGenerator(Configuration config) {
+        this.config = config;
+        this.mix.put(EVENT_TYPE.CREATE, config.getInt("loadTest.mix.create", DEFAULT_MIX_CREATE));
+        this.mix.put(EVENT_TYPE.UPDATE, config.getInt("loadTest.mix.update", DEFAULT_MIX_UPDATE));
+        this.mix.put(EVENT_TYPE.DELETE, config.getInt("loadTest.mix.delete", DEFAULT_MIX_DELETE));
+        this.mix.put(EVENT_TYPE.CUSTOM, config.getInt("loadTest.mix.custom", DEFAULT_MIX_CUSTOM));
+        if (this.mix.values().stream().mapToInt(Integer::intValue).sum() <= 0){
+            throw new IllegalArgumentException("The mix of events must have at least one positive weight");
+        }
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Run the load test
+     * @return json object with the report of the load test
+     * @throws Exception
+     */
+    public JsonObject run() throws Exception {
+        Path workDirectory = Files.createTempDirectory("doec-load-test");
+        try {
+            this.startRepositories();
+            this.controllerConfigPath = this.writeControllerConfig(workDirectory);
+            this.getController();
+            this.statistics.start(LoadTestStatistics.DEFAULT_SAMPLING_INTERVAL_MILLIS);
+            ScheduledExecutorService reloader = this.startReloadingController();
+            try {
+                this.fireEvents();
+            } finally {
+                if (reloader != null) reloader.shutdownNow();
+            }
+            this.statistics.firingFinished();
+            this.waitForPendingRecords(TimeUnit.SECONDS.toNanos(this.config.getLong("loadTest.drainTimeoutSeconds", DEFAULT_DRAIN_TIMEOUT_SECONDS)));
+            DigitalObjectEventControllerRegistry.shutdown(this.controllerConfigPath.toString());
+            this.controllerConfigPath = null;
+            this.statistics.stop();
+            return this.statistics.getReport(this.countPendingRecords(),
+                    this.digitalObjectRepository.getFaultInjection().getInjectedErrors() + this.provenanceRepository.getFaultInjection().getInjectedErrors());
+        } finally {
+            if (this.controllerConfigPath != null) DigitalObjectEventControllerRegistry.shutdown(this.controllerConfigPath.toString());
+            if (this.digitalObjectRepository != null) this.digitalObjectRepository.close();
+            if (this.provenanceRepository != null) this.provenanceRepository.close();
+            deleteDirectory(workDirectory);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration config = new BaseConfiguration();
+        for (String arg:args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0){
+                throw new IllegalArgumentException("Invalid argument " + arg + ", expected key=value");
+            }
+            config.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        JsonObject report = new EventLoadGenerator(config).run();
+        String strReport = new GsonBuilder().setPrettyPrinting().create().toJson(report);
+        System.out.println(strReport);
+        if (config.containsKey("loadTest.reportFile")){
+            Files.write(Paths.get(config.getString("loadTest.reportFile")), strReport.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    /**
+     * Start the fake repositories, with the latency and errors configured, and store in them the event types, role
+     * and agent used by the events
+     * @throws Exception
+     */
+    private void startRepositories() throws Exception {
+        this.digitalObjectRepository = new FakeDigitalObjectRepository(DIGITAL_OBJECT_HANDLE_PREFIX);
+        this.provenanceRepository = new FakeDigitalObjectRepository(PROVENANCE_HANDLE_PREFIX);
+        for (FakeDigitalObjectRepository repository:Arrays.asList(this.digitalObjectRepository, this.provenanceRepository)) {
+            repository.getFaultInjection().setLatencyMillis(this.config.getLong("loadTest.latency.minMillis", 0),
+                    this.config.getLong("loadTest.latency.maxMillis", this.config.getLong("loadTest.latency.minMillis", 0)));
+            repository.start();
+        }
+
+        InMemoryObjectStore provenanceStore = this.provenanceRepository.getStore();
+        this.eventTypeIds = new EnumMap<>(EVENT_TYPE.class);
+        this.eventTypeIds.put(EVENT_TYPE.CREATE, createReferenceObject(provenanceStore, "EventTypeInsert", "EventType", "Insert", null));
+        this.eventTypeIds.put(EVENT_TYPE.UPDATE, createReferenceObject(provenanceStore, "EventTypeUpdate", "EventType", "Update", null));
+        this.eventTypeIds.put(EVENT_TYPE.DELETE, createReferenceObject(provenanceStore, "EventTypeDelete", "EventType", "Delete", null));
+        createReferenceObject(provenanceStore, "EventTypeRetrieve", "EventType", "Retrieve", null);
+        JsonObject additionalDataSchema = JsonCodec.parseJsonObject("{\"type\":\"object\",\"properties\":{\"museumId\":{\"type\":\"string\"}},\"required\":[\"museumId\"]}");
+        this.eventTypeIds.put(EVENT_TYPE.CUSTOM, createReferenceObject(provenanceStore, "EventType" + CUSTOM_EVENT_TYPE, "EventType", CUSTOM_EVENT_TYPE, additionalDataSchema));
+
+        InMemoryObjectStore digitalObjectStore = this.digitalObjectRepository.getStore();
+        createReferenceObject(digitalObjectStore, "Role" + ROLE, "Role", ROLE, null);
+        this.agentId = createReferenceObject(digitalObjectStore, "LoadTestAgent", "Agent", "Load test agent", null);
+
+        //The faults are only injected once everything needed by the controller is in place
+        for (FakeDigitalObjectRepository repository:Arrays.asList(this.digitalObjectRepository, this.provenanceRepository)) {
+            repository.getFaultInjection().setErrorRate(this.config.getDouble("loadTest.errorRate", 0));
+        }
+        provenanceStore.addCreateListener(this::provenanceRecordCreated);
+    }
+
+    private static String createReferenceObject(InMemoryObjectStore store, String suffix, String type, String name, JsonObject additionalDataSchema) throws DigitalObjectRepositoryException {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = store.getHandlePrefix() + "/" + suffix;
+        digitalObject.type = type;
+        JsonObject content = new JsonObject();
+        content.addProperty("name", name);
+        if (additionalDataSchema != null) content.add("additionalDataSchema", additionalDataSchema);
+        digitalObject.setAttribute("content", content);
+        return store.create(digitalObject, USERNAME).id;
+    }
+
+    /**
+     * Write the configuration of the controller, from the template with the urls and ports of the fake repositories
+     * and the overrides received
+     * @param workDirectory directory where the configuration and the event journal are written
+     * @return path of the configuration file
+     * @throws IOException
+     */
+    private Path writeControllerConfig(Path workDirectory) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = EventLoadGenerator.class.getClassLoader().getResourceAsStream("config_template.properties")){
+            if (inputStream != null) properties.load(inputStream);
+        }
+        Map<String, FakeDigitalObjectRepository> repositories = new LinkedHashMap<>();
+        repositories.put("digitalObjectRepository", this.digitalObjectRepository);
+        repositories.put("provenanceRepository", this.provenanceRepository);
+        for (Map.Entry<String, FakeDigitalObjectRepository> repository:repositories.entrySet()) {
+            properties.setProperty(repository.getKey() + ".url", repository.getValue().getUrl());
+            properties.setProperty(repository.getKey() + ".doipPort", String.valueOf(repository.getValue().getDoipPort()));
+            properties.setProperty(repository.getKey() + ".handlePrefix", repository.getValue().getHandlePrefix());
+            properties.setProperty(repository.getKey() + ".username", USERNAME);
+            properties.setProperty(repository.getKey() + ".password", PASSWORD);
+        }
+        properties.setProperty("journal.directory", workDirectory.resolve("journal").toString());
+        Iterator<String> keys = this.config.getKeys();
+        while (keys.hasNext()){
+            String key = keys.next();
+            if (!key.startsWith("loadTest.")){
+                properties.setProperty(key, this.config.getString(key));
+            }
+        }
+        Path configPath = workDirectory.resolve("doec_config.properties");
+        try (OutputStream outputStream = Files.newOutputStream(configPath)){
+            properties.store(outputStream, "Load test");
+        }
+        return configPath;
+    }
+
+    /**
+     * Get the controller from the registry, which builds a new one if its configuration file has been modified
+     * @return controller
+     * @throws DigitalObjectRepositoryException if the controller can't be built
+     */
+    private DigitalObjectEventController getController() throws DigitalObjectRepositoryException {
+        try {
+            return DigitalObjectEventControllerRegistry.getController(this.controllerConfigPath.toString());
+        } catch (DigitalObjectRepositoryException e){
+            throw e;
+        } catch (Exception e){
+            throw new DigitalObjectRepositoryException("Error getting the controller: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Touch the configuration file of the controller periodically, so the registry replaces the controller while
+     * the events are fired
+     * @return executor touching the file, or null if the controller is not reloaded
+     */
+    private ScheduledExecutorService startReloadingController() {
+        long reloadIntervalSeconds = this.config.getLong("loadTest.reloadIntervalSeconds", DEFAULT_RELOAD_INTERVAL_SECONDS);
+        if (reloadIntervalSeconds <= 0){
+            return null;
+        }
+        ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "doec-load-test-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleAtFixedRate(() -> {
+            try {
+                Files.setLastModifiedTime(this.controllerConfigPath, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException e){
+                e.printStackTrace();
+            }
+        }, reloadIntervalSeconds, reloadIntervalSeconds, TimeUnit.SECONDS);
+        return reloader;
+    }
+
+    /**
+     * Fire events at the target rate, open loop: every event is dispatched at its scheduled time to a pool of
+     * threads, regardless of how long the previous ones take
+     * @throws InterruptedException
+     */
+    private void fireEvents() throws InterruptedException {
+        double rate = this.config.getDouble("loadTest.rate", DEFAULT_RATE);
+        long durationNanos = TimeUnit.SECONDS.toNanos(this.config.getLong("loadTest.durationSeconds", DEFAULT_DURATION_SECONDS));
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(this.config.getInt("loadTest.threads", DEFAULT_NUM_THREADS), runnable -> {
+            Thread thread = new Thread(runnable, "doec-load-test-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int totalWeight = this.mix.values().stream().mapToInt(Integer::intValue).sum();
+        Random random = new Random();
+        long start = System.nanoTime();
+        try {
+            for (long scheduled = start; scheduled - start < durationNanos; scheduled += intervalNanos) {
+                long waitNanos = scheduled - System.nanoTime();
+                if (waitNanos > 0){
+                    LockSupport.parkNanos(waitNanos);
+                }
+                EVENT_TYPE eventType = this.pickEventType(random.nextInt(totalWeight));
+                long scheduledNanos = scheduled;
+                executor.execute(() -> this.fireEvent(eventType, scheduledNanos));
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+    }
+
+    private EVENT_TYPE pickEventType(int value) {
+        for (Map.Entry<EVENT_TYPE, Integer> weight:this.mix.entrySet()) {
+            value -= weight.getValue();
+            if (value < 0){
+                return weight.getKey();
+            }
+        }
+        return EVENT_TYPE.CREATE;
+    }
+
+    /**
+     * Fire an event as CORDRA does. Events over existing objects turn into creations if there are no objects available.
+     * The object is available again once the provenance record of the event is written, or if the event fails
+     * @param eventType type of the event
+     * @param scheduledNanos time when the event should have been fired
+     */
+    private void fireEvent(EVENT_TYPE eventType, long scheduledNanos) {
+        String objectId = eventType == EVENT_TYPE.CREATE ? null : this.availableObjectIds.poll();
+        if (objectId == null){
+            eventType = EVENT_TYPE.CREATE;
+        }
+        this.statistics.eventFired(eventType, System.nanoTime() - scheduledNanos);
+        try {
+            switch (eventType){
+                case CREATE:
+                    objectId = this.fireCreateEvent();
+                    break;
+                case UPDATE:
+                    this.fireUpdateEvent(objectId);
+                    break;
+                case DELETE:
+                    this.fireDeleteEvent(objectId);
+                    break;
+                case CUSTOM:
+                    this.fireCustomEvent(objectId);
+                    break;
+            }
+        } catch (Exception e){
+            this.statistics.eventFailed(eventType);
+            if (objectId != null && this.digitalObjectRepository.getStore().get(objectId) != null){
+                this.availableObjectIds.add(objectId);
+            }
+        }
+    }
+
+    private String fireCreateEvent() throws DigitalObjectRepositoryException {
+        DigitalObject digitalObject = new DigitalObject();
+        digitalObject.id = DIGITAL_OBJECT_HANDLE_PREFIX + "/load-" + this.objectCounter.incrementAndGet();
+        digitalObject.type = "DigitalSpecimen";
+        digitalObject.setAttribute("content", newSpecimenContent(digitalObject.id));
+        JsonObject context = newContext(digitalObject.id);
+        context.addProperty("isNew", true);
+
+        DigitalObjectEventController controller = this.getController();
+        this.expectRecord(digitalObject.id, EVENT_TYPE.CREATE);
+        controller.processCreateEvent(toCordraObjectJson(digitalObject), context.toString());
+        try {
+            this.digitalObjectRepository.getStore().create(digitalObject, USERNAME);
+        } catch (DigitalObjectRepositoryException e){
+            this.forgetRecord(digitalObject.id, EVENT_TYPE.CREATE);
+            throw e;
+        }
+        return digitalObject.id;
+    }
+
+    private void fireUpdateEvent(String objectId) throws DigitalObjectRepositoryException {
+        DigitalObject originalDigitalObject = this.digitalObjectRepository.getStore().get(objectId);
+        DigitalObject modifiedDigitalObject = this.digitalObjectRepository.getStore().get(objectId);
+        JsonObject content = modifiedDigitalObject.attributes.getAsJsonObject("content");
+        content.addProperty("numberOfUpdates", content.get("numberOfUpdates").getAsInt() + 1);
+        content.addProperty("remarks", "Updated at " + Instant.now());
+        content.getAsJsonArray("identifications").add(newIdentification(content.get("numberOfUpdates").getAsInt()));
+
+        DigitalObjectEventController controller = this.getController();
+        this.expectRecord(objectId, EVENT_TYPE.UPDATE);
+        controller.processUpdateEvent(toCordraObjectJson(originalDigitalObject), toCordraObjectJson(modifiedDigitalObject), newContext(objectId).toString());
+        try {
+            this.digitalObjectRepository.getStore().update(modifiedDigitalObject, USERNAME);
+        } catch (DigitalObjectRepositoryException e){
+            this.forgetRecord(objectId, EVENT_TYPE.UPDATE);
+            throw e;
+        }
+    }
+
+    private void fireDeleteEvent(String objectId) throws DigitalObjectRepositoryException {
+        DigitalObject digitalObject = this.digitalObjectRepository.getStore().get(objectId);
+        DigitalObjectEventController controller = this.getController();
+        this.expectRecord(objectId, EVENT_TYPE.DELETE);
+        controller.processDeleteEvent(toCordraObjectJson(digitalObject), newContext(objectId).toString());
+        try {
+            this.digitalObjectRepository.getStore().delete(objectId);
+        } catch (DigitalObjectRepositoryException e){
+            this.forgetRecord(objectId, EVENT_TYPE.DELETE);
+            throw e;
+        }
+    }
+
+    private void fireCustomEvent(String objectId) throws DigitalObjectRepositoryException {
+        JsonObject event = new JsonObject();
+        event.addProperty("eventTypeId", this.eventTypeIds.get(EVENT_TYPE.CUSTOM));
+        event.addProperty("eventType", CUSTOM_EVENT_TYPE);
+        event.addProperty("agentId", this.agentId);
+        event.addProperty("role", ROLE);
+        event.addProperty("timestamp", Instant.now().toString());
+        event.addProperty("description", "Specimen deposit in museum for exhibition");
+        JsonObject data = new JsonObject();
+        data.addProperty("museumId", DIGITAL_OBJECT_HANDLE_PREFIX + "/museum");
+        event.add("data", data);
+
+        DigitalObjectEventController controller = this.getController();
+        this.expectRecord(objectId, EVENT_TYPE.CUSTOM);
+        try {
+            controller.processCustomEvent(event.toString(), objectId);
+        } catch (DigitalObjectRepositoryException | RuntimeException e){
+            this.forgetRecord(objectId, EVENT_TYPE.CUSTOM);
+            throw e;
+        }
+    }
+
+    private void expectRecord(String objectId, EVENT_TYPE eventType) {
+        this.pendingRecords.put(objectId + "|" + this.eventTypeIds.get(eventType), System.nanoTime());
+    }
+
+    private void forgetRecord(String objectId, EVENT_TYPE eventType) {
+        this.pendingRecords.remove(objectId + "|" + this.eventTypeIds.get(eventType));
+    }
+
+    /**
+     * Listener of the creations in the provenance repository, that records the end-to-end latency of the provenance
+     * records and makes their objects available for new events, unless they were deleted
+     * @param digitalObject object created in the provenance repository
+     */
+    private void provenanceRecordCreated(DigitalObject digitalObject) {
+        if (!"EventProvenanceRecord".equals(digitalObject.type)){
+            return;
+        }
+        JsonObject content = digitalObject.attributes.getAsJsonObject("content");
+        String entityId = content.get("entityId").getAsString();
+        String eventTypeId = content.get("eventTypeId").getAsString();
+        Long startTime = this.pendingRecords.remove(entityId + "|" + eventTypeId);
+        if (startTime != null){
+            this.statistics.recordLatency(System.nanoTime() - startTime);
+            if (!eventTypeId.equals(this.eventTypeIds.get(EVENT_TYPE.DELETE))){
+                this.availableObjectIds.add(entityId);
+            }
+        }
+    }
+
+    private long countPendingRecords() {
+        return this.pendingRecords.size();
+    }
+    private void waitForPendingRecords(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (this.countPendingRecords() > 0 && System.nanoTime() - deadline < 0){
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+
+    private static void deleteDirectory(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)){
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e){
+            //It is a temporary directory, so it doesn't matter if it can't be deleted
+        }
+    }
+
+    private static JsonObject newContext(String objectId) {
+        JsonObject context = new JsonObject();
+        context.addProperty("objectId", objectId);
+        context.addProperty("userId", USERNAME);
+        return context;
+    }
+
+    private static String toCordraObjectJson(DigitalObject digitalObject) {
+        JsonObject cordraObject = new JsonObject();
+        cordraObject.addProperty("id", digitalObject.id);
+        cordraObject.addProperty("type", digitalObject.type);
+        cordraObject.add("content", digitalObject.attributes.get("content"));
+        return cordraObject.toString();
+    }
+
+    private static JsonObject newSpecimenContent(String id) {
+        JsonObject content = new JsonObject();
+        content.addProperty("id", id);
+        content.addProperty("physicalSpecimenId", "LT." + id.substring(id.lastIndexOf('-') + 1));
+        content.addProperty("scientificName", "Larus argentatus Pontoppidan, 1763");
+        content.addProperty("institutionCode", "LT");
+        content.addProperty("basisOfRecord", "PreservedSpecimen");
+        content.addProperty("numberOfUpdates", 0);
+        JsonObject locality = new JsonObject();
+        locality.addProperty("country", "NL");
+        locality.addProperty("decimalLatitude", 52.37);
+        locality.addProperty("decimalLongitude", 4.89);
+        content.add("locality", locality);
+        JsonArray identifications = new JsonArray();
+        identifications.add(newIdentification(0));
+        content.add("identifications", identifications);
+        return content;
+    }
+
+    private static JsonObject newIdentification(int number) {
+        JsonObject identification = new JsonObject();
+        identification.addProperty("identifiedBy", "Curator " + number);
+        identification.addProperty("dateIdentified", Instant.now().toString());
+        return identification;
+    }
+}
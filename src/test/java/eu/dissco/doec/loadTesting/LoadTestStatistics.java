@@ -0,0 +1,198 @@
+package eu.dissco.doec.loadTesting;
+
+import com.google.gson.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a load test: events fired and failed by type, end-to-end latency of the provenance records (from the
+ * moment the event is fired until its record is created in the provenance repository), and the threads and heap
+ * used by the process, sampled periodically
+ */
+public class LoadTestStatistics {
+
+    /**************/
+    /* ATTRIBUTES */
+    /**************/
+
+    public static final long DEFAULT_SAMPLING_INTERVAL_MILLIS = 100;
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<EventLoadGenerator.EVENT_TYPE, AtomicLong> firedEvents = new EnumMap<>(EventLoadGenerator.EVENT_TYPE.class);
+    private final Map<EventLoadGenerator.EVENT_TYPE, AtomicLong> failedEvents = new EnumMap<>(EventLoadGenerator.EVENT_TYPE.class);
+    private final AtomicLong maxDispatchLagNanos = new AtomicLong();
+    private final AtomicLong peakHeapUsedBytes = new AtomicLong();
+    private final AtomicLong peakControllerThreads = new AtomicLong();
+    private long[] latenciesNanos = new long[1024];
+    private int numLatencies = 0;
+    private long startNanos;
+    private long firingEndNanos;
+    private long endNanos;
+    private ScheduledExecutorService sampler;
+
+
+    /****************/
+    /* CONSTRUCTORS */
+    /****************/
+
+    /**
+     * Create a new LoadTestStatistics
+     */
+    public LoadTestStatistics() {
+        for (EventLoadGenerator.EVENT_TYPE eventType:EventLoadGenerator.EVENT_TYPE.values()) {
+            this.firedEvents.put(eventType, new AtomicLong());
+            this.failedEvents.put(eventType, new AtomicLong());
+        }
+    }
+
+
+    /******************/
+    /* PUBLIC METHODS */
+    /******************/
+
+    /**
+     * Start measuring, sampling the threads and heap used periodically
+     * @param samplingIntervalMillis interval between samples
+     */
+    public void start(long samplingIntervalMillis) {
+        this.startNanos = System.nanoTime();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "doec-load-test-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sampler.scheduleAtFixedRate(this::sample, 0, samplingIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Mark the end of the period when events are fired. The latencies are still recorded until stop is called
+     */
+    public void firingFinished() {
+        this.firingEndNanos = System.nanoTime();
+    }
+
+    /**
+     * Stop measuring
+     */
+    public void stop() {
+        this.endNanos = System.nanoTime();
+        this.sampler.shutdownNow();
+        this.sample();
+    }
+
+    public void eventFired(EventLoadGenerator.EVENT_TYPE eventType, long dispatchLagNanos) {
+        this.firedEvents.get(eventType).incrementAndGet();
+        this.maxDispatchLagNanos.accumulateAndGet(dispatchLagNanos, Math::max);
+    }
+
+    public void eventFailed(EventLoadGenerator.EVENT_TYPE eventType) {
+        this.failedEvents.get(eventType).incrementAndGet();
+    }
+
+    /**
+     * Record the end-to-end latency of a provenance record
+     * @param latencyNanos nanoseconds since its event was fired
+     */
+    public synchronized void recordLatency(long latencyNanos) {
+        if (this.numLatencies == this.latenciesNanos.length){
+            this.latenciesNanos = Arrays.copyOf(this.latenciesNanos, this.latenciesNanos.length * 2);
+        }
+        this.latenciesNanos[this.numLatencies++] = latencyNanos;
+    }
+
+    /**
+     * Get the report of the load test
+     * @param pendingRecords number of events whose provenance record was never written
+     * @param injectedErrors number of errors injected by the fake repositories
+     * @return json object with the report
+     */
+    public synchronized JsonObject getReport(long pendingRecords, long injectedErrors) {
+        double firingSeconds = (this.firingEndNanos - this.startNanos) / 1e9;
+        double totalSeconds = (this.endNanos - this.startNanos) / 1e9;
+        long totalFired = 0;
+        JsonObject events = new JsonObject();
+        for (EventLoadGenerator.EVENT_TYPE eventType:EventLoadGenerator.EVENT_TYPE.values()) {
+            JsonObject eventStatistics = new JsonObject();
+            eventStatistics.addProperty("fired", this.firedEvents.get(eventType).get());
+            eventStatistics.addProperty("failed", this.failedEvents.get(eventType).get());
+            events.add(eventType.name().toLowerCase(), eventStatistics);
+            totalFired += this.firedEvents.get(eventType).get();
+        }
+        JsonObject throughput = new JsonObject();
+        throughput.addProperty("eventsPerSecond", round(totalFired / firingSeconds));
+        throughput.addProperty("recordsPerSecond", round(this.numLatencies / totalSeconds));
+        throughput.addProperty("recordsWritten", this.numLatencies);
+        throughput.addProperty("recordsPending", pendingRecords);
+        throughput.addProperty("maxDispatchLagMillis", round(this.maxDispatchLagNanos.get() / 1e6));
+
+        long[] sortedLatencies = Arrays.copyOf(this.latenciesNanos, this.numLatencies);
+        Arrays.sort(sortedLatencies);
+        JsonObject latency = new JsonObject();
+        for (double percentile:PERCENTILES) {
+            latency.addProperty("p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                    round(getPercentile(sortedLatencies, percentile) / 1e6));
+        }
+        latency.addProperty("max", round(sortedLatencies.length > 0 ? sortedLatencies[sortedLatencies.length - 1] / 1e6 : 0));
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        JsonObject threads = new JsonObject();
+        threads.addProperty("live", threadMXBean.getThreadCount());
+        threads.addProperty("peak", threadMXBean.getPeakThreadCount());
+        threads.addProperty("peakController", this.peakControllerThreads.get());
+
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        JsonObject heap = new JsonObject();
+        heap.addProperty("usedMB", round(memoryMXBean.getHeapMemoryUsage().getUsed() / 1048576.0));
+        heap.addProperty("peakUsedMB", round(this.peakHeapUsedBytes.get() / 1048576.0));
+        heap.addProperty("maxMB", round(memoryMXBean.getHeapMemoryUsage().getMax() / 1048576.0));
+
+        JsonObject report = new JsonObject();
+        report.addProperty("firingSeconds", round(firingSeconds));
+        report.addProperty("totalSeconds", round(totalSeconds));
+        report.add("events", events);
+        report.add("throughput", throughput);
+        report.add("latencyMillis", latency);
+        report.add("threads", threads);
+        report.add("heap", heap);
+        report.addProperty("injectedErrors", injectedErrors);
+        return report;
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private void sample() {
+        this.peakHeapUsedBytes.accumulateAndGet(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max);
+        //Threads of the controller (and of the load test itself) are named doec-...
+        long controllerThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("doec-") && !thread.getName().startsWith("doec-load-test")
+                        && !thread.getName().startsWith("doec-fake-repository"))
+                .count();
+        this.peakControllerThreads.accumulateAndGet(controllerThreads, Math::max);
+    }
+
+    private static long getPercentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0){
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,103 @@
+package eu.dissco.doec.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FlatMapUtilsTest {
+
+    @Test
+    public void testFlattenJson() {
+        Map<String, JsonElement> flatMap = FlatMapUtils.flatten(parse("{\"a\":{\"b\":[1,2]},\"c\":\"x\",\"d\":null,\"e\":{},\"f\":[]}"));
+
+        Map<String, JsonElement> expected = new LinkedHashMap<>();
+        expected.put("/a/b/0", new JsonPrimitive(1));
+        expected.put("/a/b/1", new JsonPrimitive(2));
+        expected.put("/c", new JsonPrimitive("x"));
+        expected.put("/d", parse("null"));
+        expected.put("/e", parse("{}"));
+        expected.put("/f", parse("[]"));
+        assertEquals(expected, flatMap);
+        assertEquals("Leaves should keep the order of the document", new ArrayList<>(expected.keySet()), new ArrayList<>(flatMap.keySet()));
+    }
+
+    @Test
+    public void testFlattenJsonEscapesKeys() {
+        Map<String, JsonElement> flatMap = FlatMapUtils.flatten(parse("{\"a/b\":{\"c~d\":1,\"~1\":2,\"/\":3}}"));
+        assertEquals(new HashSet<>(Arrays.asList("/a~1b/c~0d", "/a~1b/~01", "/a~1b/~1")), flatMap.keySet());
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        assertRoundTrip("{\"a\":{\"b\":[1,2,{\"c\":[[],{}]}]},\"d\":\"x\",\"e\":null,\"f\":true,\"g\":1.5}");
+        assertRoundTrip("{\"a/b\":{\"c~d\":[{\"~1\":\"/\"},{\"~0\":\"~\"}]},\"~\":{\"/\":{}}}");
+        assertRoundTrip("[{\"a\":1},[2,3],[]]");
+        assertRoundTrip("{\"a\":[null,null,1]}");
+    }
+
+    @Test
+    public void testScalarsAndEmptyContainersAreTheirOwnLeaf() {
+        for (String json:Arrays.asList("1", "\"x\"", "null", "{}", "[]")) {
+            JsonElement jsonElement = parse(json);
+            Map<String, JsonElement> flatMap = FlatMapUtils.flatten(jsonElement);
+            assertEquals(Collections.singletonMap("", jsonElement), flatMap);
+            assertEquals(jsonElement, FlatMapUtils.unflatten(flatMap));
+        }
+    }
+
+    @Test
+    public void testFlattenMap() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("c~d", 1);
+        nested.put("list", Arrays.asList("x", Collections.singletonMap("e", 2)));
+        nested.put("empty", Collections.emptyMap());
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a/b", nested);
+        map.put("f", null);
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("/a~1b/c~0d", 1);
+        expected.put("/a~1b/list/0", "x");
+        expected.put("/a~1b/list/1/e", 2);
+        expected.put("/f", null);
+        assertEquals(expected, FlatMapUtils.flatten(map));
+    }
+
+    @Test
+    public void testDeepDocument() {
+        //Deep enough to overflow the call stack if the levels were walked recursively
+        int depth = 10000;
+        JsonElement jsonElement = new JsonPrimitive(1);
+        for (int i = 0; i < depth; i++) {
+            JsonObject parent = new JsonObject();
+            parent.add("a", jsonElement);
+            jsonElement = parent;
+        }
+
+        Map<String, JsonElement> flatMap = FlatMapUtils.flatten(jsonElement);
+        assertEquals(1, flatMap.size());
+        assertEquals(depth * 2, flatMap.keySet().iterator().next().length());
+        //The flat maps are compared, as comparing the json elements is recursive
+        assertEquals(flatMap, FlatMapUtils.flatten(FlatMapUtils.unflatten(flatMap)));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static void assertRoundTrip(String json) {
+        JsonElement jsonElement = parse(json);
+        assertEquals(jsonElement, FlatMapUtils.unflatten(FlatMapUtils.flatten(jsonElement)));
+    }
+
+    private static JsonElement parse(String json) {
+        return JsonParser.parseString(json);
+    }
+}
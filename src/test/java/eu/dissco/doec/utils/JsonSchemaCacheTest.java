@@ -0,0 +1,80 @@
+package eu.dissco.doec.utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.everit.json.schema.Schema;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonSchemaCacheTest {
+
+    private static final String SCHEMA = "{\"type\":\"object\",\"properties\":{\"id\":{\"type\":\"string\"},\"museumId\":{\"type\":\"string\"}},\"required\":[\"id\",\"museumId\"]}";
+
+    @Test
+    public void testSchemaIsLoadedOnce() {
+        JsonSchemaCache jsonSchemaCache = new JsonSchemaCache(10);
+        JsonObject jsonSchema = parse(SCHEMA);
+        String schemaKey = JsonSchemaCache.getSchemaKey("eventType", jsonSchema);
+
+        Schema schema = jsonSchemaCache.getSchema(schemaKey, jsonSchema, true);
+        assertSame(schema, jsonSchemaCache.getSchema(schemaKey, jsonSchema, true));
+        assertNotSame("The schema without the required id is cached apart", schema, jsonSchemaCache.getSchema(schemaKey, jsonSchema, false));
+        assertEquals(2, jsonSchemaCache.size());
+        assertEquals("Loading the schema shouldn't modify it", parse(SCHEMA), jsonSchema);
+    }
+
+    @Test
+    public void testValidate() {
+        JsonSchemaCache jsonSchemaCache = new JsonSchemaCache(10);
+        JsonObject jsonSchema = parse(SCHEMA);
+        String schemaKey = JsonSchemaCache.getSchemaKey("eventType", jsonSchema);
+
+        assertTrue(jsonSchemaCache.validate(schemaKey, parse("{\"id\":\"1\",\"museumId\":\"m\"}"), jsonSchema, true));
+        assertFalse(jsonSchemaCache.validate(schemaKey, parse("{\"museumId\":\"m\"}"), jsonSchema, true));
+        assertTrue("The id shouldn't be required", jsonSchemaCache.validate(schemaKey, parse("{\"museumId\":\"m\"}"), jsonSchema, false));
+        assertFalse(jsonSchemaCache.validate(schemaKey, parse("{\"museumId\":1}"), jsonSchema, false));
+        assertEquals(2, jsonSchemaCache.size());
+    }
+
+    @Test
+    public void testSchemaKeyChangesWithTheSchema() {
+        JsonObject jsonSchema = parse(SCHEMA);
+        JsonObject modifiedSchema = parse(SCHEMA);
+        modifiedSchema.getAsJsonObject("properties").getAsJsonObject("museumId").addProperty("type", "integer");
+
+        assertEquals(JsonSchemaCache.getSchemaKey("eventType", jsonSchema), JsonSchemaCache.getSchemaKey("eventType", parse(SCHEMA)));
+        assertNotEquals(JsonSchemaCache.getSchemaKey("eventType", jsonSchema), JsonSchemaCache.getSchemaKey("eventType", modifiedSchema));
+        assertNotEquals(JsonSchemaCache.getSchemaKey("eventType", jsonSchema), JsonSchemaCache.getSchemaKey("otherEventType", jsonSchema));
+
+        JsonSchemaCache jsonSchemaCache = new JsonSchemaCache(10);
+        JsonObject data = parse("{\"museumId\":1}");
+        assertFalse(jsonSchemaCache.validate(JsonSchemaCache.getSchemaKey("eventType", jsonSchema), data, jsonSchema, false));
+        assertTrue("The modified schema should be loaded again",
+                jsonSchemaCache.validate(JsonSchemaCache.getSchemaKey("eventType", modifiedSchema), data, modifiedSchema, false));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedSchemaIsEvicted() {
+        JsonSchemaCache jsonSchemaCache = new JsonSchemaCache(2);
+        JsonObject jsonSchema = parse(SCHEMA);
+        Schema first = jsonSchemaCache.getSchema("first", jsonSchema, true);
+        Schema second = jsonSchemaCache.getSchema("second", jsonSchema, true);
+
+        //first becomes the most recently used, so second is evicted
+        assertSame(first, jsonSchemaCache.getSchema("first", jsonSchema, true));
+        jsonSchemaCache.getSchema("third", jsonSchema, true);
+        assertEquals(2, jsonSchemaCache.size());
+        assertSame(first, jsonSchemaCache.getSchema("first", jsonSchema, true));
+        assertNotSame(second, jsonSchemaCache.getSchema("second", jsonSchema, true));
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static JsonObject parse(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,90 @@
+package eu.dissco.doec.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JsonTreeDiffTest {
+
+    @Test
+    public void testEqualElementsHaveNoPatch() {
+        JsonElement left = parse("{\"a\":1,\"b\":{\"c\":[1,2,{\"d\":null}]}}");
+        JsonTreeDiff diff = JsonTreeDiff.compare(left, left.deepCopy());
+        assertTrue(diff.areEqual());
+        assertEquals(0, diff.getJsonPatch().size());
+    }
+
+    @Test
+    public void testScalarAndNestedChanges() {
+        assertPatchRebuildsRight("{\"a\":1,\"b\":\"x\",\"c\":{\"d\":true,\"e\":{\"f\":1.5}},\"g\":null}",
+                "{\"a\":2,\"b\":\"x\",\"c\":{\"d\":false,\"e\":{\"h\":\"new\"}},\"i\":[1]}");
+    }
+
+    @Test
+    public void testArrayAdditionsAndRemovals() {
+        assertPatchRebuildsRight("{\"list\":[1,2,3,4,5]}", "{\"list\":[1,9]}");
+        assertPatchRebuildsRight("{\"list\":[1]}", "{\"list\":[0,1,2,3]}");
+        assertPatchRebuildsRight("{\"list\":[{\"a\":1},{\"b\":2},{\"c\":3}]}", "{\"list\":[{\"a\":1,\"z\":0}]}");
+        assertPatchRebuildsRight("{\"list\":[[1,2],[3,4,5]]}", "{\"list\":[[1],[]]}");
+        assertPatchRebuildsRight("[1,2,3]", "[]");
+    }
+
+    @Test
+    public void testEscapedKeys() {
+        assertPatchRebuildsRight("{\"a/b\":1,\"m~n\":{\"~1\":[1,2]},\"x\":{\"/\":\"~\"}}",
+                "{\"a/b\":2,\"m~n\":{\"~1\":[1],\"~0/\":true},\"x\":{}}");
+
+        JsonArray patch = JsonTreeDiff.compare(parse("{\"a/b\":{\"m~n\":1}}"), parse("{\"a/b\":{\"m~n\":2}}")).getJsonPatch();
+        assertEquals("/a~1b/m~0n", patch.get(0).getAsJsonObject().get("path").getAsString());
+    }
+
+    @Test
+    public void testTypeChanges() {
+        assertPatchRebuildsRight("{\"a\":{\"b\":1},\"c\":[1,2],\"d\":1,\"e\":{}}",
+                "{\"a\":[1],\"c\":{\"b\":1},\"d\":{\"f\":[]},\"e\":[]}");
+        assertPatchRebuildsRight("1", "\"root\"");
+        assertPatchRebuildsRight("{\"a\":1}", "[1]");
+    }
+
+    @Test
+    public void testIgnoredPathsAreNotPatched() {
+        JsonElement left = parse("{\"id\":\"prefix/1\",\"a\":1}");
+        JsonElement right = parse("{\"id\":\"prefix/2\",\"a\":2}");
+        JsonArray patch = JsonTreeDiff.compare(left, right, "/id").getJsonPatch();
+        assertEquals(parse("{\"id\":\"prefix/1\",\"a\":2}"), JsonUtils.applyJsonPatch(left, patch));
+    }
+
+    @Test
+    public void testPatchDoesNotModifyItsInput() {
+        JsonElement left = parse("{\"a\":[1,2,3],\"b\":{\"c\":1}}");
+        JsonElement original = left.deepCopy();
+        JsonArray patch = JsonTreeDiff.compare(left, parse("{\"a\":[1],\"b\":{\"c\":2}}")).getJsonPatch();
+        JsonUtils.applyJsonPatch(left, patch);
+        assertEquals(original, left);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPatchOfMissingPathFails() {
+        JsonArray patch = JsonTreeDiff.compare(parse("{\"a\":{\"b\":1}}"), parse("{\"a\":{}}")).getJsonPatch();
+        JsonUtils.applyJsonPatch(parse("{\"c\":1}"), patch);
+    }
+
+
+    /*******************/
+    /* PRIVATE METHODS */
+    /*******************/
+
+    private static void assertPatchRebuildsRight(String left, String right) {
+        JsonElement leftElement = parse(left);
+        JsonElement rightElement = parse(right);
+        JsonArray patch = JsonTreeDiff.compare(leftElement, rightElement).getJsonPatch();
+        assertEquals("Patch " + patch + " applied to " + left, rightElement, JsonUtils.applyJsonPatch(leftElement, patch));
+    }
+
+    private static JsonElement parse(String json) {
+        return JsonParser.parseString(json);
+    }
+}